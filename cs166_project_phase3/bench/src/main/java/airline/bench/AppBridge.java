@@ -0,0 +1,136 @@
+package airline.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls into the application. Its classes live in the default package, which
+ * a named package cannot import, so they are reached by reflection once and
+ * the resolved methods are kept. A handler is driven the way the session
+ * server drives it: a Session with scripted input lines is attached to the
+ * calling thread, the handler runs, and its output is captured or dropped.
+ *
+ */
+public final class AppBridge {
+
+    private static final Class<?> APP = load("AirlineManagement");
+    private static final Class<?> SESSION = load("Session");
+    private static final Constructor<?> SESSION_NEW;
+    private static final Method ATTACH;
+    private static final Method CLOSE;
+
+    static {
+        try {
+            SESSION_NEW = SESSION.getConstructor(Reader.class, OutputStream.class);
+            ATTACH = SESSION.getMethod("attach");
+            CLOSE = SESSION.getMethod("close");
+            // System.out and System.err follow the attached session
+            SESSION.getMethod("routeStandardStreams").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // drops handler output; the cost of printing is still paid
+    private static final OutputStream DISCARD = new OutputStream() {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private AppBridge() {
+    }
+
+    /**
+     * @return a connected AirlineManagement instance
+     */
+    public static Object connect(String dbname, String port, String user) throws Exception {
+        Class.forName("org.postgresql.Driver");
+        return APP.getConstructor(String.class, String.class, String.class, String.class)
+                .newInstance(dbname, port, user, "");
+    }
+
+    public static void cleanup(Object esql) throws Exception {
+        APP.getMethod("cleanup").invoke(esql);
+    }
+
+    /**
+     * @return the static menu handler with the given name
+     */
+    public static Method handler(String name) throws NoSuchMethodException {
+        return APP.getMethod(name, APP);
+    }
+
+    /**
+     * Runs a handler with the given input lines and discards its output.
+     *
+     * @return what the handler returned
+     */
+    public static Object run(Method handler, Object esql, String input) throws Exception {
+        return run(handler, esql, input, DISCARD);
+    }
+
+    /**
+     * Runs a handler with the given input lines and returns its output.
+     */
+    public static String capture(Method handler, Object esql, String input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        run(handler, esql, input, out);
+        return out.toString("UTF-8");
+    }
+
+    private static Object run(Method handler, Object esql, String input, OutputStream out) throws Exception {
+        Object session = SESSION_NEW.newInstance(new StringReader(input), out);
+        ATTACH.invoke(session);
+        try {
+            return handler.invoke(null, esql);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            CLOSE.invoke(session);
+        }
+    }
+
+    /**
+     * Invokes a public method of an application object, for the setup code.
+     */
+    public static Object call(Object target, String method, Object... args) throws Exception {
+        for (Method m : target.getClass().getMethods()) {
+            if (m.getName().equals(method) && m.getParameterCount() == args.length) {
+                return m.invoke(target, args);
+            }
+        }
+        throw new NoSuchMethodException(method);
+    }
+
+    /**
+     * Creates an application object, for the setup code.
+     */
+    public static Object create(String className, Object... args) throws Exception {
+        for (Constructor<?> c : load(className).getConstructors()) {
+            if (c.getParameterCount() == args.length) {
+                try {
+                    return c.newInstance(args);
+                } catch (IllegalArgumentException e) {
+                    // another overload with the same arity
+                }
+            }
+        }
+        throw new NoSuchMethodException(className + " with " + args.length + " arguments");
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("application class " + name + " is not on the classpath", e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package airline.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The database a benchmark runs against: one database per scale factor,
+ * created with the project's schema scripts and filled by DataGenerator.
+ *
+ * With -Dbench.db=&lt;dbname&gt;:&lt;port&gt;:&lt;user&gt; the databases are created on
+ * that local Postgres server, next to the given database, which itself is
+ * never touched. Without it an embedded Postgres is started as a stand-in,
+ * on a fixed data directory, bench/target/embedded-postgres unless
+ * -Dbench.dataDir says otherwise, so every JMH fork and later run opens the
+ * same cluster. Either way databases are kept between runs (for the
+ * stand-in until mvn clean); loading is resumed from the loader's
+ * checkpoints, so a complete database is reused as it is.
+ *
+ */
+public final class BenchDatabase {
+
+    // the scripts create_db.sh runs before loading data, in order
+    static final String[] SCHEMA_SCRIPTS = {"create_tables.sql", "create_indexes.sql", "create_availability.sql"};
+
+    // bench/target, where the benchmark jar is built; the defaults below
+    // are found from it whatever the working directory
+    static final File TARGET_DIR = targetDir();
+    static final String SQL_DIR =
+            System.getProperty("bench.sqlDir", new File(TARGET_DIR, "../../sql/src").getPath());
+    static final String DATA_DIR =
+            System.getProperty("bench.dataDir", new File(TARGET_DIR, "embedded-postgres").getPath());
+    static final long SEED = Long.getLong("bench.seed", 1L);
+
+    public static final String USER_NAME = "bench";
+    public static final String PASSWORD = "bench";
+
+    /**
+     * Where the application connects for one scale factor.
+     */
+    public static final class Target {
+        public final String dbname;
+        public final String port;
+        public final String user;
+
+        Target(String dbname, String port, String user) {
+            this.dbname = dbname;
+            this.port = port;
+            this.user = user;
+        }
+    }
+
+    private static Object embedded = null;
+
+    private BenchDatabase() {
+    }
+
+    /**
+     * Creates and loads the database of a scale factor unless it is already
+     * complete.
+     */
+    public static synchronized Target ensure(String scale) throws Exception {
+        String[] server = server();
+        String dbname = "airline_bench_x" + scale.replace('.', '_');
+        boolean created = false;
+        try (Connection admin = DriverManager.getConnection(url(server[1], server[0]), server[2], "");
+             Statement stmt = admin.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM pg_database WHERE datname = '" + dbname + "'")) {
+                if (!rs.next()) {
+                    stmt.executeUpdate("CREATE DATABASE " + dbname);
+                    created = true;
+                }
+            }
+        }
+        if (created) {
+            try (Connection conn = DriverManager.getConnection(url(server[1], dbname), server[2], "")) {
+                for (String script : SCHEMA_SCRIPTS) {
+                    runScript(conn, new File(SQL_DIR, script));
+                }
+            }
+        }
+
+        Target target = new Target(dbname, server[1], server[2]);
+        Object esql = AppBridge.connect(target.dbname, target.port, target.user);
+        try {
+            Object generator = AppBridge.create("DataGenerator", Double.parseDouble(scale), SEED);
+            Object loader = AppBridge.create("CsvLoader", esql, null);
+            AppBridge.call(generator, "load", loader, false);
+            AppBridge.call(esql, "executeUpdate",
+                    "INSERT INTO Users(UserID, UserName, Password, UserType) SELECT 0, '" + USER_NAME + "', '"
+                    + PASSWORD + "', 1 WHERE NOT EXISTS (SELECT 1 FROM Users WHERE UserName = '" + USER_NAME + "')");
+        } finally {
+            AppBridge.cleanup(esql);
+        }
+        return target;
+    }//end ensure
+
+    /*
+     * The server as {admin database, port, user}.
+     */
+    private static String[] server() throws Exception {
+        String configured = System.getProperty("bench.db");
+        if (configured != null) {
+            String[] parts = configured.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("bench.db must be <dbname>:<port>:<user>");
+            }
+            return parts;
+        }
+        if (embedded == null) {
+            // a data directory that is already initialized is reused as it is
+            embedded = io.zonky.test.db.postgres.embedded.EmbeddedPostgres.builder()
+                    .setDataDirectory(new File(DATA_DIR))
+                    .setCleanDataDirectory(false)
+                    .start();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        ((io.zonky.test.db.postgres.embedded.EmbeddedPostgres) embedded).close();
+                    } catch (IOException e) {
+                        // the JVM is exiting anyway
+                    }
+                }
+            }));
+        }
+        int port = ((io.zonky.test.db.postgres.embedded.EmbeddedPostgres) embedded).getPort();
+        return new String[] {"postgres", String.valueOf(port), "postgres"};
+    }
+
+    /*
+     * The directory holding the jar or class directory this class was
+     * loaded from.
+     */
+    private static File targetDir() {
+        try {
+            File location = new File(BenchDatabase.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return location.getParentFile();
+        } catch (URISyntaxException | RuntimeException e) {
+            return new File("target");
+        }
+    }
+
+    private static String url(String port, String dbname) {
+        return "jdbc:postgresql://localhost:" + port + "/" + dbname;
+    }
+
+    /*
+     * Runs a SQL script statement by statement. Statements end at a
+     * semicolon outside quotes, comments and dollar-quoted bodies.
+     */
+    static void runScript(Connection conn, File script) throws IOException, SQLException {
+        String sql = new String(Files.readAllBytes(script.toPath()), StandardCharsets.UTF_8);
+        try (Statement stmt = conn.createStatement()) {
+            for (String statement : split(sql)) {
+                stmt.execute(statement);
+            }
+        }
+    }
+
+    static List<String> split(String sql) {
+        List<String> statements = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '-' && sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? n : end + 1;
+                current.append('\n');
+            } else if (c == '/' && sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                current.append(' ');
+            } else if (c == '\'') {
+                // a doubled quote inside the literal does not end it
+                int end = i + 1;
+                while (end < n) {
+                    if (sql.charAt(end) == '\'') {
+                        if (end + 1 < n && sql.charAt(end + 1) == '\'') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    ++end;
+                }
+                current.append(sql, i, Math.min(n, end + 1));
+                i = end + 1;
+            } else if (c == '$') {
+                int tagEnd = sql.indexOf('$', i + 1);
+                String tag = tagEnd < 0 ? null : sql.substring(i, tagEnd + 1);
+                if (tag != null && tag.matches("\\$[A-Za-z_]*\\$")) {
+                    int end = sql.indexOf(tag, tagEnd + 1);
+                    end = end < 0 ? n : end + tag.length();
+                    current.append(sql, i, end);
+                    i = end;
+                } else {
+                    current.append(c);
+                    ++i;
+                }
+            } else if (c == ';') {
+                add(statements, current);
+                ++i;
+            } else {
+                current.append(c);
+                ++i;
+            }
+        }
+        add(statements, current);
+        return statements;
+    }//end split
+
+    private static void add(List<String> statements, StringBuilder current) {
+        String statement = current.toString().trim();
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+        current.setLength(0);
+    }
+}
@@ -0,0 +1,37 @@
+package airline.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so every result comes
+ * with its allocation rate. Any JMH command line option may be passed, for
+ * example -p scale=1,10 or a benchmark name pattern. The bench.* system
+ * properties are handed to the forked benchmark JVMs.
+ *
+ */
+public final class BenchMain {
+
+    private BenchMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cli);
+        if (cli.getIncludes().isEmpty()) {
+            builder.include(HandlerBenchmarks.class.getSimpleName());
+        }
+        builder.addProfiler(GCProfiler.class);
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("bench.")) {
+                builder.jvmArgsAppend("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
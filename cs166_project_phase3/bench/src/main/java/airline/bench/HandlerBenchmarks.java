@@ -0,0 +1,350 @@
+package airline.bench;
+
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One benchmark per menu operation. Each runs the real handler with scripted
+ * input, so the measured path is the one an operator takes: reading the
+ * input, validating keys, running the statements and printing the result.
+ * Inputs are drawn at random from the generated data so caches see a
+ * realistic spread of keys. routeSearch calls the route search directly, to
+ * separate the search from the printing findConnections also measures.
+ *
+ * makeAndCancelReservation undoes its own write. createUser and
+ * maintenanceRequest cannot, so every run adds Users and MaintenanceRequest
+ * rows to the benchmark database.
+ *
+ * Throughput and sampled latency (with percentiles) are both reported; run
+ * with -prof gc, as BenchMain does, to get the allocation rate.
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerBenchmarks {
+
+    // mirrors DataGenerator: 10 flights per 1x, F100 upwards, four weeks from 2025-05-05
+    static final int BASE_PLANES = 5;
+    static final int BASE_FLIGHTS = 10;
+    static final int BASE_CUSTOMERS = 500;
+    static final int BASE_TECHNICIANS = 10;
+    static final int BASE_PILOTS = 10;
+    static final int DAYS = 28;
+    static final LocalDate FIRST_DAY = LocalDate.of(2025, 5, 5);
+    // repairs and requests fall in the 30 days from 2025-04-01
+    static final int REPAIR_DAYS = 30;
+    static final LocalDate FIRST_REPAIR_DAY = LocalDate.of(2025, 4, 1);
+    // reservation ids of flight instance n start at R(n - 1) * MAX_DEMAND + 1
+    static final int MAX_DEMAND = Integer.getInteger("airline.gen.seats", 13) * 13 / 10 + 1;
+    static final String[] CITIES = {
+        "New York", "Los Angeles", "Chicago", "Houston", "Phoenix", "Philadelphia", "San Antonio", "San Diego",
+        "Dallas", "San Jose", "Austin", "Seattle", "Denver", "Boston", "Miami", "Atlanta", "Las Vegas",
+        "Portland", "San Francisco", "Orlando"
+    };
+    static final String[] REPAIR_CODES = {"RC001", "RC002", "RC003", "RC004", "RC005"};
+    // ViewDateFlights validates its date in the format the menu asks for
+    static final DateTimeFormatter MENU_DATE = DateTimeFormatter.ofPattern("M/d/yy");
+
+    @Param({"1", "10", "100"})
+    public String scale;
+
+    Object esql;
+    int planes;
+    int flights;
+    int customers;
+    int technicians;
+    int pilots;
+
+    Method viewDateFlights;
+    Method flightStats;
+    Method flightsPerDate;
+    Method passengersList;
+    Method findTicketPrice;
+    Method viewCurrentReservations;
+    Method makeReservation;
+    Method cancelReservation;
+    Method logIn;
+    Method findConnections;
+    Method flightSeats;
+    Method flightStatus;
+    Method passengerInfo;
+    Method technicianInfo;
+    Method planeRepairRange;
+    Method findAllRepairs;
+    Method fleetStats;
+    Method createUser;
+    Method maintenanceRequest;
+    Method reconcileWaitlists;
+
+    // RouteSearch.search(from, to, date, order) and the values of Order
+    Object routes;
+    Method search;
+    Object[] orders;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchDatabase.Target target = BenchDatabase.ensure(scale);
+        esql = AppBridge.connect(target.dbname, target.port, target.user);
+        double factor = Double.parseDouble(scale);
+        planes = (int) Math.max(1, Math.round(BASE_PLANES * factor));
+        flights = (int) Math.max(1, Math.round(BASE_FLIGHTS * factor));
+        customers = (int) Math.max(1, Math.round(BASE_CUSTOMERS * factor));
+        technicians = (int) Math.max(1, Math.round(BASE_TECHNICIANS * factor));
+        pilots = (int) Math.max(1, Math.round(BASE_PILOTS * factor));
+
+        viewDateFlights = AppBridge.handler("ViewDateFlights");
+        flightStats = AppBridge.handler("FlightStats");
+        flightsPerDate = AppBridge.handler("FlightsPerDate");
+        passengersList = AppBridge.handler("PassengersList");
+        findTicketPrice = AppBridge.handler("FindTicketPrice");
+        viewCurrentReservations = AppBridge.handler("ViewCurrentReservations");
+        makeReservation = AppBridge.handler("MakeReservation");
+        cancelReservation = AppBridge.handler("CancelReservation");
+        logIn = AppBridge.handler("LogIn");
+        findConnections = AppBridge.handler("FindConnections");
+        flightSeats = AppBridge.handler("FlightSeats");
+        flightStatus = AppBridge.handler("FlightStatus");
+        passengerInfo = AppBridge.handler("PassengerInfo");
+        technicianInfo = AppBridge.handler("TechnicianInfo");
+        planeRepairRange = AppBridge.handler("PlaneRepairRange");
+        findAllRepairs = AppBridge.handler("FindAllRepairs");
+        fleetStats = AppBridge.handler("FleetStats");
+        createUser = AppBridge.handler("CreateUser");
+        maintenanceRequest = AppBridge.handler("MaintenaceRequest");
+        reconcileWaitlists = AppBridge.handler("ReconcileWaitlists");
+
+        routes = AppBridge.call(esql, "routes");
+        for (Method m : routes.getClass().getMethods()) {
+            if (m.getName().equals("search") && m.getParameterCount() == 4) {
+                search = m;
+                orders = m.getParameterTypes()[3].getEnumConstants();
+            }
+        }
+        if (search == null) {
+            throw new NoSuchMethodException("RouteSearch.search");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        AppBridge.cleanup(esql);
+    }
+
+    /**
+     * The random inputs of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Inputs {
+        final SplittableRandom rng = new SplittableRandom(Long.getLong("bench.seed", 1L));
+
+        String flight(HandlerBenchmarks b) {
+            return "F" + (100 + rng.nextInt(b.flights));
+        }
+
+        String date() {
+            return FIRST_DAY.plusDays(rng.nextInt(DAYS)).toString();
+        }
+
+        String menuDate() {
+            return FIRST_DAY.plusDays(rng.nextInt(DAYS)).format(MENU_DATE);
+        }
+
+        String city() {
+            return CITIES[rng.nextInt(CITIES.length)];
+        }
+
+        String customer(HandlerBenchmarks b) {
+            return String.valueOf(1 + rng.nextInt(b.customers));
+        }
+
+        String instance(HandlerBenchmarks b) {
+            return String.valueOf(1 + rng.nextInt(b.flights * DAYS));
+        }
+
+        // the first reservation of a flight instance; an instance that was
+        // not scheduled has none, and the miss is measured too
+        String reservation(HandlerBenchmarks b) {
+            return String.format("R%04d", (long) rng.nextInt(b.flights * DAYS) * MAX_DEMAND + 1);
+        }
+
+        String plane(HandlerBenchmarks b) {
+            return String.format("PL%03d", 1 + rng.nextInt(b.planes));
+        }
+
+        String technician(HandlerBenchmarks b) {
+            return String.format("T%03d", 1 + rng.nextInt(b.technicians));
+        }
+
+        String pilot(HandlerBenchmarks b) {
+            return String.format("P%03d", 1 + rng.nextInt(b.pilots));
+        }
+
+        String repairDate() {
+            return FIRST_REPAIR_DAY.plusDays(rng.nextInt(REPAIR_DAYS)).toString();
+        }
+
+        String repairCode() {
+            return REPAIR_CODES[rng.nextInt(REPAIR_CODES.length)];
+        }
+
+        // a menu choice from 1 to n
+        String choice(int n) {
+            return String.valueOf(1 + rng.nextInt(n));
+        }
+    }//end Inputs
+
+    @Benchmark
+    public Object viewDateFlights(Inputs in) throws Exception {
+        return AppBridge.run(viewDateFlights, esql, in.city() + "\n" + in.city() + "\n" + in.menuDate() + "\n");
+    }
+
+    @Benchmark
+    public Object flightStats(Inputs in) throws Exception {
+        String start = in.date();
+        return AppBridge.run(flightStats, esql, in.flight(this) + "\n" + start + "\n"
+                + LocalDate.parse(start).plusDays(7) + "\n");
+    }
+
+    @Benchmark
+    public Object flightsPerDate(Inputs in) throws Exception {
+        return AppBridge.run(flightsPerDate, esql, in.date() + "\n");
+    }
+
+    @Benchmark
+    public Object passengersList(Inputs in) throws Exception {
+        return AppBridge.run(passengersList, esql, in.flight(this) + "\n" + in.date() + "\n");
+    }
+
+    @Benchmark
+    public Object findTicketPrice(Inputs in) throws Exception {
+        return AppBridge.run(findTicketPrice, esql, in.flight(this) + "\n" + in.date() + "\n");
+    }
+
+    @Benchmark
+    public Object viewCurrentReservations(Inputs in) throws Exception {
+        return AppBridge.run(viewCurrentReservations, esql, in.customer(this) + "\n");
+    }
+
+    @Benchmark
+    public Object flightSeats(Inputs in) throws Exception {
+        return AppBridge.run(flightSeats, esql, in.flight(this) + "\n" + in.date() + "\n");
+    }
+
+    @Benchmark
+    public Object flightStatus(Inputs in) throws Exception {
+        return AppBridge.run(flightStatus, esql, in.flight(this) + "\n" + in.date() + "\n");
+    }
+
+    @Benchmark
+    public Object findConnections(Inputs in) throws Exception {
+        return AppBridge.run(findConnections, esql, in.city() + "\n" + in.city() + "\n" + in.menuDate() + "\n"
+                + in.choice(3) + "\n");
+    }
+
+    @Benchmark
+    public Object routeSearch(Inputs in) throws Exception {
+        LocalDate date = FIRST_DAY.plusDays(in.rng.nextInt(DAYS));
+        return search.invoke(routes, in.city(), in.city(), date, orders[in.rng.nextInt(orders.length)]);
+    }
+
+    @Benchmark
+    public Object passengerInfo(Inputs in) throws Exception {
+        return AppBridge.run(passengerInfo, esql, in.reservation(this) + "\n");
+    }
+
+    @Benchmark
+    public Object technicianInfo(Inputs in) throws Exception {
+        return AppBridge.run(technicianInfo, esql, in.technician(this) + "\n");
+    }
+
+    @Benchmark
+    public Object planeRepairRange(Inputs in) throws Exception {
+        String start = in.repairDate();
+        return AppBridge.run(planeRepairRange, esql, in.plane(this) + "\n" + start + "\n"
+                + LocalDate.parse(start).plusDays(7) + "\n");
+    }
+
+    @Benchmark
+    public Object findAllRepairs(Inputs in) throws Exception {
+        String start = in.repairDate();
+        return AppBridge.run(findAllRepairs, esql, in.plane(this) + "\n" + start + "\n"
+                + LocalDate.parse(start).plusDays(7) + "\n");
+    }
+
+    /**
+     * Rolls up a week of flights, grouped and bucketed in one of the ways
+     * the menu offers.
+     */
+    @Benchmark
+    public Object fleetStats(Inputs in) throws Exception {
+        String start = in.date();
+        return AppBridge.run(fleetStats, esql, in.choice(4) + "\n" + in.choice(3) + "\n" + start + "\n"
+                + LocalDate.parse(start).plusDays(7) + "\n");
+    }
+
+    @Benchmark
+    public Object reconcileWaitlists() throws Exception {
+        return AppBridge.run(reconcileWaitlists, esql, "");
+    }
+
+    /**
+     * Creates a user with a name no run has used, through the write batcher
+     * and the password hashing.
+     */
+    @Benchmark
+    public Object createUser(Inputs in) throws Exception {
+        return AppBridge.run(createUser, esql, "bench-" + UUID.randomUUID() + "\n" + BenchDatabase.PASSWORD + "\n"
+                + in.choice(4) + "\n");
+    }
+
+    @Benchmark
+    public Object maintenanceRequest(Inputs in) throws Exception {
+        return AppBridge.run(maintenanceRequest, esql, in.pilot(this) + "\n" + in.plane(this) + "\n"
+                + in.repairCode() + "\n" + in.repairDate() + "\n");
+    }
+
+    @Benchmark
+    public Object logIn() throws Exception {
+        return AppBridge.run(logIn, esql, BenchDatabase.USER_NAME + "\n" + BenchDatabase.PASSWORD + "\n");
+    }
+
+    /**
+     * Books a seat and cancels it again, so the data does not drift over a
+     * long run; the cancellation promotes a waitlisted passenger whenever
+     * the booking took the last seat.
+     */
+    @Benchmark
+    public Object makeAndCancelReservation(Inputs in) throws Exception {
+        String output = AppBridge.capture(makeReservation, esql, in.customer(this) + "\n" + in.instance(this) + "\n");
+        int at = output.indexOf("Reservation ID: ");
+        if (at < 0) {
+            // the instance was not scheduled; the failed attempt is measured too
+            return output;
+        }
+        int end = output.indexOf('\n', at);
+        String reservationId = output.substring(at + "Reservation ID: ".length(), end < 0 ? output.length() : end);
+        return AppBridge.run(cancelReservation, esql, reservationId.trim() + "\n");
+    }
+}
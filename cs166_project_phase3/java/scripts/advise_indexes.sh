@@ -0,0 +1,11 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+
+# compile the java program
+source $DIR/build.sh
+
+#replay the handler statements, try the indexes they would benefit from and
+#write create_indexes.sql with the ones that paid off to create_indexes.advised.sql
+#pass --apply to keep the accepted indexes in the database
+java -cp $AIRLINE_CP IndexAdvisor $USER"_project_phase_3_DB" $PGPORT $USER $DIR/../../sql/src/create_indexes.sql $DIR/../../sql/src/create_indexes.advised.sql "$@"
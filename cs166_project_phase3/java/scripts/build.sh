@@ -0,0 +1,14 @@
+#!/bin/bash
+BUILD_DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )/.." && pwd )"
+
+#build the java program and set AIRLINE_CP to the classpath to run it with
+#with maven it is built by pom.xml against a current postgres JDBC driver;
+#LEGACY_DRIVER=1, or a machine without maven, compiles it with javac against
+#the bundled lib/pg73jdbc3.jar
+if [ -z "$LEGACY_DRIVER" ] && command -v mvn > /dev/null 2>&1; then
+    mvn -q -f $BUILD_DIR/pom.xml package
+    AIRLINE_CP=$BUILD_DIR/target/airline.jar
+else
+    javac -d $BUILD_DIR/classes $BUILD_DIR/src/*.java
+    AIRLINE_CP=$BUILD_DIR/classes:$BUILD_DIR/lib/pg73jdbc3.jar
+fi
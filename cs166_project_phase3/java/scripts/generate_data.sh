@@ -0,0 +1,16 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+
+# compile the java program
+source $DIR/build.sh
+
+#generate synthetic data: generate_data.sh <scale> <seed> [<output dir>]
+#without an output dir the data is streamed into an empty database
+SCALE=${1:-1}
+SEED=${2:-1}
+if [ -n "$3" ]; then
+    java -cp $AIRLINE_CP DataGenerator $SCALE $SEED $3
+else
+    java -cp $AIRLINE_CP DataGenerator $SCALE $SEED --db $USER"_project_phase_3_DB" $PGPORT $USER
+fi
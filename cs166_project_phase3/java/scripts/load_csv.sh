@@ -0,0 +1,10 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+
+# compile the java program
+source $DIR/build.sh
+
+#load the csv files under data/, resuming from the last checkpoint
+#pass --restart to load from the start, or table names to load only those
+java -cp $AIRLINE_CP CsvLoader $USER"_project_phase_3_DB" $PGPORT $USER $DIR/../../data "$@"
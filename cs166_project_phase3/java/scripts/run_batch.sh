@@ -0,0 +1,10 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+
+# compile the java program
+source $DIR/build.sh
+
+#run the commands of a file, or of standard input when none is given, and
+#print one JSON result per command
+java $JAVA_OPTS -cp $AIRLINE_CP BatchRunner $USER"_project_phase_3_DB" $PGPORT $USER "$@"
@@ -10,9 +10,10 @@
  *
  */
 
-import java.sql.DriverManager;
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -26,7 +27,6 @@ import java.lang.Math;
 import java.io.IOException;
 import java.util.Scanner;
 import java.time.*;
-import java.time.format.DateTimeFormatter;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
@@ -35,12 +35,69 @@ import java.time.format.DateTimeFormatter;
  */
 public class AirlineManagement {
 
-    // reference to physical database connection.
-    private Connection _connection = null;
+    // rows fetched per round trip when a query result is streamed
+    static final int FETCH_SIZE = Integer.getInteger("airline.fetchSize", 1000);
+
+    // times a transaction is attempted before a conflict is reported
+    static final int TRANSACTION_ATTEMPTS = Integer.getInteger("airline.transactionAttempts", 5);
+
+    // the statements of the menu handlers; BatchRunner and IndexAdvisor run
+    // the same text
+    static final String FLIGHT_SEATS_QUERY =
+            "SELECT SeatsTotal, SeatsSold, (SeatsTotal - SeatsSold) as SeatsOpen FROM FlightInstance WHERE FlightNumber = ? AND FlightDate = ?";
+    static final String FLIGHT_STATUS_QUERY =
+            "SELECT DepartedOnTime, ArrivedOnTime FROM FlightInstance WHERE FlightNumber = ? AND FlightDate = ?";
+    static final String FLIGHTS_PER_DATE_QUERY =
+            "SELECT * FROM FlightInstance WHERE FlightDate = ?";
+    static final String PASSENGERS_LIST_QUERY =
+            "SELECT f.FlightInstanceID, r.CustomerID, r.Status  FROM FlightInstance f, Reservation r WHERE f.FlightNumber = ? AND f.FlightDate = ? AND f.FlightInstanceID = r.FlightInstanceID";
+    // no row: the reservation does not exist; a row without a customer: it
+    // has no passenger
+    static final String PASSENGER_INFO_QUERY =
+            "SELECT c.* FROM Reservation r LEFT JOIN Customer c ON c.CustomerID = r.CustomerID WHERE r.ReservationID = ?";
+    static final String TECHNICIAN_INFO_QUERY =
+            "SELECT * FROM Repair WHERE TechnicianID = ?";
+    static final String PLANE_REPAIR_RANGE_QUERY =
+            "SELECT PlaneID, RepairDate, RepairCode FROM Repair WHERE RepairDate >= ? AND RepairDate <= ? AND PlaneID = ?";
+    // FlightAvailability holds the flights of each city pair and date with their
+    // scheduled times, kept current by triggers (see create_availability.sql)
+    static final String VIEW_DATE_FLIGHTS_QUERY =
+            "SELECT FlightNumber, DepartureTime, ArrivalTime, NumOfStops, TicketCost, SeatsOpen FROM FlightAvailability"
+            + " WHERE DepartureCity = ? AND ArrivalCity = ? AND FlightDate = ? ORDER BY DepartureTime";
+    static final String TICKET_PRICE_QUERY =
+            "SELECT TicketCost FROM FlightInstance WHERE FlightNumber = ? AND FlightDate = ?";
+    static final String CURRENT_RESERVATIONS_QUERY =
+            "SELECT ReservationID, FlightInstanceID, Status FROM Reservation WHERE CustomerID = ?";
+    static final String MAINTENANCE_REQUEST_INSERT =
+            "INSERT INTO MaintenanceRequest(RequestID, PlaneID, RepairCode, RequestDate, PilotID) VALUES (?, ?, ?, ?, ?)";
+    static final String FIND_ALL_REPAIRS_QUERY =
+            "SELECT * FROM Repair WHERE PlaneID = ? AND RepairDate >= ? AND RepairDate <= ?";
+    static final String PILOT_REQUESTS_QUERY =
+            "SELECT * FROM MaintenanceRequest WHERE PilotID = ?";
+
+    // pool of physical database connections; each one carries its own
+    // prepared statement cache
+    private ConnectionPool _pool = null;
+
+    // block allocator for the primary keys backed by id sequences
+    private IdAllocator _ids = null;
+
+    // in-memory copy of Flight, Plane, Pilot, Technician and Schedule
+    private RefData _refData = null;
+
+    // single-row writes of concurrent operators, committed together
+    private WriteBatcher _writes = null;
+
+    // logins, cached credentials and sessions of the operators
+    private Authenticator _auth = null;
+
+    // in-memory flight graph for itinerary searches
+    private RouteSearch _routes = null;
 
     // handling the keyboard inputs through a BufferedReader
-    // This variable can be global for convenience.
-    static BufferedReader in = new BufferedReader(
+    // This variable can be global for convenience. Reads are routed to the
+    // session of the current thread when running as a session server.
+    static BufferedReader in = new Session.Input(
             new InputStreamReader(System.in));
 
     // static Scanner scanner = new Scanner(System.in);
@@ -57,12 +114,27 @@ public class AirlineManagement {
 
         System.out.print("Connecting to database...");
         try {
-            // constructs the connection URL
-            String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-            System.out.println("Connection URL: " + url + "\n");
-
-            // obtain a physical connection
-            this._connection = DriverManager.getConnection(url, user, passwd);
+            // constructs the connection URL with the options the driver supports
+            String url = DriverSupport.url(dbport, dbname);
+            System.out.println("Connection URL: " + url);
+            System.out.println("Driver: " + DriverSupport.describe() + "\n");
+
+            // create the pool and obtain a first physical connection
+            this._pool = new ConnectionPool(url, user, passwd);
+            this._pool.release(this._pool.borrow());
+            this._ids = new IdAllocator(this);
+            this._refData = new RefData(this);
+            this._refData.start();
+            this._writes = new WriteBatcher(this);
+            this._auth = new Authenticator(this);
+            this._routes = new RouteSearch(this);
+            SlowQueryLog.start(this._pool);
+            try {
+                Metrics.start(this._pool);
+            } catch (IOException e) {
+                // the application runs the same without its metrics endpoint
+                System.err.println("Metrics endpoint not started: " + e.getMessage());
+            }
             System.out.println("Done");
         } catch (Exception e) {
             System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
@@ -79,16 +151,181 @@ public class AirlineManagement {
      * @throws java.sql.SQLException when update failed
      */
     public void executeUpdate(String sql) throws SQLException {
-        // creates a statement object
-        Statement stmt = this._connection.createStatement();
+        ConnectionPool.PooledConnection conn = this._pool.borrow();
+        SQLException failure = null;
+        long started = System.nanoTime();
+        int rows = 0;
+        try {
+            // creates a statement object
+            Statement stmt = conn.connection().createStatement();
 
-        // issues the update instruction
-        stmt.executeUpdate(sql);
+            // issues the update instruction
+            rows = stmt.executeUpdate(sql);
+
+            // close the instruction
+            stmt.close();
+        } catch (SQLException e) {
+            failure = e;
+            throw e;
+        } finally {
+            Metrics.statement(sql, started, rows, 0, failure != null);
+            SlowQueryLog.check(sql, null, started, failure != null);
+            this._pool.release(conn, failure);
+        }
+    }//end executeUpdate
 
-        // close the instruction
-        stmt.close();
+    /**
+     * Method to execute a parameterized update SQL statement. The statement is
+     * taken from the statement cache, so each SQL shape is planned once.
+     *
+     * @param sql the input SQL string with ? placeholders
+     * @param params the values bound to the placeholders, in order
+     * @return the number of rows affected
+     * @throws java.sql.SQLException when update failed
+     */
+    public int executeUpdate(String sql, Object... params) throws SQLException {
+        ConnectionPool.PooledConnection conn = this._pool.borrow();
+        SQLException failure = null;
+        long started = System.nanoTime();
+        int rows = 0;
+        try {
+            PreparedStatement stmt = conn.statements().prepare(sql);
+            StatementCache.bind(stmt, params);
+            rows = stmt.executeUpdate();
+            return rows;
+        } catch (SQLException e) {
+            failure = e;
+            conn.statements().evict(sql);
+            throw e;
+        } finally {
+            Metrics.statement(sql, started, rows, 0, failure != null);
+            SlowQueryLog.check(sql, params, started, failure != null);
+            this._pool.release(conn, failure);
+        }
     }//end executeUpdate
 
+    /**
+     * Method to execute a parameterized query SQL instruction (i.e. SELECT)
+     * through the statement cache. This method issues the query to the DBMS
+     * exactly once and returns the materialized result.
+     *
+     * @param query the input query string with ? placeholders
+     * @param params the values bound to the placeholders, in order
+     * @return the materialized query result
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public QueryResult executeQueryForResult(String query, Object... params) throws SQLException {
+        ConnectionPool.PooledConnection conn = this._pool.borrow();
+        SQLException failure = null;
+        long started = System.nanoTime();
+        QueryResult result = null;
+        try {
+            PreparedStatement stmt = conn.statements().prepare(query);
+            StatementCache.bind(stmt, params);
+            ResultSet rs = stmt.executeQuery();
+            try {
+                result = QueryResult.from(rs);
+                return result;
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            failure = e;
+            conn.statements().evict(query);
+            throw e;
+        } finally {
+            Metrics.statement(query, started, result == null ? 0 : result.rowCount(),
+                    result == null ? 0 : result.bytes(), failure != null);
+            SlowQueryLog.check(query, params, started, failure != null);
+            this._pool.release(conn, failure);
+        }
+    }//end executeQueryForResult
+
+    /**
+     * Parameterized version of executeQueryAndPrintResult.
+     *
+     * @param query the input query string with ? placeholders
+     * @param params the values bound to the placeholders, in order
+     * @return the number of rows returned
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public int executeQueryAndPrintResult(String query, Object... params) throws SQLException {
+        return streamQuery(query, params);
+    }
+
+    /**
+     * Parameterized version of executeQueryAndReturnResult.
+     *
+     * @param query the input query string with ? placeholders
+     * @param params the values bound to the placeholders, in order
+     * @return the query result as a list of records
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public List<List<String>> executeQueryAndReturnResult(String query, Object... params) throws SQLException {
+        return executeQueryForResult(query, params).toList();
+    }
+
+    /**
+     * Parameterized version of executeQuery.
+     *
+     * @param query the input query string with ? placeholders
+     * @param params the values bound to the placeholders, in order
+     * @return the number of rows returned
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public int executeQuery(String query, Object... params) throws SQLException {
+        return executeQueryForResult(query, params).rowCount();
+    }
+
+    /**
+     * Method to execute an input query SQL instruction (i.e. SELECT). This
+     * method issues the query to the DBMS exactly once and returns the rows
+     * together with the row count and the column names. Every other query
+     * helper is built on top of it.
+     *
+     * @param query the input query string
+     * @return the materialized query result
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public QueryResult executeQueryForResult(String query) throws SQLException {
+        ConnectionPool.PooledConnection conn = this._pool.borrow();
+        SQLException failure = null;
+        long started = System.nanoTime();
+        QueryResult result = null;
+        try {
+            // creates a statement object
+            Statement stmt = conn.connection().createStatement();
+            try {
+                // issues the query instruction and drains it
+                ResultSet rs = stmt.executeQuery(query);
+                result = QueryResult.from(rs);
+                return result;
+            } finally {
+                // close the instruction
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            failure = e;
+            throw e;
+        } finally {
+            Metrics.statement(query, started, result == null ? 0 : result.rowCount(),
+                    result == null ? 0 : result.bytes(), failure != null);
+            SlowQueryLog.check(query, null, started, failure != null);
+            this._pool.release(conn, failure);
+        }
+    }//end executeQueryForResult
+
+    /**
+     * Method to output an already executed query result to standard out.
+     * Nothing is printed for an empty result.
+     *
+     * @param result the result returned by executeQueryForResult
+     * @return the number of rows printed
+     */
+    public int printResult(QueryResult result) {
+        return new ResultPrinter().print(result);
+    }//end printResult
+
     /**
      * Method to execute an input query SQL instruction (i.e. SELECT). This
      * method issues the query to the DBMS and outputs the results to standard
@@ -99,48 +336,77 @@ public class AirlineManagement {
      * @throws java.sql.SQLException when failed to execute the query
      */
     public int executeQueryAndPrintResult(String query) throws SQLException {
-        // creates a statement object
-        Statement stmt = this._connection.createStatement();
-
-        // issues the query instruction
-        ResultSet rs = stmt.executeQuery(query);
-
-        /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-         */
-        ResultSetMetaData rsmd = rs.getMetaData();
-        int numCol = rsmd.getColumnCount();
-        int rowCount = 0;
-
-        // iterates through the result set and output them to standard out.
-        boolean outputHeader = true;
-        while (rs.next()) {
-            if (outputHeader) {
-                // for(int i = 1; i <= numCol; i++){
-                // System.out.print(rsmd.getColumnName(i) + "\t");
-                // }
-                // System.out.println();
-
-                for (int i = 1; i <= numCol; i++) {
-                    System.out.printf("%-20s", rsmd.getColumnName(i));
+        return streamQuery(query, null);
+    }//end executeQuery
+
+    /*
+     * Prints a query while it is being fetched. The rows are read through a
+     * server-side cursor FETCH_SIZE rows at a time, which Postgres only opens
+     * inside a transaction, so autocommit is switched off for the duration.
+     * With null params the query is sent as a plain statement.
+     */
+    private int streamQuery(String query, Object[] params) throws SQLException {
+        ConnectionPool.PooledConnection conn = this._pool.borrow();
+        Connection connection = conn.connection();
+        SQLException failure = null;
+        boolean autoCommit = true;
+        long started = System.nanoTime();
+        ResultPrinter printer = new ResultPrinter();
+        int rows = 0;
+        try {
+            autoCommit = connection.getAutoCommit();
+            if (autoCommit) {
+                connection.setAutoCommit(false);
+            }
+            Statement stmt;
+            ResultSet rs;
+            if (params == null) {
+                stmt = connection.createStatement();
+                stmt.setFetchSize(FETCH_SIZE);
+                rs = stmt.executeQuery(query);
+            } else {
+                PreparedStatement prepared = conn.statements().prepare(query);
+                StatementCache.bind(prepared, params);
+                prepared.setFetchSize(FETCH_SIZE);
+                rs = prepared.executeQuery();
+                stmt = null;
+            }
+            try {
+                rows = printer.print(rs);
+                return rows;
+            } finally {
+                rs.close();
+                if (stmt != null) {
+                    stmt.close();
                 }
-                System.out.println();
-                outputHeader = false;
             }
-            // for (int i=1; i<=numCol; ++i)
-            //    System.out.print (rs.getString (i) + "\t");
-            // System.out.println ();
-
-            for (int i = 1; i <= numCol; ++i) {
-                System.out.printf("%-20s", rs.getString(i));
+        } catch (SQLException e) {
+            failure = e;
+            if (params != null) {
+                conn.statements().evict(query);
             }
-            System.out.println();
-            ++rowCount;
-        }//end while
-        stmt.close();
-        return rowCount;
-    }//end executeQuery
+            throw e;
+        } finally {
+            try {
+                if (autoCommit && !connection.getAutoCommit()) {
+                    // a read, so ending the transaction either way is safe
+                    if (failure == null) {
+                        connection.commit();
+                    } else {
+                        connection.rollback();
+                    }
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            Metrics.statement(query, started, rows, printer.bytes(), failure != null);
+            SlowQueryLog.check(query, params, started, failure != null);
+            this._pool.release(conn, failure);
+        }
+    }//end streamQuery
 
     /**
      * Method to execute an input query SQL instruction (i.e. SELECT). This
@@ -152,32 +418,7 @@ public class AirlineManagement {
      * @throws java.sql.SQLException when failed to execute the query
      */
     public List<List<String>> executeQueryAndReturnResult(String query) throws SQLException {
-        // creates a statement object
-        Statement stmt = this._connection.createStatement();
-
-        // issues the query instruction
-        ResultSet rs = stmt.executeQuery(query);
-
-        /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-         */
-        ResultSetMetaData rsmd = rs.getMetaData();
-        int numCol = rsmd.getColumnCount();
-        int rowCount = 0;
-
-        // iterates through the result set and saves the data returned by the query.
-        boolean outputHeader = false;
-        List<List<String>> result = new ArrayList<List<String>>();
-        while (rs.next()) {
-            List<String> record = new ArrayList<String>();
-            for (int i = 1; i <= numCol; ++i) {
-                record.add(rs.getString(i));
-            }
-            result.add(record);
-        }//end while
-        stmt.close();
-        return result;
+        return executeQueryForResult(query).toList();
     }//end executeQueryAndReturnResult
 
     /**
@@ -189,52 +430,118 @@ public class AirlineManagement {
      * @throws java.sql.SQLException when failed to execute the query
      */
     public int executeQuery(String query) throws SQLException {
-        // creates a statement object
-        Statement stmt = this._connection.createStatement();
+        return executeQueryForResult(query).rowCount();
+    }
+
+    /**
+     * Method to run several statements as one transaction on a single pooled
+     * connection. The work is committed when it returns and rolled back when
+     * it throws. A transaction that lost a serialization conflict or a
+     * deadlock is retried from the start a few times.
+     *
+     * @param work the statements to run
+     * @return the value returned by the work
+     * @throws java.sql.SQLException when the transaction failed
+     */
+    public <T> T executeTransaction(Transaction.Work<T> work) throws SQLException {
+        for (int attempt = 1; ; ++attempt) {
+            ConnectionPool.PooledConnection conn = this._pool.borrow();
+            Connection connection = conn.connection();
+            SQLException failure = null;
+            try {
+                connection.setAutoCommit(false);
+                T value = work.run(new Transaction(conn));
+                connection.commit();
+                return value;
+            } catch (SQLException e) {
+                failure = e;
+                try {
+                    connection.rollback();
+                } catch (SQLException ignored) {
+                    // the connection is dropped by release below if broken
+                }
+                if (attempt >= TRANSACTION_ATTEMPTS || !isRetryable(e)) {
+                    throw e;
+                }
+            } finally {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+                this._pool.release(conn, failure);
+            }
+        }
+    }//end executeTransaction
 
-        // issues the query instruction
-        ResultSet rs = stmt.executeQuery(query);
+    /*
+     * 40001 is a serialization failure and 40P01 a detected deadlock; both
+     * succeed when simply run again.
+     */
+    private static boolean isRetryable(SQLException e) {
+        String state = e.getSQLState();
+        return "40001".equals(state) || "40P01".equals(state);
+    }
 
-        int rowCount = 0;
+    /**
+     * @return the connection pool shared by every helper of this instance
+     */
+    public ConnectionPool pool() {
+        return this._pool;
+    }
 
-        // iterates through the result set and count nuber of results.
-        while (rs.next()) {
-            rowCount++;
-        }//end while
-        stmt.close();
-        return rowCount;
+    /**
+     * @return the allocator for new primary keys
+     */
+    public IdAllocator ids() {
+        return this._ids;
     }
 
     /**
-     * Method to fetch the last value from sequence. This method issues the
-     * query to the DBMS and returns the current value of sequence used for
-     * autogenerated keys
-     *
-     * @param sequence name of the DB sequence
-     * @return current value of a sequence
-     * @throws java.sql.SQLException when failed to execute the query
+     * @return the cached reference tables used to validate keys
      */
-    public int getCurrSeqVal(String sequence) throws SQLException {
-        Statement stmt = this._connection.createStatement();
+    public RefData refData() {
+        return this._refData;
+    }
 
-        ResultSet rs = stmt.executeQuery(String.format("Select currval('%s')", sequence));
-        if (rs.next()) {
-            return rs.getInt(1);
-        }
-        return -1;
+    /**
+     * @return the batcher that groups single-row writes into shared commits
+     */
+    public WriteBatcher writes() {
+        return this._writes;
+    }
+
+    /**
+     * @return the authenticator that logs users in and keeps their sessions
+     */
+    public Authenticator auth() {
+        return this._auth;
     }
 
     /**
-     * Method to close the physical connection if it is open.
+     * @return the itinerary search over the cached flight graph
+     */
+    public RouteSearch routes() {
+        return this._routes;
+    }
+
+    /**
+     * Method to close the pooled physical connections.
      */
     public void cleanup() {
-        try {
-            if (this._connection != null) {
-                this._connection.close();
-            }//end if
-        } catch (SQLException e) {
-            // ignored.
-        }//end try
+        if (this._refData != null) {
+            this._refData.close();
+        }
+        if (this._writes != null) {
+            this._writes.close();
+        }
+        Metrics.stop();
+        SlowQueryLog.stop();
+        if (this._pool != null) {
+            this._pool.close();
+        }//end if
     }//end cleanup
 
     /**
@@ -244,20 +551,20 @@ public class AirlineManagement {
      * <login file>
      */
     public static void main(String[] args) {
-        if (args.length != 3) {
+        if (args.length != 3 && args.length != 4) {
             System.err.println(
                     "Usage: "
                     + "java [-classpath <classpath>] "
                     + AirlineManagement.class.getName()
-                    + " <dbname> <port> <user>");
+                    + " <dbname> <port> <user> [<session server port>]");
             return;
         }//end if
 
         Greeting();
         AirlineManagement esql = null;
         try {
-            // use postgres JDBC driver.
-            Class.forName("org.postgresql.Driver").newInstance();
+            // use postgres JDBC driver, a current one or the bundled 7.3 one
+            DriverSupport.load();
             // instantiate the AirlineManagement object and creates a physical
             // connection.
             String dbname = args[0];
@@ -265,177 +572,13 @@ public class AirlineManagement {
             String user = args[2];
             esql = new AirlineManagement(dbname, dbport, user, "");
 
-            boolean keepon = true;
-            while (keepon) {
-                // These are sample SQL statements
-                System.out.println("MAIN MENU");
-                System.out.println("---------");
-                System.out.println("1. Create user");
-                System.out.println("2. Log in");
-                System.out.println("9. < EXIT");
-                String authorisedUser = null;
-                switch (readChoice()) {
-                    case 1:
-                        CreateUser(esql);
-                        break;
-                    case 2:
-                        authorisedUser = LogIn(esql);
-                        break;
-                    case 9:
-                        keepon = false;
-                        break;
-                    default:
-                        System.out.println("Unrecognized choice!");
-                        break;
-                }//end switch
-                if (authorisedUser != null) {
-                    boolean usermenu = true;
-                    if (authorisedUser.equals("1")) {
-                        while (usermenu) {
-                            System.out.println("\nAIRLINE MANAGEMENT");
-                            System.out.println("---------");
-
-                            //**the following functionalities should only be able to be used by Management**
-                            System.out.println("1. View All Flights");
-                            System.out.println("2. View Weekly Schedule of a Flight");
-                            System.out.println("3. View Flight Seats");
-                            System.out.println("4. View Flight Status");
-                            System.out.println("5. View Flights of the day");
-                            System.out.println("6. View Passenger List Status");
-                            System.out.println("7. View Passenger Information");
-                            System.out.println("8. View Plane Information");
-                            System.out.println("9. View All Repairs of a Technician");
-                            System.out.println("10. View List of Repairs on a Plane");
-                            System.out.println("11. View Flight Statistics");
-                            System.out.println("20. Log out");
-                            switch (readChoice()) {
-                                case 1:
-                                    ViewFlights(esql);
-                                    break;
-                                case 2:
-                                    FlightWeeklySchedule(esql);
-                                    break;
-                                case 3:
-                                    FlightSeats(esql);
-                                    break;
-                                case 4:
-                                    FlightStatus(esql);
-                                    break;
-                                case 5:
-                                    FlightsPerDate(esql);
-                                    break;
-                                case 6:
-                                    PassengersList(esql);
-                                    break;
-                                case 7:
-                                    PassengerInfo(esql);
-                                    break;
-                                case 8:
-                                    PlaneInfo(esql);
-                                    break;
-                                case 9:
-                                    TechnicianInfo(esql);
-                                    break;
-                                case 10:
-                                    PlaneRepairRange(esql);
-                                    break;
-                                case 11:
-                                    FlightStats(esql);
-                                    break;
-                                case 20:
-                                    usermenu = false;
-                                    break;
-                                default:
-                                    System.out.println("Unrecognized choice!");
-                                    break;
-                            }
-                        }
-                    } else if (authorisedUser.equals("2")) {
-                        while (usermenu) {
-                            System.out.println("\nCUSTOMER");
-                            System.out.println("---------");
-                            //**the following functionalities should only be able to be used by customers**
-                            System.out.println("1. Find all flights on a given date");
-                            System.out.println("2. Find ticket price");
-                            System.out.println("3. Find airplane type");
-                            System.out.println("4. Make a reservation");
-                            System.out.println("5. Cancel a reservation");
-                            System.out.println("6. View current reservations");
-                            System.out.println("20. Log out");
-
-                            switch (readChoice()) {
-                                case 1:
-                                    ViewDateFlights(esql);
-                                    break;
-                                case 2:
-                                    FindTicketPrice(esql);
-                                    break;
-                                case 3:
-                                    FindAirplaneType(esql);
-                                    break;
-                                case 4:
-                                    MakeReservation(esql);
-                                    break;
-                                case 5:
-                                    CancelReservation(esql);
-                                    break;
-                                case 6:
-                                    ViewCurrentReservations(esql);
-                                    break;
-                                case 20:
-                                    usermenu = false;
-                                    break;
-                                default:
-                                    System.out.println("Unrecognized choice!");
-                                    break;
-                            }
-                        }
-                    } else if (authorisedUser.equals("3")) {
-                        while (usermenu) {
-                            System.out.println("\nPILOTS");
-                            System.out.println("---------");
-                            System.out.println("1. Maintenace Request");
-                            System.out.println("20. Log out");
-
-                            switch (readChoice()) {
-                                //**the following functionalities should ony be able to be used by Pilots**
-                                case 1:
-                                    MaintenaceRequest(esql);
-                                    break;
-                                case 20:
-                                    usermenu = false;
-                                    break;
-                                default:
-                                    System.out.println("Unrecognized choice!");
-                                    break;
-                            }
-                        }
-                    } else if (authorisedUser.equals("4")) {
-                        while (usermenu) {
-                            System.out.println("\nTECHNICIAN");
-                            System.out.println("---------");
-                            //**the following functionalities should only be able to be used by technicians**
-                            System.out.println("1. Find all repairs on a plane");
-                            System.out.println("2. Find all pilot requests");
-                            System.out.println("20. Log out");
-                            switch (readChoice()) {
-                                case 1:
-                                    FindAllRepairs(esql);
-                                    break;
-                                case 2:
-                                    FindAllPilotRequests(esql);
-                                    break;
-                                case 20:
-                                    usermenu = false;
-                                    break;
-                                default:
-                                    System.out.println("Unrecognized choice!");
-                                    break;
-                            }
-                        }
-                    }
-                }
-            }//end while
+            if (args.length == 4) {
+                // serve concurrent operator sessions instead of the console
+                SessionServer server = new SessionServer(esql, Integer.parseInt(args[3]));
+                server.serve();
+            } else {
+                runMenu(esql);
+            }
         } catch (Exception e) {
             System.err.println(e.getMessage());
         } finally {
@@ -452,6 +595,321 @@ public class AirlineManagement {
         }//end try
     }//end main
 
+    /**
+     * Runs the main menu and the menus of the logged in user until the user
+     * exits. The console and every server session go through this loop.
+     *
+     * @param esql the shared database utility
+     */
+    public static void runMenu(final AirlineManagement esql) {
+        boolean keepon = true;
+        while (keepon) {
+            // These are sample SQL statements
+            System.out.println("MAIN MENU");
+            System.out.println("---------");
+            System.out.println("1. Create user");
+            System.out.println("2. Log in");
+            System.out.println("9. < EXIT");
+            Authenticator.Login login = null;
+            switch (readChoice()) {
+                case 1:
+                    timed("CreateUser", new Runnable() {
+                        public void run() {
+                            CreateUser(esql);
+                        }
+                    });
+                    break;
+                case 2:
+                    Metrics.begin("LogIn");
+                    try {
+                        login = LogIn(esql);
+                    } catch (RuntimeException e) {
+                        Metrics.fail();
+                        throw e;
+                    } finally {
+                        Metrics.end();
+                    }
+                    break;
+                case 9:
+                    keepon = false;
+                    break;
+                default:
+                    System.out.println("Unrecognized choice!");
+                    break;
+            }//end switch
+            if (login != null) {
+                String authorisedUser = login.userType;
+                boolean usermenu = true;
+                if (authorisedUser.equals("1")) {
+                    while (usermenu) {
+                        System.out.println("\nAIRLINE MANAGEMENT");
+                        System.out.println("---------");
+
+                        //**the following functionalities should only be able to be used by Management**
+                        System.out.println("1. View All Flights");
+                        System.out.println("2. View Weekly Schedule of a Flight");
+                        System.out.println("3. View Flight Seats");
+                        System.out.println("4. View Flight Status");
+                        System.out.println("5. View Flights of the day");
+                        System.out.println("6. View Passenger List Status");
+                        System.out.println("7. View Passenger Information");
+                        System.out.println("8. View Plane Information");
+                        System.out.println("9. View All Repairs of a Technician");
+                        System.out.println("10. View List of Repairs on a Plane");
+                        System.out.println("11. View Flight Statistics");
+                        System.out.println("12. View Fleet Statistics");
+                        System.out.println("13. Reconcile Waitlists");
+                        System.out.println("20. Log out");
+                        switch (readChoice(esql, login)) {
+                            case 1:
+                                timed("ViewFlights", new Runnable() {
+                                    public void run() {
+                                        ViewFlights(esql);
+                                    }
+                                });
+                                break;
+                            case 2:
+                                timed("FlightWeeklySchedule", new Runnable() {
+                                    public void run() {
+                                        FlightWeeklySchedule(esql);
+                                    }
+                                });
+                                break;
+                            case 3:
+                                timed("FlightSeats", new Runnable() {
+                                    public void run() {
+                                        FlightSeats(esql);
+                                    }
+                                });
+                                break;
+                            case 4:
+                                timed("FlightStatus", new Runnable() {
+                                    public void run() {
+                                        FlightStatus(esql);
+                                    }
+                                });
+                                break;
+                            case 5:
+                                timed("FlightsPerDate", new Runnable() {
+                                    public void run() {
+                                        FlightsPerDate(esql);
+                                    }
+                                });
+                                break;
+                            case 6:
+                                timed("PassengersList", new Runnable() {
+                                    public void run() {
+                                        PassengersList(esql);
+                                    }
+                                });
+                                break;
+                            case 7:
+                                timed("PassengerInfo", new Runnable() {
+                                    public void run() {
+                                        PassengerInfo(esql);
+                                    }
+                                });
+                                break;
+                            case 8:
+                                timed("PlaneInfo", new Runnable() {
+                                    public void run() {
+                                        PlaneInfo(esql);
+                                    }
+                                });
+                                break;
+                            case 9:
+                                timed("TechnicianInfo", new Runnable() {
+                                    public void run() {
+                                        TechnicianInfo(esql);
+                                    }
+                                });
+                                break;
+                            case 10:
+                                timed("PlaneRepairRange", new Runnable() {
+                                    public void run() {
+                                        PlaneRepairRange(esql);
+                                    }
+                                });
+                                break;
+                            case 11:
+                                timed("FlightStats", new Runnable() {
+                                    public void run() {
+                                        FlightStats(esql);
+                                    }
+                                });
+                                break;
+                            case 12:
+                                timed("FleetStats", new Runnable() {
+                                    public void run() {
+                                        FleetStats(esql);
+                                    }
+                                });
+                                break;
+                            case 13:
+                                timed("ReconcileWaitlists", new Runnable() {
+                                    public void run() {
+                                        ReconcileWaitlists(esql);
+                                    }
+                                });
+                                break;
+                            case 20:
+                                usermenu = false;
+                                break;
+                            default:
+                                System.out.println("Unrecognized choice!");
+                                break;
+                        }
+                    }
+                } else if (authorisedUser.equals("2")) {
+                    while (usermenu) {
+                        System.out.println("\nCUSTOMER");
+                        System.out.println("---------");
+                        //**the following functionalities should only be able to be used by customers**
+                        System.out.println("1. Find all flights on a given date");
+                        System.out.println("2. Find ticket price");
+                        System.out.println("3. Find airplane type");
+                        System.out.println("4. Make a reservation");
+                        System.out.println("5. Cancel a reservation");
+                        System.out.println("6. View current reservations");
+                        System.out.println("7. Find connecting flights");
+                        System.out.println("20. Log out");
+
+                        switch (readChoice(esql, login)) {
+                            case 1:
+                                timed("ViewDateFlights", new Runnable() {
+                                    public void run() {
+                                        ViewDateFlights(esql);
+                                    }
+                                });
+                                break;
+                            case 2:
+                                timed("FindTicketPrice", new Runnable() {
+                                    public void run() {
+                                        FindTicketPrice(esql);
+                                    }
+                                });
+                                break;
+                            case 3:
+                                timed("FindAirplaneType", new Runnable() {
+                                    public void run() {
+                                        FindAirplaneType(esql);
+                                    }
+                                });
+                                break;
+                            case 4:
+                                timed("MakeReservation", new Runnable() {
+                                    public void run() {
+                                        MakeReservation(esql);
+                                    }
+                                });
+                                break;
+                            case 5:
+                                timed("CancelReservation", new Runnable() {
+                                    public void run() {
+                                        CancelReservation(esql);
+                                    }
+                                });
+                                break;
+                            case 6:
+                                timed("ViewCurrentReservations", new Runnable() {
+                                    public void run() {
+                                        ViewCurrentReservations(esql);
+                                    }
+                                });
+                                break;
+                            case 7:
+                                timed("FindConnections", new Runnable() {
+                                    public void run() {
+                                        FindConnections(esql);
+                                    }
+                                });
+                                break;
+                            case 20:
+                                usermenu = false;
+                                break;
+                            default:
+                                System.out.println("Unrecognized choice!");
+                                break;
+                        }
+                    }
+                } else if (authorisedUser.equals("3")) {
+                    while (usermenu) {
+                        System.out.println("\nPILOTS");
+                        System.out.println("---------");
+                        System.out.println("1. Maintenace Request");
+                        System.out.println("20. Log out");
+
+                        switch (readChoice(esql, login)) {
+                            //**the following functionalities should ony be able to be used by Pilots**
+                            case 1:
+                                timed("MaintenaceRequest", new Runnable() {
+                                    public void run() {
+                                        MaintenaceRequest(esql);
+                                    }
+                                });
+                                break;
+                            case 20:
+                                usermenu = false;
+                                break;
+                            default:
+                                System.out.println("Unrecognized choice!");
+                                break;
+                        }
+                    }
+                } else if (authorisedUser.equals("4")) {
+                    while (usermenu) {
+                        System.out.println("\nTECHNICIAN");
+                        System.out.println("---------");
+                        //**the following functionalities should only be able to be used by technicians**
+                        System.out.println("1. Find all repairs on a plane");
+                        System.out.println("2. Find all pilot requests");
+                        System.out.println("20. Log out");
+                        switch (readChoice(esql, login)) {
+                            case 1:
+                                timed("FindAllRepairs", new Runnable() {
+                                    public void run() {
+                                        FindAllRepairs(esql);
+                                    }
+                                });
+                                break;
+                            case 2:
+                                timed("FindAllPilotRequests", new Runnable() {
+                                    public void run() {
+                                        FindAllPilotRequests(esql);
+                                    }
+                                });
+                                break;
+                            case 20:
+                                usermenu = false;
+                                break;
+                            default:
+                                System.out.println("Unrecognized choice!");
+                                break;
+                        }
+                    }
+                }
+                esql.auth().logOut(login.token);
+            }
+        }//end while
+    }//end runMenu
+
+    /*
+    * Runs a menu handler as one metrics operation. The operation is recorded,
+    * as an error, even when the handler throws, for example when the session
+    * closes while it waits for input.
+    **/
+    static void timed(String operation, Runnable handler) {
+        Metrics.begin(operation);
+        try {
+            handler.run();
+        } catch (RuntimeException e) {
+            Metrics.fail();
+            throw e;
+        } finally {
+            Metrics.end();
+        }
+    }//end timed
+
     public static void Greeting() {
         System.out.println(
                 "\n\n*******************************************************\n"
@@ -472,6 +930,9 @@ public class AirlineManagement {
                 input = Integer.parseInt(in.readLine());
                 System.out.println("\n");
                 break;
+            } catch (Session.ClosedException e) {
+                // end of input, leave every menu
+                throw e;
             } catch (Exception e) {
                 System.out.println("Your input is invalid!");
                 continue;
@@ -480,6 +941,20 @@ public class AirlineManagement {
         return input;
     }//end readChoice
 
+    /*
+    * Reads the choice of a logged in user. A session that expired while the
+    * user was idle logs out instead.
+    * @int
+    **/
+    public static int readChoice(AirlineManagement esql, Authenticator.Login login) {
+        int input = readChoice();
+        if (esql.auth().resume(login.token) == null) {
+            System.out.println("SESSION EXPIRED. PLEASE LOG IN AGAIN\n");
+            return 20;
+        }
+        return input;
+    }//end readChoice
+
     /*
     * Creates a new user
     **/
@@ -495,7 +970,7 @@ public class AirlineManagement {
 
             System.out.print("\nCREATE A USERNAME: ");
             username = in.readLine();
-            while (esql.executeQuery("SELECT * FROM Users WHERE UserName = '" + username + "'") > 0) {
+            while (esql.auth().userExists(username)) {
                 System.out.println("ANOTHER USER IS ALREADY USING THIS USERNAME. PLEASE CHOOSE ANTOHER \n");
                 System.out.print("\nCREATE A USERNAME: ");
                 username = in.readLine();
@@ -511,9 +986,9 @@ public class AirlineManagement {
             System.out.println("4. TECHNICIAN \n");
             usertype = in.readLine();
 
-            userID = esql.executeQuery("SELECT * FROM Users") + 1;
-            String query = "INSERT INTO Users (UserID, UserName, Password, UserType) VALUES (" + userID + ", '" + username + "', '" + password + "', " + usertype + ")";
-            esql.executeUpdate(query);
+            userID = esql.ids().nextUserId();
+            String query = "INSERT INTO Users (UserID, UserName, Password, UserType) VALUES (?, ?, ?, ?)";
+            esql.writes().add(query, userID, username, Authenticator.hash(password), Integer.parseInt(usertype.trim())).await();
             System.out.println("\nUSER CREATED\n");
         } catch (Exception e) {
             System.out.println(e.getMessage());
@@ -524,30 +999,26 @@ public class AirlineManagement {
 
     /*
     * Check log in credentials for an existing user
-    * @return User login or null is the user does not exist
+    * @return the session of the user or null if the credentials are wrong
     **/
-    public static String LogIn(AirlineManagement esql) {
+    public static Authenticator.Login LogIn(AirlineManagement esql) {
         //Check for user credentials 
         // Enter data using BufferReader
         try {
-            while (true) {
-                String username;
-                String password;
-                System.out.print("ENTER USERNAME: ");
-                username = in.readLine();
-                System.out.print("\nENTER PASSWORD: ");
-                password = in.readLine();
-
-                String query = "SELECT UserType FROM Users WHERE UserName = '" + username + "' AND Password = '" + password + "'";
-                List<List<String>> result = esql.executeQueryAndReturnResult(query);
+            String username;
+            String password;
+            System.out.print("ENTER USERNAME: ");
+            username = in.readLine();
+            System.out.print("\nENTER PASSWORD: ");
+            password = in.readLine();
 
-                if (result.size() == 0) {
-                    System.out.println("\nUSERNAME OR PASSWORD INCORRECT. TRY AGAIN\n");
-                } else {
-                    System.out.println("\nUSER HAS LOGGED IN\n");
-                    return result.get(0).get(0);
-                }
+            Authenticator.Login login = esql.auth().logIn(username, password);
+            if (login == null) {
+                System.out.println("\nUSERNAME OR PASSWORD INCORRECT. TRY AGAIN\n");
+            } else {
+                System.out.println("\nUSER HAS LOGGED IN\n");
             }
+            return login;
         } catch (Exception e) {
             System.out.println(e.getMessage());
         }
@@ -562,10 +1033,8 @@ public class AirlineManagement {
    public static void ViewFlights(AirlineManagement esql) {
       try {
         System.out.println("\tALL FLIGHTS\t\n");
-        String query = "SELECT * FROM Flight";
-        int rowCount = esql.executeQuery(query);
+        int rowCount = esql.printResult(esql.refData().rows(RefData.Table.FLIGHT));
         System.out.println ("total row(s): " + rowCount);
-        esql.executeQueryAndPrintResult(query);
       } catch (Exception e) {
         System.err.println (e.getMessage());
       }
@@ -575,15 +1044,14 @@ public class AirlineManagement {
    public static void FlightWeeklySchedule(AirlineManagement esql) {
       try{
         System.out.print("Enter a flight number (F###) for a flights schedule for the week: ");
-        String query = "SELECT * FROM Schedule WHERE FlightNumber = ";
         String flightNum = in.readLine();
-        if (esql.executeQuery("SELECT * FROM Flight WHERE FlightNumber = '" + flightNum + "'") < 1) {
+        if (!esql.refData().flightExists(flightNum)) {
             System.out.println("FLIGHT DOES NOT EXIST. PLEASE GIVE A VALID FLIGHT NUMBER\n");
             return;
         }
-        query += "'"+ flightNum + "'";
-        
-        int rowCount = esql.executeQuery(query);
+        // the week's schedule comes from the cached Schedule table
+        RefData.Match schedule = esql.refData().find(RefData.Table.SCHEDULE, flightNum);
+        int rowCount = schedule.rows.length;
         if (rowCount < 1) {
             System.out.println("FLIGHT: " + flightNum + " NOT AVAIALBE THIS WEEK\n");
             return;
@@ -591,7 +1059,7 @@ public class AirlineManagement {
 
         System.out.println("ALL FLIGHTS FOR "+ flightNum + "\t\n");
         System.out.println ("total row(s): " + rowCount);
-        esql.executeQueryAndPrintResult(query);
+        new ResultPrinter().print(schedule.result, schedule.rows);
       }  catch(Exception e){
         System.err.println (e.getMessage());
       }
@@ -603,30 +1071,27 @@ public class AirlineManagement {
         System.out.print("Enter a flight number (F###): ");
         String flightNum = in.readLine();
 
-        if (esql.executeQuery("SELECT * FROM Flight WHERE FlightNumber = '" + flightNum + "'") < 1) {
+        if (!esql.refData().flightExists(flightNum)) {
             System.out.println("FLIGHT DOES NOT EXIST. PLEASE GIVE A VALID FLIGHT NUMBER\n");
             return;
         }
 
         System.out.print("Enter a flight date (M/D/YY): ");
         String flightDate = in.readLine();
+        Date date = DateInput.parse(flightDate);
         
-        String query = "SELECT SeatsTotal, SeatsSold, (SeatsTotal - SeatsSold) as SeatsOpen FROM FlightInstance WHERE FlightNumber = ";
-        query += "'"+ flightNum + "' AND FlightDate = '" + flightDate + "'";
+        String query = FLIGHT_SEATS_QUERY;
         System.out.println("\n");
 
-        if (esql.executeQuery(query) < 1) {
+        QueryResult result = esql.executeQueryForResult(query, flightNum, date);
+        if (result.rowCount() < 1) {
             System.out.println("FLIGHT: " + flightNum + " NOT AVAIALBE ON "+ flightDate + "\n");
             return;
         }
 
-        //executeQueryAndReturnResult returns a variable of type List<List<String>> which is a 2D array
-        //result1.get(0).get(0) is broken down where result1.get(0) is returning the first row 
-        // and result1.get(0).get(0) is returning the first row and first column
-
-        List<List<String>> result = esql.executeQueryAndReturnResult(query);
-        int seatsSold = Integer.parseInt(result.get(0).get(1));
-        int seatsOpen = Integer.parseInt(result.get(0).get(2));
+        //result.getInt(0, 1) reads the first row and second column without a string round trip
+        int seatsSold = result.getInt(0, 1);
+        int seatsOpen = result.getInt(0, 2);
 
         System.out.println("FLIGHT: \t" + flightNum + "\n");
         System.out.println("ON DATE: \t" + flightDate + "\n");
@@ -642,30 +1107,27 @@ public class AirlineManagement {
       try {
         System.out.print("Enter a flight number (F###): ");
         String flightNum = in.readLine();
-        if (esql.executeQuery("SELECT * FROM Flight WHERE FlightNumber = '" + flightNum + "'") < 1) {
+        if (!esql.refData().flightExists(flightNum)) {
             System.out.println("FLIGHT DOES NOT EXIST. PLEASE GIVE A VALID FLIGHT NUMBER\n");
             return;
         }
 
         System.out.print("Enter a flight date (M/D/YY): ");
         String flightDate = in.readLine();
+        Date date = DateInput.parse(flightDate);
 
-        String query = "SELECT DepartedOnTime, ArrivedOnTime FROM FlightInstance WHERE FlightNumber = ";
-        query += "'"+ flightNum + "' AND FlightDate = '" + flightDate + "'";
+        String query = FLIGHT_STATUS_QUERY;
 
         System.out.println("\n");
-        if (esql.executeQuery(query) < 1) {
+        QueryResult result = esql.executeQueryForResult(query, flightNum, date);
+        if (result.rowCount() < 1) {
             System.out.println("FLIGHT: " + flightNum + " NOT AVAIALBE ON "+ flightDate + "\n");
             return;
         }
 
-        //executeQueryAndReturnResult returns a variable of type List<List<String>> which is a 2D array
-        //result1.get(0).get(0) is broken down where result1.get(0) is returning the first row 
-        // and result1.get(0).get(0) is returning the first column
-
-        List<List<String>> result = esql.executeQueryAndReturnResult(query);
-        String DepartureStatus = result.get(0).get(0);
-        String ArrivalStatus = result.get(0).get(1);
+        //result.getString(0, 0) is returning the first row and first column
+        String DepartureStatus = result.getString(0, 0);
+        String ArrivalStatus = result.getString(0, 1);
 
         System.out.println("FLIGHT: \t" + flightNum + "\n");
         System.out.println("ON DATE: \t" + flightDate + "\n");
@@ -693,17 +1155,16 @@ public class AirlineManagement {
       try {
         System.out.print("Enter a flight date (M/D/YY): ");
         String flightDate = in.readLine();
-        String query = "SELECT * FROM FlightInstance WHERE FlightDate = '"+ flightDate + "'";
+        Date date = DateInput.parse(flightDate);
+        String query = FLIGHTS_PER_DATE_QUERY;
 
-        int rowCount = esql.executeQuery(query);
+        System.out.println("\nFLIGHTS SCHEDULED ON: " + flightDate + "\n");
+        int rowCount = esql.executeQueryAndPrintResult(query, date);
         if (rowCount < 1) {
             System.out.println("NO FLIGHTS ON THIS DATE\n");
             return;
         }
-
-        System.out.println("\nFLIGHTS SCHEDULED ON: " + flightDate + "\n");
         System.out.println ("total row(s): " + rowCount);
-        esql.executeQueryAndPrintResult(query);
       } catch (Exception e) {
         System.err.println (e.getMessage());
       }
@@ -714,26 +1175,24 @@ public class AirlineManagement {
       try {
         System.out.print("Enter a flight number (F###): ");
         String flightNum = in.readLine();
-        if (esql.executeQuery("SELECT * FROM Flight WHERE FlightNumber = '" + flightNum + "'") < 1) {
+        if (!esql.refData().flightExists(flightNum)) {
             System.out.println("FLIGHT DOES NOT EXIST. PLEASE GIVE A VALID FLIGHT NUMBER\n");
             return;
         }
 
         System.out.print("Enter a flight date (M/D/YY): ");
         String flightDate = in.readLine();
+        Date date = DateInput.parse(flightDate);
 
-        String query = "SELECT f.FlightInstanceID, r.CustomerID, r.Status  FROM FlightInstance f, Reservation r WHERE f.FlightNumber = ";
-        query += "'"+ flightNum + "' AND f.FlightDate = '" + flightDate + "' AND f.FlightInstanceID = r.FlightInstanceID";
+        String query = PASSENGERS_LIST_QUERY;
 
-        int rowCount = esql.executeQuery(query);
+        System.out.println("\nALL PASSENGERS STATUS OF FLIGHT: " + flightNum + " ON " + flightDate + "\n");
+        int rowCount = esql.executeQueryAndPrintResult(query, flightNum, date);
         if (rowCount < 1) {
             System.out.println("FLIGHT: " + flightNum + " NOT AVAIALBE ON "+ flightDate + "\n");
             return;
         }
-
-        System.out.println("\nALL PASSENGERS STATUS OF FLIGHT: " + flightNum + " ON " + flightDate + "\n");
         System.out.println ("total row(s): " + rowCount);
-        esql.executeQueryAndPrintResult(query);
       } catch (Exception e) {
         System.err.println (e.getMessage());
       }
@@ -744,22 +1203,23 @@ public class AirlineManagement {
       try {
         System.out.print("Enter Reservation ID (R####): ");
         String reservationID = in.readLine();
-        if (esql.executeQuery("SELECT * FROM Reservation WHERE ReservationID = '" + reservationID + "'") < 1) {
-            System.out.println("RESERVATION DOES NOT EXIST. PLEASE GIVE A VALID RESERVATION ID\n");
-            return;
-        }
 
-        String query = "SELECT * FROM Customer c WHERE c.CustomerID = (SELECT r.CustomerId FROM Reservation r WHERE r.ReservationID = '" + reservationID + "')";
+        String query = PASSENGER_INFO_QUERY;
 
-        int rowCount = esql.executeQuery(query);
+        QueryResult result = esql.executeQueryForResult(query, reservationID);
+        int rowCount = result.rowCount();
         if (rowCount < 1) {
+            System.out.println("RESERVATION DOES NOT EXIST. PLEASE GIVE A VALID RESERVATION ID\n");
+            return;
+        }
+        if (result.isNull(0, 0)) {
             System.out.println("Reservation: " + reservationID + " HAS NO PASSENGERS\n");
             return;
         }
         
         System.out.println("\nINFORMATION OF CUSTOMER WITH RESERVATION: \t" + reservationID + "\n");
         System.out.println ("total row(s): " + rowCount);
-        esql.executeQueryAndPrintResult(query);
+        esql.printResult(result);
       } catch (Exception e) {
         System.err.println (e.getMessage());
       }
@@ -770,9 +1230,9 @@ public class AirlineManagement {
       try {
         System.out.print("Enter Plane ID (PL###): ");
         String planeID= in.readLine();
-        String query = "SELECT * FROM Plane WHERE PlaneID = '" + planeID + "'";
 
-        int rowCount = esql.executeQuery(query);
+        RefData.Match plane = esql.refData().find(RefData.Table.PLANE, planeID);
+        int rowCount = plane.rows.length;
         if (rowCount < 1) {
             System.out.println("PLANE: " + planeID + " DOES NOT EXIST\n");
             return;
@@ -780,7 +1240,7 @@ public class AirlineManagement {
 
         System.out.println("\nINFORMATION OF PLANE: \t" + planeID + "\n");
         System.out.println ("total row(s): " + rowCount);
-        esql.executeQueryAndPrintResult(query);
+        new ResultPrinter().print(plane.result, plane.rows);
       } catch (Exception e) {
         System.err.println (e.getMessage());
       }
@@ -791,21 +1251,19 @@ public class AirlineManagement {
        try {
         System.out.print("Enter Technician ID (T###): ");
         String technicianID = in.readLine();
-        if (esql.executeQuery("SELECT * FROM Technician WHERE TechnicianID = '" + technicianID + "'") < 1) {
+        if (!esql.refData().technicianExists(technicianID)) {
             System.out.println("TECHNICIAN DOES NOT EXIST. PLEASE GIVE A VALID TECHNICIAN ID\n");
             return;
         }
 
-        String query = "SELECT * FROM Repair WHERE TechnicianID = '" + technicianID + "'";
-        int rowCount = esql.executeQuery(query);
+        String query = TECHNICIAN_INFO_QUERY;
+        System.out.println("\nREPAIRS MADE BY: \t" + technicianID + "\n");
+        int rowCount = esql.executeQueryAndPrintResult(query, technicianID);
         if (rowCount < 1) {
             System.out.println("TECHNICIAN: " + technicianID + " DOES NOT HAVE REPAIRS\n");
             return;
         }
-
-        System.out.println("\nREPAIRS MADE BY: \t" + technicianID + "\n");
         System.out.println ("total row(s): " + rowCount);
-        esql.executeQueryAndPrintResult(query);
       } catch (Exception e) {
         System.err.println (e.getMessage());
       }
@@ -816,7 +1274,7 @@ public class AirlineManagement {
       try {
         System.out.print("Enter Plane ID (PL###): ");
         String planeID= in.readLine();
-        if (esql.executeQuery("SELECT * FROM Plane WHERE PlaneID = '" + planeID + "'") < 1) {
+        if (!esql.refData().planeExists(planeID)) {
             System.out.println("PLANE DOES NOT EXIST. PLEASE GIVE A VALID PLANE ID\n");
             return;
         }
@@ -826,17 +1284,17 @@ public class AirlineManagement {
         String startDate = in.readLine();
         System.out.print("\nEnd Date: ");
         String endDate = in.readLine();
+        Date start = DateInput.parse(startDate);
+        Date end = DateInput.parse(endDate);
 
-        String query = "SELECT PlaneID, RepairDate, RepairCode FROM Repair WHERE RepairDate >= '" + startDate +"' AND RepairDate <= '" + endDate + "' AND PlaneID = '" + planeID + "'"; 
-        int rowCount = esql.executeQuery(query);
+        String query = PLANE_REPAIR_RANGE_QUERY;
+        System.out.println("\nREPAIRS ON PLANE: \t" + planeID + " FROM: " + startDate + " TO: " + endDate + "\n");
+        int rowCount = esql.executeQueryAndPrintResult(query, start, end, planeID);
         if (rowCount < 1) {
             System.out.println("\nNO PLANEID: " + planeID + " HAS REPAIRS BETWEEN: " + startDate + " TO " + startDate + "\n");
             return;
         }
-
-        System.out.println("\nREPAIRS ON PLANE: \t" + planeID + " FROM: " + startDate + " TO: " + endDate + "\n");
         System.out.println ("total row(s): " + rowCount);
-        esql.executeQueryAndPrintResult(query);
       } catch (Exception e) {
         System.err.println (e.getMessage());
       }
@@ -848,7 +1306,7 @@ public class AirlineManagement {
       try {
         System.out.print("Enter Flight Number (F###): ");
         String flightNum = in.readLine();
-        if (esql.executeQuery("SELECT * FROM Flight WHERE FlightNumber = '" + flightNum + "'") < 1) {
+        if (!esql.refData().flightExists(flightNum)) {
             System.out.println("FLIGHT DOES NOT EXIST. PLEASE GIVE A VALID FLIGHT NUMBER \n");
             return;
         }
@@ -858,36 +1316,96 @@ public class AirlineManagement {
         String startDate = in.readLine();
         System.out.print("\nEnd Date: ");
         String endDate = in.readLine();
+        Date start = DateInput.parse(startDate);
+        Date end = DateInput.parse(endDate);
 
         System.out.println("\nFLIGHT: " + flightNum + "\n");
         System.out.println("ON DATE RANGE FROM: " + startDate + " TO: "+ endDate +"\n");
 
-        String query = "SELECT FlightNumber, FlightDate, SeatsTotal, SeatsSold, (SeatsTotal - SeatsSold) as SeatsOpen FROM FlightInstance WHERE FlightNumber = ";
-        query += "'"+ flightNum + "' AND FlightDate >= '" + startDate + "' AND FlightDate <= '" + endDate + "'";
-
-        List<List<String>> result = esql.executeQueryAndReturnResult(query);
-        esql.executeQueryAndPrintResult(query);
-        int totalUnsold = 0;
-        int totalSold = 0;
-        int totalFlights = 0;
-
-        for(int i = 0; i < result.size(); ++i) {
-            int seatsSold = Integer.parseInt(result.get(i).get(3));
-            int seatsOpen = Integer.parseInt(result.get(i).get(4));
-            totalSold += seatsSold;
-            totalUnsold += seatsOpen;
-            totalFlights += 1;
-        }
+        // daily rows and the grand total are aggregated by the server in one query;
+        // the total is the last row
+        QueryResult result = FlightStatistics.flightStats(esql, flightNum, start, end);
+        int total = result.rowCount() - 1;
+        new ResultPrinter().print(result, total);
+
+        int totalFlights = result.getInt(total, result.columnIndex("Flights"));
+        int totalSold = result.getInt(total, result.columnIndex("SeatsSold"));
+        int totalUnsold = result.getInt(total, result.columnIndex("SeatsOpen"));
 
         System.out.println("\n\tTOTAL FLIGHTS: " + totalFlights + "\n");
         System.out.println("\tTOTAL NUMBER OF UNSOLD TICKETS:\t" + totalUnsold + "\n");
         System.out.println("\tTOTAL NUMBER OF SOLD TICKETS:\t" + totalSold + "\n");
+        System.out.println("\tLOAD FACTOR (%):\t\t" + result.getString(total, result.columnIndex("LoadFactor")) + "\n");
 
       } catch (Exception e) {
         System.err.println (e.getMessage());
       }
    }
 
+   //Given a date range, show seat statistics rolled up across all flights, per flight, per route or per plane,
+   //grouped by day, week or month
+   public static void FleetStats(AirlineManagement esql) {
+      try {
+        System.out.println("Group statistics by:");
+        System.out.println("1. All flights");
+        System.out.println("2. Flight");
+        System.out.println("3. Route (departure city -> arrival city)");
+        System.out.println("4. Plane");
+        FlightStatistics.Scope[] scopes = FlightStatistics.Scope.values();
+        int scope = readChoice();
+        if (scope < 1 || scope > scopes.length) {
+            System.out.println("Unrecognized choice!");
+            return;
+        }
+
+        System.out.println("Per:");
+        System.out.println("1. Day");
+        System.out.println("2. Week");
+        System.out.println("3. Month");
+        FlightStatistics.Grain[] grains = FlightStatistics.Grain.values();
+        int grain = readChoice();
+        if (grain < 1 || grain > grains.length) {
+            System.out.println("Unrecognized choice!");
+            return;
+        }
+
+        System.out.print("\nEnter a Date Range (M/D/YY): \n\n");
+        System.out.print("Start Date: ");
+        String startDate = in.readLine();
+        System.out.print("\nEnd Date: ");
+        String endDate = in.readLine();
+        Date start = DateInput.parse(startDate);
+        Date end = DateInput.parse(endDate);
+        System.out.println();
+
+        int rowCount = FlightStatistics.printRollup(esql, scopes[scope - 1], grains[grain - 1], start, end);
+        if (rowCount < 1) {
+            System.out.println("NO FLIGHTS BETWEEN " + startDate + " AND " + endDate + "\n");
+            return;
+        }
+        System.out.println ("total row(s): " + rowCount);
+      } catch (Exception e) {
+        System.err.println (e.getMessage());
+      }
+   }
+
+   //Promote waitlisted passengers into the open seats of every flight instance
+   public static void ReconcileWaitlists(AirlineManagement esql) {
+      try {
+        QueryResult result = ReservationEngine.reconcileWaitlists(esql);
+        // promotions took open seats on any number of flights
+        esql.routes().invalidateAll();
+        int promoted = 0;
+        for (int i = 0; i < result.rowCount(); ++i) {
+            promoted += result.getInt(i, 1);
+        }
+
+        System.out.println("\tPROMOTED " + promoted + " WAITLISTED RESERVATION(S) ON " + result.rowCount() + " FLIGHT INSTANCE(S)\n");
+        esql.printResult(result);
+      } catch (Exception e) {
+        System.err.println (e.getMessage());
+      }
+   }
 
 // ================================
 // 2. Customer
@@ -900,32 +1418,21 @@ public class AirlineManagement {
             System.out.print("Enter arrival city: ");
             String arrivalCity = in.readLine();
 
-            // Convert user date into machine date
             System.out.print("Enter date (M/D/YY): ");
             String departureDate = in.readLine();
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("M/d/yy");
-            LocalDate machineDate = LocalDate.parse(departureDate, formatter);
-
-            // Get DoW from machine date
-            DayOfWeek dow = DayOfWeek.from(machineDate);
-            String weekday = dow.toString();
-            weekday = weekday.charAt(0) + weekday.substring(1).toLowerCase();
-
-            // Using (F1##)(s), return the stats of the date chosen
-            String query = "SELECT F.FlightNumber, S.DepartureTime, S.ArrivalTime, I.NumOfStops FROM Flight AS F, Schedule AS S, FlightInstance as I WHERE F.DepartureCity = '"
-                    + departureCity + "' AND F.ArrivalCity = '" + arrivalCity
-                    + "' AND I.FlightDate = '" + departureDate
-                    + "' AND F.FlightNumber = I.FlightNumber AND F.FlightNumber = S.FlightNumber AND S.DayOfWeek = '"
-                    + weekday + "'";
-
-            int rowCount = esql.executeQuery(query);
+            Date date = DateInput.parse(departureDate);
+
+            String query = VIEW_DATE_FLIGHTS_QUERY;
+
+            QueryResult result = esql.executeQueryForResult(query, departureCity, arrivalCity, date);
+            int rowCount = result.rowCount();
             if(rowCount < 1) {
                 System.out.println("\nNO FLIGHT FROM " + departureCity + " TO " + arrivalCity + " ON " + departureDate);
                 return;
             }
 
             System.out.println("total row(s): " + rowCount);
-            esql.executeQueryAndPrintResult(query);
+            esql.printResult(result);
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -937,25 +1444,26 @@ public class AirlineManagement {
             System.out.print("Enter flight number (F1##): ");
             String flightNumber = in.readLine();
 
-            if (esql.executeQuery("SELECT * FROM Flight WHERE FlightNumber = '" + flightNumber + "'") < 1) {
+            if (!esql.refData().flightExists(flightNumber)) {
                 System.out.println("FLIGHT DOES NOT EXIST. PLEASE GIVE A VALID FLIGHT NUMBER\n");
                 return;
             }
             
             System.out.print("Enter departure date (M/D/YY): ");
             String departureDate = in.readLine();
+            Date date = DateInput.parse(departureDate);
 
-            String query = "SELECT TicketCost FROM FlightInstance WHERE FlightNumber = ";
-            query += "'" + flightNumber + "' AND FlightDate = '" + departureDate + "'";
+            String query = TICKET_PRICE_QUERY;
 
-            int rowCount = esql.executeQuery(query);
+            QueryResult result = esql.executeQueryForResult(query, flightNumber, date);
+            int rowCount = result.rowCount();
             if(rowCount < 1) {
                 System.out.println("\nFLIGHT NUMBER: " + flightNumber + " ON " + departureDate + " HAS NO TICKET COST");
                 return;
             }
 
             System.out.println("total row(s): " + rowCount);
-            esql.executeQueryAndPrintResult(query);
+            esql.printResult(result);
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -966,19 +1474,21 @@ public class AirlineManagement {
             System.out.print("3. Airplane Type === \n");
             System.out.print("Enter flight number (F1##): ");
             String flightNumber = in.readLine();
-            if (esql.executeQuery("SELECT * FROM Flight WHERE FlightNumber = '" + flightNumber + "'") < 1) {
+            if (!esql.refData().flightExists(flightNumber)) {
                 System.out.println("FLIGHT DOES NOT EXIST. PLEASE GIVE A VALID FLIGHT NUMBER\n");
                 return;
             }
-            String query = "SELECT P.Make, P.MODEL FROM Plane as P, Flight as F WHERE P.PlaneID = F.PlaneID AND F.FlightNumber = ";
-            query += "'" + flightNumber + "'";
-            int rowCount = esql.executeQuery(query);
+            // join the flight to its plane in memory
+            String planeID = esql.refData().lookup(RefData.Table.FLIGHT, flightNumber, "PlaneID");
+            RefData.Match plane = esql.refData().find(RefData.Table.PLANE, planeID);
+            int rowCount = plane.rows.length;
             if (rowCount < 1) {
                 System.out.println("FLIGHT: " + flightNumber + " DOES NOT HAVE A PLANE MODEL");
                 return;
             }
             System.out.println("total row(s): " + rowCount);
-            esql.executeQueryAndPrintResult(query);
+            QueryResult planes = plane.result;
+            new ResultPrinter().print(planes, plane.rows, new int[] {planes.columnIndex("Make"), planes.columnIndex("Model")});
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -991,35 +1501,16 @@ public class AirlineManagement {
             System.out.print("\nEnter Flight Instance ID: ");
             String FlightInstanceID = in.readLine();
 
-            // Select Total Seats and Sold Seats, see whether to reserve or not
-            String seatQuery = "SELECT SeatsTotal, SeatsSold FROM FlightInstance WHERE FlightInstanceID = '"
-                    + FlightInstanceID + "'";
-            List<List<String>> result = esql.executeQueryAndReturnResult(seatQuery);
-            int SeatsTotal = Integer.parseInt(result.get(0).get(0));
-            int SeatsSold = Integer.parseInt(result.get(0).get(1));
-            String Status = "reserved";
-            if (SeatsTotal <= SeatsSold) {
-                Status = "waitlist";
-            }
+            // Claim a seat, or join the waitlist when the flight is full, and insert
+            // the reservation as one transaction
+            ReservationEngine.Booking booking = ReservationEngine.book(esql,
+                    Integer.parseInt(customerID.trim()), Integer.parseInt(FlightInstanceID.trim()));
 
-            // Get biggest reservation, extract and create next RID
-            String maxReservation = "SELECT MAX(ReservationID) FROM Reservation";
-            List<List<String>> result2 = esql.executeQueryAndReturnResult(maxReservation);
-            String maxReservationID = result2.get(0).get(0);
-            int reservationNumber = Integer.parseInt(maxReservationID.substring(1)) + 1;
-            String currentRID = String.format("R%04d", reservationNumber);
-
-            String query = "INSERT INTO Reservation(ReservationID, CustomerID, FlightInstanceID, Status) VALUES ('"
-                    + currentRID + "', '" + customerID + "', '" + FlightInstanceID + "', '" + Status + "')";
-            esql.executeUpdate(query);
-            System.out.print("Total Open Seats: " + (SeatsTotal - SeatsSold) + "\n");
-            System.out.print("Status: " + Status);
+            System.out.print("Reservation ID: " + booking.reservationId + "\n");
+            System.out.print("Total Open Seats: " + booking.seatsOpen + "\n");
+            System.out.print("Status: " + booking.status);
             System.out.println("\n");
-
-            // Update number of seats available
-            String updateSeatCount = "UPDATE FlightInstance SET SeatsSold = SeatsSold + 1 WHERE FlightInstanceID = '"
-                    + FlightInstanceID + "'";
-            esql.executeQuery(updateSeatCount);
+            esql.routes().seatsOpen(Integer.parseInt(FlightInstanceID.trim()), booking.seatsOpen);
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -1032,22 +1523,19 @@ public class AirlineManagement {
             System.out.print("\nEnter ReservationID ID (R####): ");
             String ReservationID = in.readLine();
 
-            if (esql.executeQuery("SELECT * FROM Reservation WHERE ReservationID = '" + ReservationID + "'") < 1) {
+            // Free the seat and hand it to the oldest waitlisted reservation in one transaction
+            ReservationEngine.Cancellation cancellation = ReservationEngine.cancel(esql, ReservationID.trim());
+            if (cancellation == null) {
                 System.out.println("RESERVATION DOES NOT EXIST. PLEASE GIVE A VALID RESERVATION NUMBER\n");
                 return;
             }
 
-            // Get FlightInstanceID to update seat count with later
-            String flightQuery = "SELECT FlightInstanceID FROM Reservation WHERE ReservationID = '"
-                    + ReservationID + "'";
-
-            String query = "DELETE FROM Reservation WHERE ReservationID = '" + ReservationID + "'";
-            esql.executeQuery(query);
-
-            // Update number of seats available
-            String updateSeatCount = "UPDATE FlightInstance SET SeatsSold = SeatsSold - 1 WHERE FlightInstanceID = '"
-                    + flightQuery + "'";
-            esql.executeQuery(updateSeatCount);
+            System.out.println("\nRESERVATION " + ReservationID + " CANCELLED\n");
+            if (cancellation.promotedReservationId != null) {
+                System.out.println("RESERVATION " + cancellation.promotedReservationId + " MOVED FROM THE WAITLIST TO RESERVED\n");
+            } else if (ReservationEngine.RESERVED.equals(cancellation.status)) {
+                esql.routes().seatsReleased(cancellation.flightInstanceId, 1);
+            }
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -1057,15 +1545,59 @@ public class AirlineManagement {
         try {
             System.out.print("Enter customer ID: ");
             String customerID = in.readLine();
-            String query = "SELECT ReservationID, FlightInstanceID, Status FROM Reservation WHERE CustomerID = ";
-            query += "'" + customerID + "'";
-            int rowCount = esql.executeQuery(query);
+            String query = CURRENT_RESERVATIONS_QUERY;
+            int rowCount = esql.executeQueryAndPrintResult(query, Integer.parseInt(customerID.trim()));
             if (rowCount < 1) {
                 System.out.println("CUSTOMER: " + customerID + " HAS NO RESERVATIONS");
                 return;
             }
             System.out.println("total row(s): " + rowCount);
-            esql.executeQueryAndPrintResult(query);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    public static void FindConnections(AirlineManagement esql) {
+        try {
+            System.out.print("7. Connecting Flights === \n");
+            System.out.print("Enter departure city: ");
+            String departureCity = in.readLine();
+            System.out.print("Enter arrival city: ");
+            String arrivalCity = in.readLine();
+
+            System.out.print("Enter date (M/D/YY): ");
+            String departureDate = in.readLine();
+            LocalDate date = DateInput.parseLocal(departureDate);
+
+            System.out.println("1. Earliest arrival");
+            System.out.println("2. Fewest stops");
+            System.out.println("3. Lowest fare");
+            System.out.print("Sort by: ");
+            String sortBy = in.readLine().trim();
+            RouteSearch.Order order = sortBy.equals("2") ? RouteSearch.Order.STOPS
+                    : sortBy.equals("3") ? RouteSearch.Order.FARE : RouteSearch.Order.ARRIVAL;
+
+            // answered from the cached flight graph, no query per search
+            List<RouteSearch.Itinerary> itineraries = esql.routes().search(departureCity, arrivalCity, date, order);
+            if (itineraries.isEmpty()) {
+                System.out.println("\nNO FLIGHTS FROM " + departureCity + " TO " + arrivalCity + " ON " + departureDate
+                        + " WITH UP TO " + RouteSearch.MAX_CONNECTIONS + " CONNECTION(S)");
+                return;
+            }
+
+            for (int i = 0; i < itineraries.size(); ++i) {
+                RouteSearch.Itinerary itinerary = itineraries.get(i);
+                System.out.println((i + 1) + ". DEPARTS " + itinerary.departureTime()
+                        + "  ARRIVES " + itinerary.arrivalTime()
+                        + (itinerary.arrivalDay() > 0 ? " (+" + itinerary.arrivalDay() + ")" : "")
+                        + "  STOPS " + itinerary.stops() + "  FARE " + itinerary.fareAmount());
+                for (RouteSearch.Leg leg : itinerary.legs) {
+                    System.out.println("     " + leg.flightNumber + " (INSTANCE " + leg.flightInstanceId + ") "
+                            + leg.from + " -> " + leg.to + "  " + leg.date + " " + leg.departureTime + "-" + leg.arrivalTime
+                            + "  SEATS OPEN " + leg.seatsOpen());
+                }
+            }
+            System.out.println("total itineraries: " + itineraries.size());
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -1078,14 +1610,14 @@ public class AirlineManagement {
       try {
         System.out.print("Enter Pilot ID (P###): ");
         String pilotID = in.readLine();
-        if (esql.executeQuery("SELECT * FROM Pilot WHERE pilotID = '" + pilotID + "'") < 1) {
+        if (!esql.refData().pilotExists(pilotID)) {
             System.out.println("PILOT DOES NOT EXIST. PLEASE GIVE A VALID PILOT ID\n");
             return;
         }
 
         System.out.print("\nEnter Plane ID (PL###): ");
         String planeID = in.readLine();
-        if (esql.executeQuery("SELECT * FROM Plane WHERE planeID = '" + planeID + "'") < 1) {
+        if (!esql.refData().planeExists(planeID)) {
             System.out.println("PLANE DOES NOT EXIST. PLEASE GIVE A VALID PLANE ID\n");
             return;
         }
@@ -1095,12 +1627,13 @@ public class AirlineManagement {
 
         System.out.print("\nEnter Date of Request(YYYY-MM-DD): ");
         String requestDate = in.readLine();
+        Date date = DateInput.parse(requestDate);
 
 
-        int requestID =  esql.executeQuery("SELECT * FROM MaintenanceRequest") + 1;
-        String query = "INSERT INTO MaintenanceRequest(RequestID, PlaneID, RepairCode, RequestDate, PilotID) VALUES ("+requestID+", '"+ planeID +"', '"+ repairCode +"', '"+ requestDate +"', '"+ pilotID +"')";
+        int requestID = esql.ids().nextMaintenanceRequestId();
+        String query = MAINTENANCE_REQUEST_INSERT;
         System.out.println("\nMAKING REQUEST FOR:" + pilotID + " ON PLANE: " + planeID + "\n");
-        esql.executeUpdate(query);
+        esql.writes().add(query, requestID, planeID, repairCode, date, pilotID).await();
         System.out.println("\nREPAIR REQUEST IS SENT BY PILOT " + pilotID + " FOR PLANE: " + planeID + " WITH REPAIR: " + repairCode + " ON " + requestDate);
       } catch (Exception e) {
         System.err.println (e.getMessage());
@@ -1121,17 +1654,17 @@ public class AirlineManagement {
             String startDate = in.readLine();
             System.out.print("\nEnd Date: ");
             String endDate = in.readLine();
+            Date start = DateInput.parse(startDate);
+            Date end = DateInput.parse(endDate);
 
 
-            String query = "SELECT * FROM Repair WHERE PlaneID = ";
-            query += "'" + planeID + "' AND RepairDate >= '" + startDate +"' AND RepairDate <= '" + endDate + "'";
-            int rowCount = esql.executeQuery(query);
+            String query = FIND_ALL_REPAIRS_QUERY;
+            int rowCount = esql.executeQueryAndPrintResult(query, planeID, start, end);
             if (rowCount < 1) {
                 System.out.println("PLANE ID: " + planeID + " HAS 0 REPAIRS ON GIVEN DATE");
                 return;
             }
             System.out.println("total row(s): " + rowCount);
-            esql.executeQueryAndPrintResult(query);
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -1141,15 +1674,13 @@ public class AirlineManagement {
         try {
             System.out.print("Enter Pilot ID (P###): ");
             String pilotID = in.readLine();
-            String query = "SELECT * FROM MaintenanceRequest WHERE PilotID = ";
-            query += "'" + pilotID + "'";
-            int rowCount = esql.executeQuery(query);
+            String query = PILOT_REQUESTS_QUERY;
+            int rowCount = esql.executeQueryAndPrintResult(query, pilotID);
             if (rowCount < 1) {
                 System.out.println("PILOT ID: " + pilotID + " HAS 0 REQUESTS");
                 return;
             }
             System.out.println("total row(s): " + rowCount);
-            esql.executeQueryAndPrintResult(query);
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
@@ -0,0 +1,312 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Logs users in and keeps their sessions. Passwords are stored as salted
+ * PBKDF2 hashes, pbkdf2$iterations$salt$hash, with the cost set by
+ * airline.auth.iterations. Rows still holding a plaintext password, as the
+ * CSV data does, are accepted once and rewritten as a hash; so are hashes
+ * made with fewer iterations than the current setting.
+ *
+ * A user is found by name through the unique UserName_index and the row is
+ * kept for airline.auth.cacheSeconds, so repeated logins do not read the
+ * table again. Only users that exist are cached; an unknown name costs one
+ * indexed probe.
+ *
+ * After airline.auth.maxFailures failed attempts in a row a user name is
+ * locked for airline.auth.lockoutSeconds. A locked name is refused before
+ * any lookup or hashing, so a brute-force loop neither reaches the database
+ * nor burns CPU on hashes.
+ *
+ * A login hands out a random token, valid until it has been idle for
+ * airline.auth.sessionMinutes. Sessions live in memory only.
+ *
+ */
+public class Authenticator {
+
+    static final int ITERATIONS = Integer.getInteger("airline.auth.iterations", 120000);
+    static final long CACHE_SECONDS = Long.getLong("airline.auth.cacheSeconds", 300L);
+    static final int MAX_FAILURES = Integer.getInteger("airline.auth.maxFailures", 5);
+    static final long LOCKOUT_SECONDS = Long.getLong("airline.auth.lockoutSeconds", 60L);
+    static final long SESSION_MINUTES = Long.getLong("airline.auth.sessionMinutes", 30L);
+    // entries kept in each in-memory table before expired ones are swept
+    static final int MAX_ENTRIES = 10000;
+
+    static final String LOOKUP_QUERY = "SELECT UserID, Password, UserType FROM Users WHERE UserName = ?";
+    // only replaces the value that was checked, so concurrent logins agree
+    static final String UPGRADE_PASSWORD = "UPDATE Users SET Password = ? WHERE UserID = ? AND Password = ?";
+
+    private static final String SCHEME = "pbkdf2";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int TOKEN_BYTES = 32;
+
+    /**
+     * A logged in user.
+     */
+    public static class Login {
+        public final String token;
+        public final int userId;
+        public final String userName;
+        // 1 management, 2 customer, 3 pilot, 4 technician
+        public final String userType;
+        private volatile long expiresAt;
+
+        Login(String token, int userId, String userName, String userType) {
+            this.token = token;
+            this.userId = userId;
+            this.userName = userName;
+            this.userType = userType;
+            touch();
+        }
+
+        void touch() {
+            expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(SESSION_MINUTES);
+        }
+    }//end Login
+
+    /*
+     * The Users row of a name, as last read.
+     */
+    private static class Credential {
+        final int userId;
+        final String stored;
+        final String userType;
+        final long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CACHE_SECONDS);
+
+        Credential(int userId, String stored, String userType) {
+            this.userId = userId;
+            this.stored = stored;
+            this.userType = userType;
+        }
+    }//end Credential
+
+    /*
+     * Failed attempts of one user name.
+     */
+    private static class Failures {
+        int count = 0;
+        long lockedUntil = 0;
+    }//end Failures
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final AirlineManagement esql;
+    private final ConcurrentHashMap<String, Credential> credentials = new ConcurrentHashMap<String, Credential>();
+    private final ConcurrentHashMap<String, Failures> failures = new ConcurrentHashMap<String, Failures>();
+    private final ConcurrentHashMap<String, Login> sessions = new ConcurrentHashMap<String, Login>();
+
+    public Authenticator(AirlineManagement esql) {
+        this.esql = esql;
+    }
+
+    /**
+     * Checks a user name and password.
+     *
+     * @return the session of the user, or null when the name or the
+     * password is wrong
+     * @throws java.sql.SQLException when the name is locked out or the
+     * lookup failed
+     */
+    public Login logIn(String userName, String password) throws SQLException {
+        long now = System.currentTimeMillis();
+        Failures failed = failures.get(userName);
+        if (failed != null) {
+            synchronized (failed) {
+                if (failed.lockedUntil > now) {
+                    throw new SQLException("TOO MANY FAILED ATTEMPTS. TRY AGAIN IN "
+                            + TimeUnit.MILLISECONDS.toSeconds(failed.lockedUntil - now + 999) + " SECONDS");
+                }
+            }
+        }
+
+        Credential credential = credential(userName);
+        if (credential == null || !matches(password, credential.stored)) {
+            recordFailure(userName, now);
+            return null;
+        }
+        failures.remove(userName);
+        if (!current(credential.stored)) {
+            upgrade(userName, credential, password);
+        }
+
+        Login login = new Login(newToken(), credential.userId, userName, credential.userType);
+        if (sessions.size() >= MAX_ENTRIES) {
+            sweepSessions(now);
+        }
+        sessions.put(login.token, login);
+        return login;
+    }//end logIn
+
+    /**
+     * @return the session of a token that has not expired, its idle time
+     * restarted, or null
+     */
+    public Login resume(String token) {
+        Login login = sessions.get(token);
+        if (login == null) {
+            return null;
+        }
+        if (login.expiresAt <= System.currentTimeMillis()) {
+            sessions.remove(token, login);
+            return null;
+        }
+        login.touch();
+        return login;
+    }//end resume
+
+    public void logOut(String token) {
+        sessions.remove(token);
+    }
+
+    /**
+     * @return whether a user already has the name, from the cache when it
+     * knows the name
+     */
+    public boolean userExists(String userName) throws SQLException {
+        return credential(userName) != null;
+    }
+
+    /**
+     * @return a new salted hash of a password, to be stored in Users
+     */
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return SCHEME + "$" + ITERATIONS + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, ITERATIONS));
+    }
+
+    private Credential credential(String userName) throws SQLException {
+        Credential credential = credentials.get(userName);
+        if (credential != null && credential.expiresAt > System.currentTimeMillis()) {
+            return credential;
+        }
+        QueryResult result = esql.executeQueryForResult(LOOKUP_QUERY, userName);
+        if (result.rowCount() < 1) {
+            credentials.remove(userName);
+            return null;
+        }
+        credential = new Credential(result.getInt(0, 0), result.getString(0, 1), result.getString(0, 2));
+        cache(userName, credential);
+        return credential;
+    }//end credential
+
+    private void cache(String userName, Credential credential) {
+        if (credentials.size() >= MAX_ENTRIES) {
+            credentials.clear();
+        }
+        credentials.put(userName, credential);
+    }
+
+    /*
+     * Replaces a plaintext password or a cheaper hash with a current hash.
+     * A failed update only means the next login tries again.
+     */
+    private void upgrade(String userName, Credential credential, String password) {
+        String hashed = hash(password);
+        try {
+            if (esql.executeUpdate(UPGRADE_PASSWORD, hashed, credential.userId, credential.stored) > 0) {
+                cache(userName, new Credential(credential.userId, hashed, credential.userType));
+            } else {
+                credentials.remove(userName);
+            }
+        } catch (SQLException e) {
+            System.err.println(e.getMessage());
+        }
+    }//end upgrade
+
+    private void recordFailure(String userName, long now) {
+        if (failures.size() >= MAX_ENTRIES) {
+            sweepFailures(now);
+        }
+        Failures failed = failures.get(userName);
+        if (failed == null) {
+            Failures created = new Failures();
+            failed = failures.putIfAbsent(userName, created);
+            if (failed == null) {
+                failed = created;
+            }
+        }
+        synchronized (failed) {
+            if (++failed.count >= MAX_FAILURES) {
+                failed.count = 0;
+                failed.lockedUntil = now + TimeUnit.SECONDS.toMillis(LOCKOUT_SECONDS);
+            }
+        }
+    }//end recordFailure
+
+    // names that are not locked lose their count; the table stays bounded
+    private void sweepFailures(long now) {
+        for (Iterator<Map.Entry<String, Failures>> it = failures.entrySet().iterator(); it.hasNext(); ) {
+            Failures failed = it.next().getValue();
+            synchronized (failed) {
+                if (failed.lockedUntil <= now) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void sweepSessions(long now) {
+        for (Iterator<Login> it = sessions.values().iterator(); it.hasNext(); ) {
+            if (it.next().expiresAt <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    /*
+     * Compares in constant time. A stored value that is not a hash is a
+     * plaintext password from before hashing.
+     */
+    private static boolean matches(String password, String stored) {
+        if (stored == null || password == null) {
+            return false;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(SCHEME)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        Base64.Decoder base64 = Base64.getDecoder();
+        byte[] expected = base64.decode(parts[3]);
+        return MessageDigest.isEqual(expected, pbkdf2(password, base64.decode(parts[2]), Integer.parseInt(parts[1])));
+    }//end matches
+
+    // a hash with the current number of iterations
+    private static boolean current(String stored) {
+        String[] parts = stored.split("\\$");
+        return parts.length == 4 && parts[0].equals(SCHEME) && Integer.parseInt(parts[1]) >= ITERATIONS;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // every Java 8 and later runtime provides PBKDF2WithHmacSHA256
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }//end pbkdf2
+
+    private static String newToken() {
+        byte[] token = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(token);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+}//end Authenticator
@@ -0,0 +1,751 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs menu operations from a command file or standard input instead of the
+ * menus, for nightly reports and bulk bookings. Every line is one command
+ * with whitespace separated arguments (double quotes keep a city name with
+ * spaces together, # starts a comment), for example:
+ *
+ *   book 1042 77
+ *   stats F100 5/1/25 5/31/25
+ *   search "Los Angeles" Chicago 2025-05-03
+ *   route "Los Angeles" Boston 2025-05-03 fare
+ *
+ * The commands run the statements of the menu handlers. Reads are handed to
+ * airline.batch.readers threads and run on pooled connections while later
+ * lines are parsed. Consecutive writes are grouped into transactions of up to
+ * airline.batch.transactionSize commands, with consecutive maintenance
+ * requests sent as one JDBC batch; a group that fails is run again one
+ * command per transaction, so only the failing command is reported. A write
+ * waits for the reads before it and a read for the writes before it, so
+ * every command sees the effect of the lines above it.
+ *
+ * Standard out gets one JSON object per command, in input order; progress
+ * and connection messages go to standard error.
+ *
+ */
+public class BatchRunner {
+
+    // writes committed together; 1 commits every write on its own
+    static final int TRANSACTION_SIZE = Math.max(1, Integer.getInteger("airline.batch.transactionSize", 100));
+    // threads running reads; each holds a pooled connection while it runs
+    static final int READERS = Math.max(1, Integer.getInteger("airline.batch.readers", 4));
+    // reads queued or running before the next line waits for the oldest
+    static final int WINDOW = READERS * 4;
+
+    /**
+     * The commands, with the handler whose statements they run.
+     */
+    enum Op {
+        SEATS("seats", "FlightSeats", false, "<flight> <date>"),
+        STATUS("status", "FlightStatus", false, "<flight> <date>"),
+        FLIGHTS("flights", "FlightsPerDate", false, "<date>"),
+        PASSENGERS("passengers", "PassengersList", false, "<flight> <date>"),
+        PASSENGER("passenger", "PassengerInfo", false, "<reservation>"),
+        TECHNICIAN("technician", "TechnicianInfo", false, "<technician>"),
+        PLANE_REPAIRS("plane-repairs", "PlaneRepairRange", false, "<plane> <start date> <end date>"),
+        STATS("stats", "FlightStats", false, "<flight> <start date> <end date>"),
+        FLEET("fleet", "FleetStats", false, "<all|flight|route|plane> <day|week|month> <start date> <end date>"),
+        SEARCH("search", "ViewDateFlights", false, "<departure city> <arrival city> <date>"),
+        ROUTE("route", "FindConnections", false, "<departure city> <arrival city> <date> <arrival|stops|fare>"),
+        PRICE("price", "FindTicketPrice", false, "<flight> <date>"),
+        RESERVATIONS("reservations", "ViewCurrentReservations", false, "<customer>"),
+        REPAIRS("repairs", "FindAllRepairs", false, "<plane> <start date> <end date>"),
+        REQUESTS("requests", "FindAllPilotRequests", false, "<pilot>"),
+        BOOK("book", "MakeReservation", true, "<customer> <flight instance>"),
+        CANCEL("cancel", "CancelReservation", true, "<reservation>"),
+        REQUEST("request", "MaintenaceRequest", true, "<pilot> <plane> <repair code> <date>"),
+        RECONCILE("reconcile", "ReconcileWaitlists", true, "");
+
+        final String command;
+        final String handler;
+        final boolean write;
+        final String usage;
+        final int arity;
+
+        Op(String command, String handler, boolean write, String usage) {
+            this.command = command;
+            this.handler = handler;
+            this.write = write;
+            this.usage = usage;
+            this.arity = usage.isEmpty() ? 0 : usage.split("> <").length;
+        }
+    }//end Op
+
+    private static final Map<String, Op> OPS = new HashMap<String, Op>();
+
+    static {
+        for (Op op : Op.values()) {
+            OPS.put(op.command, op);
+        }
+    }
+
+    /*
+     * One line of input.
+     */
+    private static class Command {
+        final int line;
+        final String name;
+        final Op op;
+        final List<String> args;
+
+        Command(int line, String name, Op op, List<String> args) {
+            this.line = line;
+            this.name = name;
+            this.op = op;
+            this.args = args;
+        }
+
+        String arg(int i) {
+            return args.get(i);
+        }
+    }//end Command
+
+    /*
+     * A write waiting for its transaction. Arguments are parsed and keys
+     * drawn before the transaction, so a retried transaction reuses them.
+     */
+    private static class Write {
+        final Command command;
+        String error;
+        int customerId;
+        int flightInstanceId;
+        String reservationId;
+        int requestId;
+        Date date;
+        // what the write did to open seats, applied to the route search
+        // once its transaction has committed
+        ReservationEngine.Booking booking;
+        ReservationEngine.Cancellation cancellation;
+
+        Write(Command command) {
+            this.command = command;
+        }
+    }//end Write
+
+    private final AirlineManagement esql;
+    private final PrintStream out;
+    private final ExecutorService readers;
+    // results of the reads in input order, oldest first
+    private final ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+    private final List<Write> writes = new ArrayList<Write>();
+    private int commands = 0;
+    private int failed = 0;
+
+    /**
+     * @param esql the database utility whose pool runs the commands
+     * @param out where the results are written
+     */
+    public BatchRunner(AirlineManagement esql, PrintStream out) {
+        this.esql = esql;
+        this.out = out;
+        this.readers = Executors.newFixedThreadPool(READERS, new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "batch-reader-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Runs every command of the input and writes the last results.
+     *
+     * @return the number of commands that failed
+     * @throws java.io.IOException when the input cannot be read
+     */
+    public int run(BufferedReader input) throws IOException {
+        try {
+            String text;
+            int line = 0;
+            while ((text = input.readLine()) != null) {
+                ++line;
+                List<String> words = split(text);
+                if (words.isEmpty()) {
+                    continue;
+                }
+                String name = words.get(0).toLowerCase();
+                Command command = new Command(line, name, OPS.get(name), words.subList(1, words.size()));
+                ++commands;
+                if (command.op != null && command.op.write) {
+                    drainReads();
+                    writes.add(prepare(command));
+                    if (writes.size() >= TRANSACTION_SIZE) {
+                        flushWrites();
+                    }
+                } else {
+                    flushWrites();
+                    submit(command);
+                }
+            }
+            flushWrites();
+            drainReads();
+        } finally {
+            readers.shutdownNow();
+            out.flush();
+        }
+        return failed;
+    }//end run
+
+    /**
+     * @return the number of commands read so far
+     */
+    public int commands() {
+        return commands;
+    }
+
+    // ---------------------------------------------------------------- reads
+
+    private void submit(final Command command) {
+        if (command.op == null || command.args.size() != command.op.arity) {
+            final String error = usageError(command);
+            pending.add(readers.submit(new Callable<String>() {
+                public String call() {
+                    return error;
+                }
+            }));
+        } else {
+            pending.add(readers.submit(new Callable<String>() {
+                public String call() {
+                    Metrics.begin(command.op.handler);
+                    try {
+                        StringBuilder result = ok(command).append(',');
+                        if (command.op == Op.ROUTE) {
+                            result.append(itineraries(route(command)));
+                        } else {
+                            result.append(rows(read(command)));
+                        }
+                        return result.append('}').toString();
+                    } catch (Exception e) {
+                        return error(command, e.getMessage());
+                    } finally {
+                        Metrics.end();
+                    }
+                }
+            }));
+        }
+        // hand out the finished results; wait only when the window is full
+        while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() > WINDOW)) {
+            emitRead();
+        }
+    }//end submit
+
+    private void drainReads() {
+        while (!pending.isEmpty()) {
+            emitRead();
+        }
+    }
+
+    private void emitRead() {
+        Future<String> next = pending.peek();
+        if (!next.isDone()) {
+            out.flush();
+        }
+        String result;
+        try {
+            result = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a result");
+        } catch (ExecutionException e) {
+            result = "{\"ok\":false,\"error\":" + quote(String.valueOf(e.getCause())) + "}";
+        }
+        pending.remove();
+        emit(result);
+    }//end emitRead
+
+    /*
+     * Runs the query of a read command, with the checks its handler makes.
+     */
+    private QueryResult read(Command c) throws SQLException {
+        switch (c.op) {
+            case SEATS:
+                requireFlight(c.arg(0));
+                return esql.executeQueryForResult(AirlineManagement.FLIGHT_SEATS_QUERY, c.arg(0), DateInput.parse(c.arg(1)));
+            case STATUS:
+                requireFlight(c.arg(0));
+                return esql.executeQueryForResult(AirlineManagement.FLIGHT_STATUS_QUERY, c.arg(0), DateInput.parse(c.arg(1)));
+            case FLIGHTS:
+                return esql.executeQueryForResult(AirlineManagement.FLIGHTS_PER_DATE_QUERY, DateInput.parse(c.arg(0)));
+            case PASSENGERS:
+                requireFlight(c.arg(0));
+                return esql.executeQueryForResult(AirlineManagement.PASSENGERS_LIST_QUERY, c.arg(0), DateInput.parse(c.arg(1)));
+            case PASSENGER: {
+                QueryResult result = esql.executeQueryForResult(AirlineManagement.PASSENGER_INFO_QUERY, c.arg(0));
+                if (result.rowCount() < 1) {
+                    throw new SQLException("RESERVATION DOES NOT EXIST. PLEASE GIVE A VALID RESERVATION ID");
+                }
+                return result;
+            }
+            case TECHNICIAN:
+                if (!esql.refData().technicianExists(c.arg(0))) {
+                    throw new SQLException("TECHNICIAN DOES NOT EXIST. PLEASE GIVE A VALID TECHNICIAN ID");
+                }
+                return esql.executeQueryForResult(AirlineManagement.TECHNICIAN_INFO_QUERY, c.arg(0));
+            case PLANE_REPAIRS:
+                requirePlane(c.arg(0));
+                return esql.executeQueryForResult(AirlineManagement.PLANE_REPAIR_RANGE_QUERY,
+                        DateInput.parse(c.arg(1)), DateInput.parse(c.arg(2)), c.arg(0));
+            case STATS:
+                requireFlight(c.arg(0));
+                return FlightStatistics.flightStats(esql, c.arg(0), DateInput.parse(c.arg(1)), DateInput.parse(c.arg(2)));
+            case FLEET:
+                return FlightStatistics.rollup(esql,
+                        FlightStatistics.Scope.valueOf(c.arg(0).toUpperCase()),
+                        FlightStatistics.Grain.valueOf(c.arg(1).toUpperCase()),
+                        DateInput.parse(c.arg(2)), DateInput.parse(c.arg(3)));
+            case SEARCH:
+                return esql.executeQueryForResult(AirlineManagement.VIEW_DATE_FLIGHTS_QUERY,
+                        c.arg(0), c.arg(1), DateInput.parse(c.arg(2)));
+            case PRICE:
+                requireFlight(c.arg(0));
+                return esql.executeQueryForResult(AirlineManagement.TICKET_PRICE_QUERY, c.arg(0), DateInput.parse(c.arg(1)));
+            case RESERVATIONS:
+                return esql.executeQueryForResult(AirlineManagement.CURRENT_RESERVATIONS_QUERY, Integer.parseInt(c.arg(0)));
+            case REPAIRS:
+                return esql.executeQueryForResult(AirlineManagement.FIND_ALL_REPAIRS_QUERY,
+                        c.arg(0), DateInput.parse(c.arg(1)), DateInput.parse(c.arg(2)));
+            case REQUESTS:
+                return esql.executeQueryForResult(AirlineManagement.PILOT_REQUESTS_QUERY, c.arg(0));
+            default:
+                throw new IllegalArgumentException(c.name + " is not a read");
+        }
+    }//end read
+
+    private List<RouteSearch.Itinerary> route(Command c) throws SQLException {
+        return esql.routes().search(c.arg(0), c.arg(1), DateInput.parseLocal(c.arg(2)),
+                RouteSearch.Order.valueOf(c.arg(3).toUpperCase()));
+    }
+
+    private void requireFlight(String flightNumber) throws SQLException {
+        if (!esql.refData().flightExists(flightNumber)) {
+            throw new SQLException("FLIGHT DOES NOT EXIST. PLEASE GIVE A VALID FLIGHT NUMBER");
+        }
+    }
+
+    private void requirePlane(String planeId) throws SQLException {
+        if (!esql.refData().planeExists(planeId)) {
+            throw new SQLException("PLANE DOES NOT EXIST. PLEASE GIVE A VALID PLANE ID");
+        }
+    }
+
+    // --------------------------------------------------------------- writes
+
+    /*
+     * Parses and checks a write and draws its key. A write that cannot run
+     * keeps its error and is reported in its place when the group is run.
+     */
+    private Write prepare(Command c) {
+        Write w = new Write(c);
+        if (c.args.size() != c.op.arity) {
+            w.error = usageError(c);
+            return w;
+        }
+        try {
+            switch (c.op) {
+                case BOOK:
+                    w.customerId = Integer.parseInt(c.arg(0));
+                    w.flightInstanceId = Integer.parseInt(c.arg(1));
+                    w.reservationId = esql.ids().nextReservationId();
+                    break;
+                case REQUEST:
+                    if (!esql.refData().pilotExists(c.arg(0))) {
+                        throw new SQLException("PILOT DOES NOT EXIST. PLEASE GIVE A VALID PILOT ID");
+                    }
+                    requirePlane(c.arg(1));
+                    w.date = DateInput.parse(c.arg(3));
+                    w.requestId = esql.ids().nextMaintenanceRequestId();
+                    break;
+                default:
+                    break;
+            }
+        } catch (Exception e) {
+            w.error = error(c, e.getMessage());
+        }
+        return w;
+    }//end prepare
+
+    /*
+     * Runs the pending writes as one transaction. When it fails, each write
+     * is run again in a transaction of its own.
+     */
+    private void flushWrites() {
+        if (writes.isEmpty()) {
+            return;
+        }
+        final List<Write> group = new ArrayList<Write>(writes);
+        writes.clear();
+        Metrics.begin("BatchWrites");
+        try {
+            List<String> results = esql.executeTransaction(new Transaction.Work<List<String>>() {
+                public List<String> run(Transaction tx) throws SQLException {
+                    List<String> results = new ArrayList<String>(group.size());
+                    int i = 0;
+                    while (i < group.size()) {
+                        int end = i;
+                        while (end < group.size() && isRequest(group.get(end))) {
+                            ++end;
+                        }
+                        if (end > i) {
+                            results.addAll(applyRequests(tx, group.subList(i, end)));
+                            i = end;
+                        } else {
+                            Write w = group.get(i++);
+                            results.add(w.error != null ? w.error : apply(tx, w));
+                        }
+                    }
+                    return results;
+                }
+            });
+            for (Write w : group) {
+                applySeats(w);
+            }
+            for (String result : results) {
+                emit(result);
+            }
+        } catch (SQLException e) {
+            for (final Write w : group) {
+                if (w.error != null || group.size() == 1) {
+                    emit(w.error != null ? w.error : error(w.command, e.getMessage()));
+                    continue;
+                }
+                try {
+                    String result = esql.executeTransaction(new Transaction.Work<String>() {
+                        public String run(Transaction tx) throws SQLException {
+                            return apply(tx, w);
+                        }
+                    });
+                    applySeats(w);
+                    emit(result);
+                } catch (SQLException single) {
+                    emit(error(w.command, single.getMessage()));
+                }
+            }
+        } finally {
+            Metrics.end();
+        }
+        out.flush();
+    }//end flushWrites
+
+    /*
+     * Runs one write inside the group transaction and returns its result.
+     * It has no effect outside the database, so the group can be retried.
+     */
+    private String apply(Transaction tx, Write w) throws SQLException {
+        Command c = w.command;
+        w.booking = null;
+        w.cancellation = null;
+        switch (c.op) {
+            case BOOK: {
+                ReservationEngine.Booking booking =
+                        ReservationEngine.book(tx, w.reservationId, w.customerId, w.flightInstanceId);
+                w.booking = booking;
+                return ok(c).append(",\"reservation\":").append(quote(booking.reservationId))
+                        .append(",\"status\":").append(quote(booking.status))
+                        .append(",\"seatsOpen\":").append(booking.seatsOpen).append('}').toString();
+            }
+            case CANCEL: {
+                ReservationEngine.Cancellation cancellation = ReservationEngine.cancel(tx, c.arg(0));
+                if (cancellation == null) {
+                    return error(c, "RESERVATION DOES NOT EXIST. PLEASE GIVE A VALID RESERVATION NUMBER");
+                }
+                w.cancellation = cancellation;
+                return ok(c).append(",\"reservation\":").append(quote(c.arg(0)))
+                        .append(",\"status\":").append(quote(cancellation.status))
+                        .append(",\"promoted\":").append(quote(cancellation.promotedReservationId)).append('}').toString();
+            }
+            case REQUEST:
+                tx.executeUpdate(AirlineManagement.MAINTENANCE_REQUEST_INSERT,
+                        w.requestId, c.arg(1), c.arg(2), w.date, c.arg(0));
+                return ok(c).append(",\"request\":").append(w.requestId).append('}').toString();
+            case RECONCILE:
+                return ok(c).append(',')
+                        .append(rows(tx.executeQueryForResult(ReservationEngine.RECONCILE_WAITLISTS))).append('}').toString();
+            default:
+                throw new IllegalArgumentException(c.name + " is not a write");
+        }
+    }//end apply
+
+    /*
+     * Passes the open seats a committed write changed on to the route
+     * search, so later route commands see them.
+     */
+    private void applySeats(Write w) {
+        if (w.error != null) {
+            return;
+        }
+        if (w.booking != null) {
+            esql.routes().seatsOpen(w.flightInstanceId, w.booking.seatsOpen);
+        } else if (w.cancellation != null && w.cancellation.promotedReservationId == null
+                && ReservationEngine.RESERVED.equals(w.cancellation.status)) {
+            esql.routes().seatsReleased(w.cancellation.flightInstanceId, 1);
+        } else if (w.command.op == Op.RECONCILE) {
+            esql.routes().invalidateAll();
+        }
+    }//end applySeats
+
+    private static boolean isRequest(Write w) {
+        return w.error == null && w.command.op == Op.REQUEST;
+    }
+
+    /*
+     * Inserts consecutive maintenance requests as one JDBC batch.
+     */
+    private List<String> applyRequests(Transaction tx, List<Write> requests) throws SQLException {
+        List<Object[]> rows = new ArrayList<Object[]>(requests.size());
+        for (Write w : requests) {
+            Command c = w.command;
+            rows.add(new Object[] {w.requestId, c.arg(1), c.arg(2), w.date, c.arg(0)});
+        }
+        tx.executeBatch(AirlineManagement.MAINTENANCE_REQUEST_INSERT, rows);
+        List<String> results = new ArrayList<String>(requests.size());
+        for (Write w : requests) {
+            results.add(ok(w.command).append(",\"request\":").append(w.requestId).append('}').toString());
+        }
+        return results;
+    }//end applyRequests
+
+    // --------------------------------------------------------------- output
+
+    private void emit(String result) {
+        // values are quoted with their quotes escaped, so only the status
+        // field can match
+        if (result.indexOf("\"ok\":false") >= 0) {
+            ++failed;
+        }
+        out.println(result);
+    }
+
+    private static StringBuilder ok(Command c) {
+        return new StringBuilder(256).append("{\"line\":").append(c.line)
+                .append(",\"op\":").append(quote(c.name)).append(",\"ok\":true");
+    }
+
+    private static String error(Command c, String message) {
+        return "{\"line\":" + c.line + ",\"op\":" + quote(c.name) + ",\"ok\":false,\"error\":" + quote(message) + "}";
+    }
+
+    private static String usageError(Command c) {
+        if (c.op == null) {
+            return error(c, "UNKNOWN COMMAND: " + c.name);
+        }
+        return error(c, "USAGE: " + c.op.command + (c.op.usage.isEmpty() ? "" : " " + c.op.usage));
+    }
+
+    /*
+     * "itineraries":[{"departs":..,"arrives":..,"days":..,"stops":..,"fare":..,"legs":[{...},...]},...]
+     */
+    private static String itineraries(List<RouteSearch.Itinerary> itineraries) {
+        StringBuilder json = new StringBuilder(64 + itineraries.size() * 256).append("\"itineraries\":[");
+        for (int i = 0; i < itineraries.size(); ++i) {
+            RouteSearch.Itinerary itinerary = itineraries.get(i);
+            json.append(i == 0 ? "{" : ",{")
+                    .append("\"departs\":").append(quote(itinerary.departureTime().toString()))
+                    .append(",\"arrives\":").append(quote(itinerary.arrivalTime().toString()))
+                    .append(",\"days\":").append(itinerary.arrivalDay())
+                    .append(",\"stops\":").append(itinerary.stops())
+                    .append(",\"fare\":").append(itinerary.fareAmount().toPlainString())
+                    .append(",\"legs\":[");
+            for (int j = 0; j < itinerary.legs.size(); ++j) {
+                RouteSearch.Leg leg = itinerary.legs.get(j);
+                json.append(j == 0 ? "{" : ",{")
+                        .append("\"flight\":").append(quote(leg.flightNumber))
+                        .append(",\"instance\":").append(leg.flightInstanceId)
+                        .append(",\"from\":").append(quote(leg.from))
+                        .append(",\"to\":").append(quote(leg.to))
+                        .append(",\"date\":").append(quote(leg.date.toString()))
+                        .append(",\"departs\":").append(quote(leg.departureTime.toString()))
+                        .append(",\"arrives\":").append(quote(leg.arrivalTime.toString()))
+                        .append(",\"seatsOpen\":").append(leg.seatsOpen()).append('}');
+            }
+            json.append("]}");
+        }
+        return json.append(']').toString();
+    }//end itineraries
+
+    /*
+     * "columns":[...],"rows":[[...],...] with numbers and booleans unquoted
+     */
+    private static String rows(QueryResult result) {
+        StringBuilder json = new StringBuilder(64 + (int) Math.min(result.bytes() * 2, 1 << 20));
+        json.append("\"columns\":[");
+        for (int col = 0; col < result.columnCount(); ++col) {
+            json.append(col == 0 ? "" : ",").append(quote(result.columnName(col)));
+        }
+        json.append("],\"rows\":[");
+        for (int row = 0; row < result.rowCount(); ++row) {
+            json.append(row == 0 ? "[" : ",[");
+            for (int col = 0; col < result.columnCount(); ++col) {
+                if (col > 0) {
+                    json.append(',');
+                }
+                String value = result.getString(row, col);
+                if (value == null) {
+                    json.append("null");
+                    continue;
+                }
+                switch (result.columnKind(col)) {
+                    case INT:
+                    case LONG:
+                    case DECIMAL:
+                        json.append(value);
+                        break;
+                    case DOUBLE:
+                        json.append(Double.isInfinite(result.getDouble(row, col)) || Double.isNaN(result.getDouble(row, col))
+                                ? quote(value) : value);
+                        break;
+                    case BOOLEAN:
+                        json.append(result.getInt(row, col) != 0);
+                        break;
+                    default:
+                        json.append(quote(value));
+                        break;
+                }
+            }
+            json.append(']');
+        }
+        return json.append(']').toString();
+    }//end rows
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        json.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        json.append(ch);
+                    }
+                    break;
+            }
+        }
+        return json.append('"').toString();
+    }//end quote
+
+    /*
+     * Splits a line on whitespace; double quotes group words and # outside
+     * of quotes ends the line.
+     */
+    static List<String> split(String line) {
+        List<String> words = new ArrayList<String>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); ++i) {
+            char ch = line.charAt(i);
+            if (ch == '"') {
+                quoted = !quoted;
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+            } else if (!quoted && ch == '#') {
+                break;
+            } else if (!quoted && Character.isWhitespace(ch)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                word.append(ch);
+            }
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }//end split
+
+    /**
+     * Runs a command file, or standard input when none is given.
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println(
+                    "Usage: "
+                    + "java [-classpath <classpath>] "
+                    + BatchRunner.class.getName()
+                    + " <dbname> <port> <user> [<command file>]");
+            return;
+        }//end if
+
+        // results alone go to standard out; the messages printed while
+        // connecting go to standard error
+        PrintStream results = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), 64 * 1024), false);
+        System.setOut(System.err);
+
+        AirlineManagement esql = null;
+        try {
+            DriverSupport.load();
+            esql = new AirlineManagement(args[0], args[1], args[2], "");
+
+            BufferedReader input = new BufferedReader(new InputStreamReader(
+                    args.length == 4 && !args[3].equals("-") ? new FileInputStream(args[3]) : System.in,
+                    StandardCharsets.UTF_8));
+            BatchRunner runner = new BatchRunner(esql, results);
+            long start = System.currentTimeMillis();
+            int failed;
+            try {
+                failed = runner.run(input);
+            } finally {
+                input.close();
+            }
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            System.err.println("\ntotal command(s): " + runner.commands() + ", failed: " + failed
+                    + " in " + millis + " ms (" + runner.commands() * 1000L / millis + " commands/s)");
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        } finally {
+            results.flush();
+            if (esql != null) {
+                esql.cleanup();
+            }
+        }
+    }//end main
+
+}//end BatchRunner
@@ -0,0 +1,472 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of physical database connections. Callers borrow a
+ * connection for one unit of work and return it afterwards. Connections that
+ * sat idle are validated before they are handed out, connections idle for
+ * too long are closed by a background sweeper, and a failed connect is
+ * retried with exponential backoff instead of ending the program.
+ *
+ * Each pooled connection owns its own StatementCache, so a prepared statement
+ * is reused by whoever borrows that connection next.
+ *
+ */
+public class ConnectionPool {
+
+    /**
+     * A physical connection together with the prepared statements opened on
+     * it.
+     */
+    public static class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statements;
+        private long lastUsed;
+
+        private PooledConnection(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statements = new StatementCache(connection, statementCacheSize);
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        public Connection connection() {
+            return connection;
+        }
+
+        public StatementCache statements() {
+            return statements;
+        }
+
+        private void close() {
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // ignored.
+            }
+        }
+    }//end PooledConnection
+
+    private final String url;
+    private final String user;
+    private final String passwd;
+    private final int maxSize;
+    private final int minIdle;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validateAfterMillis;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // most recently returned connection first, so hot connections stay warm
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+    private int total = 0;
+    private int waiting = 0;
+    private boolean closed = false;
+    private final ScheduledExecutorService sweeper;
+
+    // metrics, guarded by lock
+    private long borrows = 0;
+    private long waits = 0;
+    private long waitNanos = 0;
+    private long timeouts = 0;
+    private long created = 0;
+    private long evicted = 0;
+    private long validationFailures = 0;
+    private long connectRetries = 0;
+
+    /**
+     * Creates a pool using the airline.pool.* system properties for sizing.
+     */
+    public ConnectionPool(String url, String user, String passwd) {
+        this(url, user, passwd,
+                Integer.getInteger("airline.pool.maxSize", 8),
+                Integer.getInteger("airline.pool.minIdle", 1),
+                Long.getLong("airline.pool.borrowTimeoutMillis", 30000L),
+                Long.getLong("airline.pool.idleTimeoutMillis", 300000L),
+                Long.getLong("airline.pool.validateAfterMillis", 5000L),
+                Integer.getInteger("airline.statementCacheSize", StatementCache.DEFAULT_SIZE));
+    }
+
+    /**
+     * @param url the JDBC connection URL
+     * @param user the user name used to login to the database
+     * @param passwd the user login password
+     * @param maxSize the maximum number of physical connections
+     * @param minIdle the number of idle connections the sweeper keeps open
+     * @param borrowTimeoutMillis how long borrow waits for a free connection
+     * @param idleTimeoutMillis how long a connection may stay idle
+     * @param validateAfterMillis idle time after which a connection is
+     * validated before it is handed out
+     * @param statementCacheSize the statement cache size of each connection
+     */
+    public ConnectionPool(String url, String user, String passwd, int maxSize, int minIdle,
+            long borrowTimeoutMillis, long idleTimeoutMillis, long validateAfterMillis,
+            int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("pool size must be positive: " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.passwd = passwd;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validateAfterMillis = validateAfterMillis;
+        this.statementCacheSize = statementCacheSize;
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "connection-pool-sweeper");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long period = Math.max(1000L, idleTimeoutMillis / 2);
+        this.sweeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }//end ConnectionPool
+
+    /**
+     * Borrows a connection, opening a new one if the pool is below its bound
+     * or waiting for one to be returned otherwise.
+     *
+     * @return a validated connection; it must be handed back through release
+     * @throws java.sql.SQLException when no connection could be obtained
+     */
+    public PooledConnection borrow() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        while (true) {
+            PooledConnection pc = null;
+            boolean open = false;
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new SQLException("Connection pool is closed");
+                }
+                if (idle.isEmpty() && total >= maxSize) {
+                    long start = System.nanoTime();
+                    ++waits;
+                    ++waiting;
+                    try {
+                        while (idle.isEmpty() && total >= maxSize && !closed) {
+                            long remaining = deadline - System.nanoTime();
+                            if (remaining <= 0) {
+                                ++timeouts;
+                                throw new SQLException("Timed out after " + borrowTimeoutMillis
+                                        + "ms waiting for a database connection");
+                            }
+                            available.awaitNanos(remaining);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection");
+                    } finally {
+                        --waiting;
+                        waitNanos += System.nanoTime() - start;
+                    }
+                    continue;
+                }
+                ++borrows;
+                if (!idle.isEmpty()) {
+                    pc = idle.pollFirst();
+                } else {
+                    // reserve the slot before connecting outside the lock
+                    ++total;
+                    open = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (open) {
+                try {
+                    pc = new PooledConnection(connect(), statementCacheSize);
+                } catch (SQLException e) {
+                    discard();
+                    throw e;
+                }
+            } else if (!validate(pc)) {
+                pc.close();
+                discard();
+                continue;
+            }
+            pc.lastUsed = System.currentTimeMillis();
+            return pc;
+        }
+    }//end borrow
+
+    /**
+     * Returns a borrowed connection. A connection whose last operation failed
+     * with a connection-level error is closed instead of being reused.
+     *
+     * @param pc the borrowed connection
+     * @param failure the exception the caller saw, or null
+     */
+    public void release(PooledConnection pc, SQLException failure) {
+        if (pc == null) {
+            return;
+        }
+        if (failure != null && isConnectionError(pc, failure)) {
+            pc.close();
+            discard();
+            return;
+        }
+        pc.lastUsed = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (closed) {
+                --total;
+            } else {
+                idle.addFirst(pc);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        pc.close();
+    }//end release
+
+    public void release(PooledConnection pc) {
+        release(pc, null);
+    }
+
+    /**
+     * Closes every idle connection and stops handing out new ones.
+     * Connections still borrowed are closed when they are returned.
+     */
+    public void close() {
+        sweeper.shutdownNow();
+        lock.lock();
+        try {
+            closed = true;
+            for (PooledConnection pc : idle) {
+                pc.close();
+                --total;
+            }
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }//end close
+
+    // frees the slot of a connection that was closed or never opened
+    private void discard() {
+        lock.lock();
+        try {
+            --total;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Opens a physical connection, retrying with exponential backoff so a
+     * restarting server or a dropped socket does not end the program.
+     */
+    private Connection connect() throws SQLException {
+        int attempts = Integer.getInteger("airline.pool.connectAttempts", 5);
+        long backoff = 100L;
+        SQLException last = null;
+        for (int attempt = 1; attempt <= attempts; ++attempt) {
+            try {
+                Connection c = DriverManager.getConnection(url, user, passwd);
+                lock.lock();
+                try {
+                    ++created;
+                } finally {
+                    lock.unlock();
+                }
+                return c;
+            } catch (SQLException e) {
+                last = e;
+            }
+            if (attempt < attempts) {
+                lock.lock();
+                try {
+                    ++connectRetries;
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                backoff = Math.min(backoff * 2, 5000L);
+            }
+        }
+        throw last != null ? last : new SQLException("Unable to connect to " + url);
+    }//end connect
+
+    /*
+     * Checks a connection that has been idle for a while with a trivial
+     * query; the old JDBC 3 driver does not implement Connection.isValid.
+     */
+    private boolean validate(PooledConnection pc) {
+        try {
+            if (pc.connection.isClosed()) {
+                recordValidationFailure();
+                return false;
+            }
+            if (System.currentTimeMillis() - pc.lastUsed < validateAfterMillis) {
+                return true;
+            }
+            Statement stmt = pc.connection.createStatement();
+            try {
+                ResultSet rs = stmt.executeQuery("SELECT 1");
+                rs.close();
+            } finally {
+                stmt.close();
+            }
+            return true;
+        } catch (SQLException e) {
+            recordValidationFailure();
+            return false;
+        }
+    }//end validate
+
+    private void recordValidationFailure() {
+        lock.lock();
+        try {
+            ++validationFailures;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // closes connections idle for longer than the idle timeout
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        ArrayDeque<PooledConnection> expired = new ArrayDeque<PooledConnection>();
+        lock.lock();
+        try {
+            // the oldest connections sit at the tail
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > minIdle) {
+                PooledConnection pc = it.next();
+                if (pc.lastUsed >= cutoff) {
+                    break;
+                }
+                it.remove();
+                --total;
+                ++evicted;
+                expired.add(pc);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : expired) {
+            pc.close();
+        }
+    }//end evictIdle
+
+    /*
+     * SQLState class 08 is a connection exception; 57P01 to 57P03 are
+     * server shutdown codes. The old driver leaves most states unset, so
+     * without one the connection itself is asked.
+     */
+    private static boolean isConnectionError(PooledConnection pc, SQLException e) {
+        String state = e.getSQLState();
+        if (state == null) {
+            try {
+                return pc.connection.isClosed();
+            } catch (SQLException closed) {
+                return true;
+            }
+        }
+        return state.startsWith("08") || state.startsWith("57P");
+    }
+
+    public int active() {
+        lock.lock();
+        try {
+            return total - idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int idle() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int waiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long timeouts() {
+        lock.lock();
+        try {
+            return timeouts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total time borrowers spent waiting, in milliseconds
+     */
+    public long waitMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a one-line summary of the pool counters
+     */
+    public String stats() {
+        lock.lock();
+        try {
+            return "active=" + (total - idle.size())
+                    + " idle=" + idle.size()
+                    + " max=" + maxSize
+                    + " waiting=" + waiting
+                    + " borrows=" + borrows
+                    + " waits=" + waits
+                    + " waitMs=" + TimeUnit.NANOSECONDS.toMillis(waitNanos)
+                    + " timeouts=" + timeouts
+                    + " created=" + created
+                    + " evicted=" + evicted
+                    + " validationFailures=" + validationFailures
+                    + " connectRetries=" + connectRetries;
+        } finally {
+            lock.unlock();
+        }
+    }//end stats
+
+}//end ConnectionPool
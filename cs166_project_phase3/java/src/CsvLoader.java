@@ -0,0 +1,649 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads the CSV files under data/ into the database from Java, the job
+ * load_data.sql does with psql \copy, so data can be loaded or appended
+ * without psql and at volumes the sample files never reach.
+ *
+ * Each file goes through a pipeline: one thread splits the file into chunks
+ * of records, a pool of threads parses the chunks in parallel, and the
+ * calling thread writes the parsed chunks in file order. A chunk is written
+ * with COPY FROM STDIN when the driver has the COPY API and with a batched
+ * INSERT otherwise, and it commits together with a checkpoint row in
+ * LoadCheckpoint. A load that stops part way resumes after the last
+ * committed chunk. Tables are loaded parents first so foreign keys hold.
+ *
+ * Reservation.csv has no FlightDate, which Reservation takes from its
+ * flight instance. Such a chunk is written to a temporary table first and
+ * copied on with the date joined in, as load_data.sql does.
+ *
+ */
+public class CsvLoader {
+
+    // the tables in foreign key order, as load_data.sql loads them
+    public static final String[] LOAD_ORDER = {
+        "Plane", "Flight", "Schedule", "FlightInstance", "Customer", "Reservation",
+        "Technician", "Repair", "Pilot", "MaintenanceRequest", "Users"
+    };
+
+    static final int CHUNK_ROWS = Integer.getInteger("airline.load.chunkRows", 10000);
+    static final int PARSE_THREADS = Integer.getInteger("airline.load.parseThreads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    static final boolean USE_COPY = !"false".equals(System.getProperty("airline.load.useCopy"));
+
+    static final String CREATE_CHECKPOINTS =
+            "CREATE TABLE IF NOT EXISTS LoadCheckpoint ("
+            + "TableName TEXT, Source TEXT, RowsLoaded BIGINT, PRIMARY KEY (TableName, Source))";
+
+    static final String READ_CHECKPOINT =
+            "SELECT RowsLoaded FROM LoadCheckpoint WHERE TableName = ? AND Source = ?";
+
+    static final String WRITE_CHECKPOINT =
+            "INSERT INTO LoadCheckpoint(TableName, Source, RowsLoaded) VALUES (?, ?, ?)"
+            + " ON CONFLICT (TableName, Source) DO UPDATE SET RowsLoaded = EXCLUDED.RowsLoaded";
+
+    static final String CLEAR_CHECKPOINTS = "DELETE FROM LoadCheckpoint";
+
+    // columns filled in from a parent row when a file leaves them out:
+    // table, column, parent table, key shared with the parent
+    static final String[][] DERIVED_COLUMNS = {
+        {"Reservation", "FlightDate", "FlightInstance", "FlightInstanceID"}
+    };
+
+    // moves the id sequences past the loaded ids, as load_data.sql does
+    static final String[] RESET_SEQUENCES = {
+        "SELECT setval('reservation_id_seq', COALESCE(MAX(CAST(substring(ReservationID FROM 2) AS INTEGER)), 0) + 1, false) FROM Reservation",
+        "SELECT setval('users_id_seq', COALESCE(MAX(UserID), 0) + 1, false) FROM Users",
+        "SELECT setval('maintenance_request_id_seq', COALESCE(MAX(RequestID), 0) + 1, false) FROM MaintenanceRequest"
+    };
+
+    /**
+     * The outcome of loading one file.
+     */
+    public static class Result {
+        public final String table;
+        // rows written by this run, not counting rows skipped on resume
+        public final long rows;
+        public final long skipped;
+        public final long millis;
+
+        Result(String table, long rows, long skipped, long millis) {
+            this.table = table;
+            this.rows = rows;
+            this.skipped = skipped;
+            this.millis = millis;
+        }
+
+        public long rowsPerSecond() {
+            return millis == 0 ? rows : rows * 1000 / millis;
+        }
+
+        public String toString() {
+            return table + ": " + rows + " row(s) in " + millis + " ms (" + rowsPerSecond() + " rows/s)"
+                    + (skipped > 0 ? ", resumed after " + skipped : "");
+        }
+    }//end Result
+
+    /*
+     * A run of consecutive records. The reader fills in the raw records, a
+     * parser fills in the fields and the COPY payload.
+     */
+    private static class Chunk {
+        final long firstRecord;
+        final List<String> records;
+        List<Object[]> rows;
+        String payload;
+
+        Chunk(long firstRecord, List<String> records) {
+            this.firstRecord = firstRecord;
+            this.records = records;
+        }
+    }
+
+    private final AirlineManagement esql;
+    private final File dataDir;
+    private final int chunkRows;
+    private final boolean useCopy;
+    private ExecutorService parsers = null;
+    // the CopyManager constructor and copyIn method, when the driver has them
+    private Constructor<?> copyManager = null;
+    private Method copyIn = null;
+
+    public CsvLoader(AirlineManagement esql, File dataDir) {
+        this(esql, dataDir, CHUNK_ROWS, USE_COPY);
+    }
+
+    public CsvLoader(AirlineManagement esql, File dataDir, int chunkRows, boolean useCopy) {
+        this.esql = esql;
+        this.dataDir = dataDir;
+        this.chunkRows = Math.max(1, chunkRows);
+        this.useCopy = useCopy && lookupCopyApi();
+    }
+
+    /**
+     * @return whether chunks are written with COPY rather than batched
+     * inserts
+     */
+    public boolean usesCopy() {
+        return useCopy;
+    }
+
+    /**
+     * Loads the given tables, or every table that has a file when none are
+     * given, in foreign key order. Each table is read from
+     * data/&lt;Table&gt;.csv.
+     *
+     * @param restart forget the checkpoints and load every file from the
+     * start
+     * @return the outcome of each table, in load order
+     * @throws java.sql.SQLException when a chunk cannot be written
+     * @throws java.io.IOException when a file cannot be read or parsed
+     */
+    public List<Result> load(List<String> tables, boolean restart) throws SQLException, IOException {
+        List<Result> results = new ArrayList<Result>();
+        open(restart);
+        try {
+            for (String table : LOAD_ORDER) {
+                File file = new File(dataDir, table + ".csv");
+                if (tables.isEmpty() ? file.exists() : containsIgnoreCase(tables, table)) {
+                    Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+                    Result result;
+                    try {
+                        result = load(table, file.getName(), in);
+                    } finally {
+                        in.close();
+                    }
+                    System.out.println(result);
+                    results.add(result);
+                }
+            }
+        } finally {
+            close();
+        }
+        return results;
+    }//end load
+
+    /**
+     * Prepares the checkpoint table and the parser threads for a series of
+     * load calls; close must follow.
+     *
+     * @param restart forget the checkpoints and load every source from the
+     * start
+     * @throws java.sql.SQLException when the checkpoints cannot be set up
+     */
+    public void open(boolean restart) throws SQLException {
+        esql.executeUpdate(CREATE_CHECKPOINTS);
+        if (restart) {
+            esql.executeUpdate(CLEAR_CHECKPOINTS);
+        }
+        parsers = Executors.newFixedThreadPool(PARSE_THREADS, daemonThreads("csv-parser"));
+    }//end open
+
+    /**
+     * Stops the parser threads and moves the id sequences past the loaded
+     * ids.
+     *
+     * @throws java.sql.SQLException when the sequences cannot be moved
+     */
+    public void close() throws SQLException {
+        if (parsers != null) {
+            parsers.shutdownNow();
+            parsers = null;
+        }
+        for (String sql : RESET_SEQUENCES) {
+            esql.executeQueryForResult(sql);
+        }
+    }//end close
+
+    /**
+     * Streams CSV text with a header line into a table through the reader,
+     * the parsers and the writer. The header names the columns the records
+     * fill; a column of DERIVED_COLUMNS is copied from the parent row and
+     * any other column of the table is left to its default or to the
+     * table's triggers. The checkpoint is kept per table and source name, so
+     * a source that produces the same records again, like a file or a seeded
+     * generator, resumes where it stopped.
+     *
+     * @return the outcome of the load
+     * @throws java.sql.SQLException when a chunk cannot be written
+     * @throws java.io.IOException when the input cannot be read or parsed
+     */
+    public Result load(final String table, final String source, final Reader in) throws SQLException, IOException {
+        QueryResult checkpoint = esql.executeQueryForResult(READ_CHECKPOINT, table, source);
+        final long skip = checkpoint.rowCount() > 0 ? checkpoint.getLong(0, 0) : 0;
+        final BufferedReader lines = new BufferedReader(in, 1 << 20);
+        String header = readRecord(lines);
+        if (header == null) {
+            return new Result(table, 0, skip, 0);
+        }
+        String[] names = parse(header);
+        for (String name : names) {
+            if (name == null || !name.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+                throw new IOException(table + ": not a column name in the header: " + name);
+            }
+        }
+        final String columns = String.join(", ", names);
+        final String[] types = columnTypes(table, columns);
+        final String[] derived = derivedColumn(table, names);
+        // chunks that need a derived column go through a temporary table
+        final String target = derived == null ? table : table + "_load";
+        final String stage = derived == null ? null
+                : "CREATE TEMP TABLE IF NOT EXISTS " + target + " (LIKE " + table + ") ON COMMIT DELETE ROWS";
+        final String fill = derived == null ? null : fillStatement(table, target, names, derived);
+        final String insert = insertStatement(target, columns, types);
+        final String copy = "COPY " + target + "(" + columns + ") FROM STDIN WITH CSV";
+
+        // bounded so the reader stays a few chunks ahead of the writer
+        final BlockingQueue<Future<Chunk>> pending = new ArrayBlockingQueue<Future<Chunk>>(PARSE_THREADS * 2);
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    read(lines, skip, types.length, pending);
+                    put(pending, completed(null, null));
+                } catch (InterruptedException e) {
+                    // the writer stopped and nobody is waiting for chunks
+                } catch (Exception e) {
+                    put(pending, completed(null, e));
+                }
+            }
+        }, "csv-reader-" + table);
+        reader.setDaemon(true);
+        reader.start();
+
+        long start = System.currentTimeMillis();
+        long lastReport = start;
+        long rows = 0;
+        try {
+            while (true) {
+                final Chunk chunk = take(pending);
+                if (chunk == null) {
+                    break;
+                }
+                final long loaded = chunk.firstRecord + chunk.rows.size();
+                esql.executeTransaction(new Transaction.Work<Void>() {
+                    public Void run(Transaction tx) throws SQLException {
+                        if (stage != null) {
+                            tx.executeUpdate(stage);
+                        }
+                        if (useCopy) {
+                            copy(tx.connection(), copy, chunk.payload);
+                        } else {
+                            tx.executeBatch(insert, chunk.rows);
+                        }
+                        if (fill != null) {
+                            tx.executeUpdate(fill);
+                        }
+                        tx.executeUpdate(WRITE_CHECKPOINT, table, source, loaded);
+                        return null;
+                    }
+                });
+                rows += chunk.rows.size();
+
+                long now = System.currentTimeMillis();
+                if (now - lastReport >= 5000) {
+                    System.out.println(new Result(table, rows, skip, now - start));
+                    lastReport = now;
+                }
+            }//end while
+        } finally {
+            reader.interrupt();
+        }
+        return new Result(table, rows, skip, System.currentTimeMillis() - start);
+    }//end load
+
+    /*
+     * Splits the input after its header into chunks of whole records and
+     * hands each chunk to a parser. A quoted field may span lines, so a
+     * record ends at a line break outside quotes.
+     */
+    private void read(BufferedReader reader, long skip, final int columns, BlockingQueue<Future<Chunk>> pending)
+            throws IOException, InterruptedException {
+        long record = 0;
+        List<String> records = new ArrayList<String>(chunkRows);
+        String line;
+        while ((line = readRecord(reader)) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (record++ < skip) {
+                continue;
+            }
+            records.add(line);
+            if (records.size() == chunkRows) {
+                pending.put(parsers.submit(parseTask(new Chunk(record - records.size(), records), columns)));
+                records = new ArrayList<String>(chunkRows);
+            }
+        }
+        if (!records.isEmpty()) {
+            pending.put(parsers.submit(parseTask(new Chunk(record - records.size(), records), columns)));
+        }
+    }//end read
+
+    private static String readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null || !openQuote(line)) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        boolean open = true;
+        while (open && (line = reader.readLine()) != null) {
+            record.append('\n').append(line);
+            open ^= openQuote(line);
+        }
+        return record.toString();
+    }
+
+    // whether a line has an odd number of quotes and so leaves a field open
+    private static boolean openQuote(String line) {
+        boolean open = false;
+        for (int i = 0, n = line.length(); i < n; ++i) {
+            if (line.charAt(i) == '"') {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    private Callable<Chunk> parseTask(final Chunk chunk, final int columns) {
+        return new Callable<Chunk>() {
+            public Chunk call() throws IOException {
+                List<Object[]> rows = new ArrayList<Object[]>(chunk.records.size());
+                StringBuilder payload = useCopy ? new StringBuilder(chunk.records.size() * 64) : null;
+                for (int i = 0; i < chunk.records.size(); ++i) {
+                    String[] fields = parse(chunk.records.get(i));
+                    if (fields.length != columns) {
+                        throw new IOException("record " + (chunk.firstRecord + i + 1) + ": expected "
+                                + columns + " fields, found " + fields.length);
+                    }
+                    rows.add(fields);
+                    if (payload != null) {
+                        encode(fields, payload);
+                    }
+                }
+                chunk.rows = rows;
+                chunk.payload = payload == null ? null : payload.toString();
+                return chunk;
+            }
+        };
+    }//end parseTask
+
+    /**
+     * Splits one CSV record into fields. An unquoted empty field is null,
+     * as COPY reads it; a quoted empty field is the empty string.
+     */
+    static String[] parse(String record) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0, n = record.length(); i < n; ++i) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < n && record.charAt(i + 1) == '"') {
+                        field.append('"');
+                        ++i;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+        return fields.toArray(new String[fields.size()]);
+    }//end parse
+
+    // writes the fields back as one CSV line in the form COPY expects
+    private static void encode(String[] fields, StringBuilder out) {
+        for (int i = 0; i < fields.length; ++i) {
+            if (i > 0) {
+                out.append(',');
+            }
+            String field = fields[i];
+            if (field == null) {
+                continue;
+            }
+            if (field.isEmpty() || needsQuotes(field)) {
+                out.append('"').append(field.replace("\"", "\"\"")).append('"');
+            } else {
+                out.append(field);
+            }
+        }
+        out.append('\n');
+    }
+
+    private static boolean needsQuotes(String field) {
+        for (int i = 0, n = field.length(); i < n; ++i) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Reads the type names of the given columns. The batched insert casts
+     * each text value to its column type, so dates and booleans are parsed
+     * by the server exactly as COPY would parse them.
+     */
+    private String[] columnTypes(final String table, final String columns) throws SQLException {
+        return esql.executeTransaction(new Transaction.Work<String[]>() {
+            public String[] run(Transaction tx) throws SQLException {
+                Statement stmt = tx.connection().createStatement();
+                try {
+                    ResultSetMetaData rsmd = stmt.executeQuery("SELECT " + columns + " FROM " + table + " LIMIT 0").getMetaData();
+                    String[] types = new String[rsmd.getColumnCount()];
+                    for (int i = 0; i < types.length; ++i) {
+                        types[i] = rsmd.getColumnTypeName(i + 1);
+                    }
+                    return types;
+                } finally {
+                    stmt.close();
+                }
+            }
+        });
+    }//end columnTypes
+
+    // the entry of DERIVED_COLUMNS a file with these columns needs, or null
+    private static String[] derivedColumn(String table, String[] names) {
+        for (String[] derived : DERIVED_COLUMNS) {
+            if (derived[0].equalsIgnoreCase(table) && !containsIgnoreCase(Arrays.asList(names), derived[1])
+                    && containsIgnoreCase(Arrays.asList(names), derived[3])) {
+                return derived;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Moves the staged rows into the table with the derived column joined
+     * in. A row without a parent keeps a null, so the table's own checks
+     * reject it.
+     */
+    private static String fillStatement(String table, String staged, String[] names, String[] derived) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append('(')
+                .append(String.join(", ", names)).append(", ").append(derived[1]).append(") SELECT ");
+        for (String name : names) {
+            sql.append("l.").append(name).append(", ");
+        }
+        return sql.append("p.").append(derived[1]).append(" FROM ").append(staged).append(" l LEFT JOIN ")
+                .append(derived[2]).append(" p ON p.").append(derived[3]).append(" = l.").append(derived[3])
+                .toString();
+    }
+
+    private static String insertStatement(String table, String columns, String[] types) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append('(').append(columns).append(") VALUES (");
+        for (int i = 0; i < types.length; ++i) {
+            sql.append(i > 0 ? ", " : "").append("CAST(? AS ").append(types[i]).append(')');
+        }
+        return sql.append(')').toString();
+    }
+
+    /*
+     * The bundled pg73jdbc3 driver predates the COPY API, so CopyManager is
+     * looked up at run time and batched inserts are used when it is missing.
+     */
+    private boolean lookupCopyApi() {
+        try {
+            Class<?> manager = Class.forName("org.postgresql.copy.CopyManager");
+            Class<?> base = Class.forName("org.postgresql.core.BaseConnection");
+            copyManager = manager.getConstructor(base);
+            copyIn = manager.getMethod("copyIn", String.class, Reader.class);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void copy(Connection conn, String sql, String payload) throws SQLException {
+        try {
+            Object manager = copyManager.newInstance(conn);
+            copyIn.invoke(manager, sql, new StringReader(payload));
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("COPY failed: " + e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new SQLException("COPY is not available: " + e);
+        }
+    }//end copy
+
+    private static Future<Chunk> completed(final Chunk chunk, final Exception failure) {
+        FutureTask<Chunk> task = new FutureTask<Chunk>(new Callable<Chunk>() {
+            public Chunk call() throws Exception {
+                if (failure != null) {
+                    throw failure;
+                }
+                return chunk;
+            }
+        });
+        task.run();
+        return task;
+    }
+
+    private static void put(BlockingQueue<Future<Chunk>> pending, Future<Chunk> future) {
+        try {
+            pending.put(future);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Chunk take(BlockingQueue<Future<Chunk>> pending) throws IOException {
+        try {
+            return pending.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("load interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    private static boolean containsIgnoreCase(List<String> names, String name) {
+        for (String n : names) {
+            if (n.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println(
+                    "Usage: "
+                    + "java [-classpath <classpath>] "
+                    + CsvLoader.class.getName()
+                    + " <dbname> <port> <user> <data dir> [--restart] [<table> ...]");
+            return;
+        }//end if
+
+        AirlineManagement esql = null;
+        try {
+            DriverSupport.load();
+            esql = new AirlineManagement(args[0], args[1], args[2], "");
+
+            boolean restart = false;
+            List<String> tables = new ArrayList<String>();
+            for (String arg : Arrays.asList(args).subList(4, args.length)) {
+                if (arg.equals("--restart")) {
+                    restart = true;
+                } else {
+                    tables.add(arg);
+                }
+            }
+
+            CsvLoader loader = new CsvLoader(esql, new File(args[3]));
+            System.out.println("Loading with " + (loader.usesCopy() ? "COPY" : "batched inserts") + "\n");
+            long rows = 0;
+            long start = System.currentTimeMillis();
+            for (Result result : loader.load(tables, restart)) {
+                rows += result.rows;
+            }
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println("\ntotal row(s): " + rows + " in " + millis + " ms (" + rows * 1000 / millis + " rows/s)");
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        } finally {
+            if (esql != null) {
+                esql.cleanup();
+            }
+        }
+    }//end main
+
+}//end CsvLoader
@@ -0,0 +1,589 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Generates synthetic airline data in the layout of the CSV files under
+ * data/, at a scale factor of the sample data: 1x is about the size of the
+ * sample and 10000x is tens of millions of reservations. The data is
+ * referentially consistent: every flight flies a generated plane, flight
+ * instances fall on the days of their flight's schedule, reservations point
+ * at generated customers and instances, and SeatsSold equals the seated
+ * reservations of each instance, with the overflow waitlisted.
+ *
+ * Output depends only on the scale and the seed. Every row is drawn from a
+ * random stream seeded by the seed, the table and the row's position, so
+ * rows can be generated by any number of threads in any order and still
+ * come out the same. Rows are generated in blocks by a pool of threads and
+ * written in order, either to CSV files or straight into the database
+ * through CsvLoader.
+ *
+ */
+public class DataGenerator {
+
+    /**
+     * The generated tables, in foreign key order. Users is not generated.
+     */
+    public enum Table {
+        PLANE("Plane", "PlaneID,Make,Model,Year,LastRepairDate"),
+        FLIGHT("Flight", "FlightNumber,PlaneID,DepartureCity,ArrivalCity"),
+        SCHEDULE("Schedule", "ScheduleID,FlightNumber,DayOfWeek,DepartureTime,ArrivalTime"),
+        FLIGHT_INSTANCE("FlightInstance",
+                "FlightInstanceID,FlightNumber,FlightDate,DepartedOnTime,ArrivedOnTime,SeatsTotal,SeatsSold,NumOfStops,TicketCost"),
+        CUSTOMER("Customer", "CustomerID,FirstName,LastName,Gender,DOB,Address,Phone,Zip"),
+        RESERVATION("Reservation", "ReservationID,CustomerID,FlightInstanceID,Status"),
+        TECHNICIAN("Technician", "TechnicianID,Name"),
+        REPAIR("Repair", "RepairID,PlaneID,RepairCode,RepairDate,TechnicianID"),
+        PILOT("Pilot", "PilotID,Name"),
+        MAINTENANCE_REQUEST("MaintenanceRequest", "RequestID,PlaneID,RepairCode,RequestDate,PilotID");
+
+        public final String tableName;
+        final String header;
+
+        Table(String tableName, String header) {
+            this.tableName = tableName;
+            this.header = header;
+        }
+    }//end Table
+
+    // row counts of the sample data, the 1x scale
+    static final int BASE_PLANES = 5;
+    static final int BASE_FLIGHTS = 10;
+    static final int BASE_CUSTOMERS = 500;
+    static final int BASE_TECHNICIANS = 10;
+    static final int BASE_PILOTS = 10;
+    static final int BASE_REPAIRS = 15;
+    static final int BASE_REQUESTS = 20;
+
+    // flight instances cover four weeks; the first two have already flown
+    static final int DAYS = 28;
+    static final int FLOWN_DAYS = 14;
+    static final LocalDate FIRST_DAY = LocalDate.of(2025, 5, 5);
+    static final LocalDate FIRST_REPAIR_DAY = LocalDate.of(2025, 4, 1);
+
+    // seats per flight instance; demand runs from 60% to 130% of it, which
+    // gives the sample's dozen reservations per instance and some waitlists
+    static final int SEATS = Integer.getInteger("airline.gen.seats", 13);
+    static final int THREADS = Integer.getInteger("airline.gen.threads", Runtime.getRuntime().availableProcessors());
+    static final int BLOCK_UNITS = Integer.getInteger("airline.gen.blockUnits", 1000);
+
+    private static final String[] FIRST_NAMES = {
+        "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+        "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Carlos", "Karen",
+        "Daniel", "Lisa", "Matthew", "Nancy", "Anthony", "Sandra", "Mark", "Ashley", "Steven", "Monica"
+    };
+    private static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+        "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+        "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Hawkins"
+    };
+    private static final String[] STREETS = {
+        "Main Street", "Oak Avenue", "Pine Road", "Maple Drive", "Cedar Lane", "Elm Street", "Lake View",
+        "Hill Crest", "Park Place", "River Road", "Sunset Boulevard", "Lewis Parks", "Rice Plaza", "Cabrera Trace"
+    };
+    private static final String[] TOWNS = {
+        "Springfield", "Riverside", "Franklin", "Greenville", "Bristol", "Clinton", "Fairview", "Salem",
+        "Madison", "Georgetown", "Arlington", "Ashland", "Dover", "Milton", "Newport"
+    };
+    private static final String[] STATES = {
+        "CA", "TX", "FL", "NY", "PA", "IL", "OH", "GA", "NC", "MI", "NJ", "VA", "WA", "AZ", "MA", "KS", "NE", "NH"
+    };
+    private static final String[] CITIES = {
+        "New York", "Los Angeles", "Chicago", "Houston", "Phoenix", "Philadelphia", "San Antonio", "San Diego",
+        "Dallas", "San Jose", "Austin", "Seattle", "Denver", "Boston", "Miami", "Atlanta", "Las Vegas",
+        "Portland", "San Francisco", "Orlando"
+    };
+    private static final String[][] MODELS = {
+        {"Boeing", "737"}, {"Boeing", "757"}, {"Boeing", "787"}, {"Airbus", "A320"}, {"Airbus", "A321"},
+        {"Airbus", "A350"}, {"Embraer", "E175"}, {"Embraer", "E195"}, {"Bombardier", "CRJ900"}
+    };
+    private static final String[] WEEKDAYS = {
+        "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday"
+    };
+    private static final String[] REPAIR_CODES = {"RC001", "RC002", "RC003", "RC004", "RC005"};
+
+    private final double scale;
+    private final long seed;
+    private final int planes;
+    private final int flights;
+    private final int customers;
+    private final int technicians;
+    private final int pilots;
+    private final int repairs;
+    private final int requests;
+    private final int threads;
+    // the dates of the instance window and of the repair month, formatted once
+    private final String[] flightDates = new String[DAYS];
+    private final String[] repairDates = new String[30];
+    // most reservations one instance can have, which spaces out their ids
+    private final int maxDemand = SEATS * 13 / 10 + 1;
+
+    public DataGenerator(double scale, long seed) {
+        this(scale, seed, THREADS);
+    }
+
+    public DataGenerator(double scale, long seed, int threads) {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("scale must be positive: " + scale);
+        }
+        this.scale = scale;
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+        this.planes = scaled(BASE_PLANES);
+        this.flights = scaled(BASE_FLIGHTS);
+        this.customers = scaled(BASE_CUSTOMERS);
+        this.technicians = scaled(BASE_TECHNICIANS);
+        this.pilots = scaled(BASE_PILOTS);
+        this.repairs = scaled(BASE_REPAIRS);
+        this.requests = scaled(BASE_REQUESTS);
+        for (int d = 0; d < DAYS; ++d) {
+            flightDates[d] = FIRST_DAY.plusDays(d).toString();
+        }
+        for (int d = 0; d < repairDates.length; ++d) {
+            repairDates[d] = FIRST_REPAIR_DAY.plusDays(d).toString();
+        }
+    }//end DataGenerator
+
+    /**
+     * @return a name for the generated data, used as the load checkpoint
+     * source
+     */
+    public String source() {
+        return "generated-x" + scale + "-seed" + seed;
+    }
+
+    /**
+     * Writes one CSV file per table into a directory, in the layout
+     * CsvLoader and load_data.sql read.
+     *
+     * @throws java.io.IOException when a file cannot be written
+     */
+    public void writeCsv(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, daemonThreads());
+        try {
+            for (Table table : Table.values()) {
+                long start = System.currentTimeMillis();
+                Writer out = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(new File(dir, table.tableName + ".csv")), StandardCharsets.UTF_8), 1 << 20);
+                long rows;
+                try {
+                    rows = write(table, out, pool);
+                } finally {
+                    out.close();
+                }
+                System.out.println(table.tableName + ": " + rows + " row(s) in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }//end writeCsv
+
+    /**
+     * Streams every table straight into the database, without files in
+     * between. A load that stops part way resumes on the next run with the
+     * same scale and seed, because the generator produces the same rows.
+     *
+     * @throws java.sql.SQLException when rows cannot be written
+     * @throws java.io.IOException when generating fails
+     */
+    public void load(CsvLoader loader, boolean restart) throws java.sql.SQLException, IOException {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, daemonThreads());
+        loader.open(restart);
+        try {
+            for (final Table table : Table.values()) {
+                final PipedWriter pipe = new PipedWriter();
+                PipedReader in = new PipedReader(pipe, 1 << 20);
+                final IOException[] failure = new IOException[1];
+                Thread producer = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            write(table, pipe, pool);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        } finally {
+                            try {
+                                pipe.close();
+                            } catch (IOException e) {
+                                // the loader already stopped reading
+                            }
+                        }
+                    }
+                }, "generator-" + table.tableName);
+                producer.setDaemon(true);
+                producer.start();
+                try {
+                    System.out.println(loader.load(table.tableName, source(), in));
+                } finally {
+                    in.close();
+                    joinQuietly(producer);
+                }
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            loader.close();
+        }
+    }//end load
+
+    /**
+     * Writes the header and every row of a table. Blocks of rows are
+     * generated in parallel on the pool and written in order.
+     *
+     * @return the number of rows written
+     * @throws java.io.IOException when writing fails
+     */
+    public long write(final Table table, Writer out, ExecutorService pool) throws IOException {
+        out.write(table.header);
+        out.write('\n');
+        final long units = units(table);
+        long blocks = (units + BLOCK_UNITS - 1) / BLOCK_UNITS;
+        // bounded so generation stays a few blocks ahead of the writer
+        BlockingQueue<Future<StringBuilder>> pending = new ArrayBlockingQueue<Future<StringBuilder>>(threads * 2);
+        long rows = 0;
+        long submitted = 0;
+        long written = 0;
+        try {
+            while (written < blocks) {
+                while (submitted < blocks && pending.remainingCapacity() > 0) {
+                    final long first = submitted * BLOCK_UNITS;
+                    final long last = Math.min(units, first + BLOCK_UNITS);
+                    pending.add(pool.submit(new Callable<StringBuilder>() {
+                        public StringBuilder call() {
+                            StringBuilder block = new StringBuilder((int) (last - first) * 48);
+                            for (long unit = first; unit < last; ++unit) {
+                                emit(table, unit, block);
+                            }
+                            return block;
+                        }
+                    }));
+                    ++submitted;
+                }
+                StringBuilder block = pending.take().get();
+                rows += countLines(block);
+                out.append(block);
+                ++written;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("generation interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            for (Future<StringBuilder> f : pending) {
+                f.cancel(true);
+            }
+        }
+        out.flush();
+        return rows;
+    }//end write
+
+    /*
+     * The number of generation units of a table. Most tables emit one row
+     * per unit; Schedule emits the days of one flight per unit, and
+     * FlightInstance and Reservation use one unit per flight and day, which
+     * emits nothing on days the flight does not fly.
+     */
+    long units(Table table) {
+        switch (table) {
+            case PLANE:
+                return planes;
+            case FLIGHT:
+            case SCHEDULE:
+                return flights;
+            case FLIGHT_INSTANCE:
+            case RESERVATION:
+                return (long) flights * DAYS;
+            case CUSTOMER:
+                return customers;
+            case TECHNICIAN:
+                return technicians;
+            case REPAIR:
+                return repairs;
+            case PILOT:
+                return pilots;
+            default:
+                return requests;
+        }
+    }//end units
+
+    void emit(Table table, long unit, StringBuilder out) {
+        switch (table) {
+            case PLANE:
+                plane((int) unit, out);
+                break;
+            case FLIGHT:
+                flight((int) unit, out);
+                break;
+            case SCHEDULE:
+                schedule((int) unit, out);
+                break;
+            case FLIGHT_INSTANCE:
+                flightInstance(unit, out);
+                break;
+            case CUSTOMER:
+                customer((int) unit, out);
+                break;
+            case RESERVATION:
+                reservations(unit, out);
+                break;
+            case TECHNICIAN:
+                person('T', (int) unit, out);
+                break;
+            case REPAIR:
+                repair((int) unit, out);
+                break;
+            case PILOT:
+                person('P', (int) unit, out);
+                break;
+            default:
+                maintenanceRequest((int) unit, out);
+                break;
+        }
+    }//end emit
+
+    private void plane(int i, StringBuilder out) {
+        SplittableRandom rng = rng(Table.PLANE, i);
+        String[] model = pick(rng, MODELS);
+        id(out, "PL", i + 1, 3).append(',').append(model[0]).append(',').append(model[1]).append(',')
+                .append(2000 + rng.nextInt(23)).append(',').append(pick(rng, repairDates)).append('\n');
+    }
+
+    private void flight(int i, StringBuilder out) {
+        SplittableRandom rng = rng(Table.FLIGHT, i);
+        int from = rng.nextInt(CITIES.length);
+        int to = (from + 1 + rng.nextInt(CITIES.length - 1)) % CITIES.length;
+        out.append('F').append(100 + i).append(',');
+        id(out, "PL", rng.nextInt(planes) + 1, 3).append(',')
+                .append(CITIES[from]).append(',').append(CITIES[to]).append('\n');
+    }
+
+    private void schedule(int flight, StringBuilder out) {
+        int days = scheduleDays(flight);
+        SplittableRandom rng = rng(Table.SCHEDULE, flight);
+        for (int day = 0; day < 7; ++day) {
+            int departure = 6 + rng.nextInt(15);
+            int duration = 1 + rng.nextInt(5);
+            if ((days & (1 << day)) == 0) {
+                continue;
+            }
+            // a fixed id per flight and weekday, so ids do not depend on order
+            out.append((long) flight * 7 + day + 1).append(',').append('F').append(100 + flight).append(',')
+                    .append(WEEKDAYS[day]).append(',')
+                    .append(departure).append(":00,").append((departure + duration) % 24).append(":00\n");
+        }
+    }
+
+    private void flightInstance(long slot, StringBuilder out) {
+        int flight = (int) (slot / DAYS);
+        int day = (int) (slot % DAYS);
+        if (!flies(flight, day)) {
+            return;
+        }
+        SplittableRandom rng = rng(Table.FLIGHT_INSTANCE, slot);
+        int demand = demand(rng);
+        out.append(slot + 1).append(',').append('F').append(100 + flight).append(',').append(flightDates[day]).append(',')
+                .append(rng.nextInt(5) == 0 ? 0 : 1).append(',').append(rng.nextInt(5) == 0 ? 0 : 1).append(',')
+                .append(SEATS).append(',').append(Math.min(demand, SEATS)).append(',')
+                .append(rng.nextInt(3)).append(',');
+        cents(out, 15000 + rng.nextInt(45000)).append('\n');
+    }
+
+    private void reservations(long slot, StringBuilder out) {
+        int flight = (int) (slot / DAYS);
+        int day = (int) (slot % DAYS);
+        if (!flies(flight, day)) {
+            return;
+        }
+        // the same draw the instance made, so SeatsSold matches
+        int demand = demand(rng(Table.FLIGHT_INSTANCE, slot));
+        SplittableRandom rng = rng(Table.RESERVATION, slot);
+        String seated = day < FLOWN_DAYS ? "flown" : "reserved";
+        for (int j = 0; j < demand; ++j) {
+            id(out, "R", slot * maxDemand + j + 1, 4).append(',')
+                    .append(rng.nextInt(customers) + 1).append(',')
+                    .append(slot + 1).append(',')
+                    .append(j < SEATS ? seated : "waitlist").append('\n');
+        }
+    }
+
+    private void customer(int i, StringBuilder out) {
+        SplittableRandom rng = rng(Table.CUSTOMER, i);
+        out.append(i + 1).append(',').append(pick(rng, FIRST_NAMES)).append(',').append(pick(rng, LAST_NAMES)).append(',')
+                .append(rng.nextBoolean() ? 'F' : 'M').append(',')
+                .append(LocalDate.of(1950, 1, 1).plusDays(rng.nextInt(20000))).append(',')
+                .append('"').append(1 + rng.nextInt(9999)).append(' ').append(pick(rng, STREETS)).append(", ")
+                .append(pick(rng, TOWNS)).append(", ").append(pick(rng, STATES)).append(' ');
+        digits(out, rng.nextInt(100000), 5).append("\",");
+        out.append(200 + rng.nextInt(800)).append('-');
+        digits(out, rng.nextInt(1000), 3).append('-');
+        digits(out, rng.nextInt(10000), 4).append(',');
+        digits(out, rng.nextInt(100000), 5).append('\n');
+    }
+
+    private void person(char prefix, int i, StringBuilder out) {
+        SplittableRandom rng = rng(prefix == 'T' ? Table.TECHNICIAN : Table.PILOT, i);
+        id(out, String.valueOf(prefix), i + 1, 3).append(',')
+                .append(pick(rng, FIRST_NAMES)).append(' ').append(pick(rng, LAST_NAMES)).append('\n');
+    }
+
+    private void repair(int i, StringBuilder out) {
+        SplittableRandom rng = rng(Table.REPAIR, i);
+        out.append(i + 1).append(',');
+        id(out, "PL", rng.nextInt(planes) + 1, 3).append(',').append(pick(rng, REPAIR_CODES)).append(',')
+                .append(pick(rng, repairDates)).append(',');
+        id(out, "T", rng.nextInt(technicians) + 1, 3).append('\n');
+    }
+
+    private void maintenanceRequest(int i, StringBuilder out) {
+        SplittableRandom rng = rng(Table.MAINTENANCE_REQUEST, i);
+        out.append(i + 1).append(',');
+        id(out, "PL", rng.nextInt(planes) + 1, 3).append(',').append(pick(rng, REPAIR_CODES)).append(',')
+                .append(pick(rng, repairDates)).append(',');
+        id(out, "P", rng.nextInt(pilots) + 1, 3).append('\n');
+    }
+
+    // the weekdays a flight flies, Monday in bit 0; five to seven days
+    private int scheduleDays(int flight) {
+        SplittableRandom rng = rng(Table.FLIGHT, flight + 0x5ced_0000_0000L);
+        int days = 0x7f;
+        for (int dropped = rng.nextInt(3); dropped > 0; --dropped) {
+            days &= ~(1 << rng.nextInt(7));
+        }
+        return days;
+    }
+
+    private boolean flies(int flight, int day) {
+        // FIRST_DAY is a Monday, so day d of the window is weekday d % 7
+        return (scheduleDays(flight) & (1 << (day % 7))) != 0;
+    }
+
+    private static int demand(SplittableRandom instanceRng) {
+        return SEATS * 6 / 10 + instanceRng.nextInt(SEATS * 13 / 10 - SEATS * 6 / 10 + 1);
+    }
+
+    /*
+     * The random stream of one unit of a table: the seed, the table and the
+     * unit are mixed so neighbouring units get unrelated streams.
+     */
+    private SplittableRandom rng(Table table, long unit) {
+        return new SplittableRandom(mix(mix(seed + table.ordinal() * 0x9E3779B97F4A7C15L) + unit));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private int scaled(int base) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(base * scale)));
+    }
+
+    private static <T> T pick(SplittableRandom rng, T[] values) {
+        return values[rng.nextInt(values.length)];
+    }
+
+    // appends prefix + number zero padded to width, as in PL001 or R0001
+    private static StringBuilder id(StringBuilder out, String prefix, long number, int width) {
+        return digits(out.append(prefix), number, width);
+    }
+
+    private static StringBuilder digits(StringBuilder out, long number, int width) {
+        for (long limit = 10, w = 1; w < width; limit *= 10, ++w) {
+            if (number < limit) {
+                out.append('0');
+            }
+        }
+        return out.append(number);
+    }
+
+    private static StringBuilder cents(StringBuilder out, int cents) {
+        out.append(cents / 100).append('.');
+        return digits(out, cents % 100, 2);
+    }
+
+    private static long countLines(StringBuilder block) {
+        long lines = 0;
+        for (int i = 0, n = block.length(); i < n; ++i) {
+            if (block.charAt(i) == '\n') {
+                ++lines;
+            }
+        }
+        return lines;
+    }
+
+    private static void joinQuietly(Thread t) {
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "generator-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3 && args.length != 6 && args.length != 7) {
+            System.err.println(
+                    "Usage: "
+                    + "java [-classpath <classpath>] "
+                    + DataGenerator.class.getName()
+                    + " <scale> <seed> <output dir>\n"
+                    + "   or: java [-classpath <classpath>] "
+                    + DataGenerator.class.getName()
+                    + " <scale> <seed> --db <dbname> <port> <user> [--restart]");
+            return;
+        }//end if
+
+        DataGenerator generator = new DataGenerator(Double.parseDouble(args[0]), Long.parseLong(args[1]));
+        AirlineManagement esql = null;
+        try {
+            if (!args[2].equals("--db")) {
+                generator.writeCsv(new File(args[2]));
+                return;
+            }
+            DriverSupport.load();
+            esql = new AirlineManagement(args[3], args[4], args[5], "");
+            generator.load(new CsvLoader(esql, null), args.length == 7 && args[6].equals("--restart"));
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        } finally {
+            if (esql != null) {
+                esql.cleanup();
+            }
+        }
+    }//end main
+
+}//end DataGenerator
@@ -0,0 +1,62 @@
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+
+/**
+ * Parses the dates operators type into the menus. The menus ask for M/D/YY
+ * or YYYY-MM-DD and both are accepted everywhere, as is M/D/YYYY. Dates are
+ * bound to statements as java.sql.Date, so the server compares typed dates
+ * and never depends on its DateStyle to read a string.
+ *
+ * The formatters are built once; they are immutable and thread safe. A two
+ * digit year is read as 20YY.
+ *
+ */
+public class DateInput {
+
+    private static final DateTimeFormatter ISO = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final DateTimeFormatter SHORT_YEAR =
+            DateTimeFormatter.ofPattern("M/d/uu").withResolverStyle(ResolverStyle.STRICT);
+    private static final DateTimeFormatter LONG_YEAR =
+            DateTimeFormatter.ofPattern("M/d/uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+    private DateInput() {
+    }
+
+    /**
+     * @param text a date as M/D/YY, M/D/YYYY or YYYY-MM-DD
+     * @return the date
+     * @throws java.time.format.DateTimeParseException when the text is not a
+     * valid date in any of the formats
+     */
+    public static LocalDate parseLocal(String text) {
+        String date = text == null ? "" : text.trim();
+        DateTimeFormatter formatter;
+        if (date.indexOf('-') >= 0) {
+            formatter = ISO;
+        } else if (date.length() - date.lastIndexOf('/') - 1 <= 2) {
+            formatter = SHORT_YEAR;
+        } else {
+            formatter = LONG_YEAR;
+        }
+        try {
+            return LocalDate.parse(date, formatter);
+        } catch (DateTimeParseException e) {
+            throw new DateTimeParseException("INVALID DATE: " + date + ". PLEASE GIVE A DATE AS M/D/YY OR YYYY-MM-DD",
+                    date, e.getErrorIndex(), e);
+        }
+    }//end parseLocal
+
+    /**
+     * @param text a date as M/D/YY, M/D/YYYY or YYYY-MM-DD
+     * @return the date, to be bound as a statement parameter
+     * @throws java.time.format.DateTimeParseException when the text is not a
+     * valid date in any of the formats
+     */
+    public static Date parse(String text) {
+        return Date.valueOf(parseLocal(text));
+    }
+
+}//end DateInput
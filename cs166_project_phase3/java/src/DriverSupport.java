@@ -0,0 +1,98 @@
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Loads the PostgreSQL JDBC driver and builds the connection URL for it.
+ * The application runs on a current pgJDBC, which java/pom.xml builds
+ * against, or on the bundled pg73jdbc3.jar. A current driver is asked for
+ * the protocol features the old one lacks:
+ *
+ *   binaryTransfer         numbers and dates travel in binary
+ *                          (airline.jdbc.binaryTransfer)
+ *   prepareThreshold       a statement is prepared on the server once it has
+ *                          run this many times (airline.jdbc.prepareThreshold)
+ *   reWriteBatchedInserts  a batch of single-row INSERTs is sent as
+ *                          multi-row INSERTs (airline.jdbc.reWriteBatchedInserts)
+ *
+ * Further options for a current driver can be given as
+ * airline.jdbc.options=name=value&name=value. Driver APIs beyond JDBC, such as
+ * COPY, are looked up by the code that uses them (see CsvLoader), so the old
+ * jar keeps working without them.
+ *
+ */
+public class DriverSupport {
+
+    static final String DRIVER = "org.postgresql.Driver";
+    // the first pgJDBC release line with every feature above
+    static final int CURRENT_MAJOR_VERSION = 42;
+
+    static final int PREPARE_THRESHOLD = Integer.getInteger("airline.jdbc.prepareThreshold", 1);
+    static final boolean BINARY_TRANSFER =
+            Boolean.parseBoolean(System.getProperty("airline.jdbc.binaryTransfer", "true"));
+    static final boolean REWRITE_BATCHED_INSERTS =
+            Boolean.parseBoolean(System.getProperty("airline.jdbc.reWriteBatchedInserts", "true"));
+    static final String OPTIONS = System.getProperty("airline.jdbc.options", "");
+
+    private static Driver driver = null;
+
+    private DriverSupport() {
+    }
+
+    /**
+     * Loads the driver found on the classpath.
+     *
+     * @return the registered driver
+     * @throws java.sql.SQLException when no PostgreSQL driver is on the
+     * classpath
+     */
+    public static synchronized Driver load() throws SQLException {
+        if (driver == null) {
+            try {
+                // the old driver registers itself only when its class is loaded
+                Class.forName(DRIVER);
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("No PostgreSQL JDBC driver on the classpath (" + DRIVER + ")");
+            }
+            driver = DriverManager.getDriver("jdbc:postgresql://localhost/");
+        }
+        return driver;
+    }//end load
+
+    /**
+     * @return whether the driver is a current pgJDBC rather than the
+     * bundled 7.3 driver
+     */
+    public static boolean current() throws SQLException {
+        return load().getMajorVersion() >= CURRENT_MAJOR_VERSION;
+    }
+
+    /**
+     * @return the connection URL of a database on this machine, with the
+     * protocol options the loaded driver supports
+     */
+    public static String url(String dbport, String dbname) throws SQLException {
+        String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+        if (!current()) {
+            return url;
+        }
+        StringBuilder options = new StringBuilder(url)
+                .append("?prepareThreshold=").append(PREPARE_THRESHOLD)
+                .append("&binaryTransfer=").append(BINARY_TRANSFER)
+                .append("&reWriteBatchedInserts=").append(REWRITE_BATCHED_INSERTS);
+        if (!OPTIONS.isEmpty()) {
+            options.append('&').append(OPTIONS);
+        }
+        return options.toString();
+    }//end url
+
+    /**
+     * @return the driver version, for the connection message
+     */
+    public static String describe() throws SQLException {
+        Driver d = load();
+        return "PostgreSQL JDBC " + d.getMajorVersion() + "." + d.getMinorVersion()
+                + (current() ? "" : " (legacy: no binary transfer, server-side prepare or batch rewriting)");
+    }
+
+}//end DriverSupport
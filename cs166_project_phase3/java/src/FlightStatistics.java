@@ -0,0 +1,144 @@
+import java.sql.Date;
+import java.sql.SQLException;
+
+/**
+ * Flight statistics computed by the database. Every report is one query
+ * that sums, counts and averages FlightInstance rows on the server and sends
+ * back only the aggregated rows, so a year of fleet data costs one round
+ * trip and a few rows of transfer.
+ *
+ */
+public class FlightStatistics {
+
+    /**
+     * What a rollup groups by besides the period.
+     */
+    public enum Scope { ALL, FLIGHT, ROUTE, PLANE }
+
+    /**
+     * The length of the period a rollup groups by.
+     */
+    public enum Grain { DAY, WEEK, MONTH }
+
+    private static final String MEASURES =
+            "COUNT(*) AS Flights, "
+            + "COALESCE(SUM(I.SeatsTotal), 0) AS SeatsTotal, "
+            + "COALESCE(SUM(I.SeatsSold), 0) AS SeatsSold, "
+            + "COALESCE(SUM(I.SeatsTotal - I.SeatsSold), 0) AS SeatsOpen, "
+            + "ROUND(AVG(I.SeatsSold), 2) AS AvgSold, "
+            + "ROUND(100.0 * SUM(I.SeatsSold) / NULLIF(SUM(I.SeatsTotal), 0), 2) AS LoadFactor";
+
+    // one daily row per date plus a grand total row, which sorts last
+    static final String FLIGHT_STATS_QUERY =
+            "SELECT I.FlightDate, " + MEASURES
+            + " FROM FlightInstance I"
+            + " WHERE I.FlightNumber = ? AND I.FlightDate >= ? AND I.FlightDate <= ?"
+            + " GROUP BY GROUPING SETS ((I.FlightDate), ())"
+            + " ORDER BY GROUPING(I.FlightDate), I.FlightDate";
+
+    // the SQL text of each rollup, built once so the statement cache sees a
+    // stable key per report shape
+    private static final String[][] ROLLUP_QUERIES = new String[Scope.values().length][Grain.values().length];
+
+    static {
+        for (Scope scope : Scope.values()) {
+            for (Grain grain : Grain.values()) {
+                ROLLUP_QUERIES[scope.ordinal()][grain.ordinal()] = buildRollup(scope, grain);
+            }
+        }
+    }
+
+    private FlightStatistics() {
+    }
+
+    /**
+     * Statistics of one flight over a date range: a row per flight date with
+     * the seat totals and load factor, followed by a grand total row whose
+     * FlightDate is null. The total row is present even when no instance
+     * matched.
+     *
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public static QueryResult flightStats(AirlineManagement esql, String flightNum, Date startDate, Date endDate)
+            throws SQLException {
+        return esql.executeQueryForResult(FLIGHT_STATS_QUERY, flightNum, startDate, endDate);
+    }
+
+    /**
+     * @return the SQL of a rollup; its parameters are the start date and the
+     * end date of the range
+     */
+    public static String rollupQuery(Scope scope, Grain grain) {
+        return ROLLUP_QUERIES[scope.ordinal()][grain.ordinal()];
+    }
+
+    /**
+     * Runs a rollup over a date range and returns the aggregated rows.
+     *
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public static QueryResult rollup(AirlineManagement esql, Scope scope, Grain grain, Date startDate, Date endDate)
+            throws SQLException {
+        return esql.executeQueryForResult(rollupQuery(scope, grain), startDate, endDate);
+    }
+
+    /**
+     * Runs a rollup and streams it to standard out.
+     *
+     * @return the number of rows printed
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public static int printRollup(AirlineManagement esql, Scope scope, Grain grain, Date startDate, Date endDate)
+            throws SQLException {
+        return esql.executeQueryAndPrintResult(rollupQuery(scope, grain), startDate, endDate);
+    }
+
+    private static String buildRollup(Scope scope, Grain grain) {
+        String period;
+        switch (grain) {
+            case WEEK:
+                period = "CAST(date_trunc('week', I.FlightDate) AS DATE)";
+                break;
+            case MONTH:
+                period = "CAST(date_trunc('month', I.FlightDate) AS DATE)";
+                break;
+            default:
+                period = "I.FlightDate";
+                break;
+        }
+
+        String keys;
+        switch (scope) {
+            case FLIGHT:
+                keys = "I.FlightNumber";
+                break;
+            case ROUTE:
+                keys = "F.DepartureCity, F.ArrivalCity";
+                break;
+            case PLANE:
+                keys = "F.PlaneID";
+                break;
+            default:
+                keys = null;
+                break;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (keys != null) {
+            sql.append(keys).append(", ");
+        }
+        sql.append(period).append(" AS Period, ").append(MEASURES);
+        sql.append(" FROM FlightInstance I");
+        if (scope == Scope.ROUTE || scope == Scope.PLANE) {
+            sql.append(" JOIN Flight F ON F.FlightNumber = I.FlightNumber");
+        }
+        sql.append(" WHERE I.FlightDate >= ? AND I.FlightDate <= ?");
+        // the period is grouped by its position, the select item after the keys
+        int periodPosition = keys == null ? 1 : keys.split(",").length + 1;
+        String groups = keys == null ? String.valueOf(periodPosition) : keys + ", " + periodPosition;
+        sql.append(" GROUP BY ").append(groups);
+        sql.append(" ORDER BY ").append(groups);
+        return sql.toString();
+    }//end buildRollup
+
+}//end FlightStatistics
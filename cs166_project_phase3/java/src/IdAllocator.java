@@ -0,0 +1,139 @@
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out primary keys from Postgres sequences. The id sequences are
+ * created with INCREMENT BY a block size (see create_tables.sql), so one
+ * nextval reserves a whole block of ids for this JVM. Ids inside a block are
+ * handed out with an atomic increment and no database call; only the thread
+ * that exhausts a block goes back to the sequence. Inserts therefore cost
+ * the same however large the tables grow, and separate processes never
+ * collide because each owns the blocks it drew.
+ *
+ * Ids left in a block when the process exits are skipped, so keys can have
+ * gaps.
+ *
+ */
+public class IdAllocator {
+
+    public static final String RESERVATION_SEQUENCE = "reservation_id_seq";
+    public static final String USERS_SEQUENCE = "users_id_seq";
+    public static final String MAINTENANCE_REQUEST_SEQUENCE = "maintenance_request_id_seq";
+
+    // reads the block size the sequence was created with
+    static final String INCREMENT_QUERY =
+            "SELECT increment_by FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = ?";
+
+    static final String NEXTVAL_QUERY = "SELECT nextval(CAST(? AS regclass))";
+
+    /*
+     * A range of ids [next, end) drawn from a sequence.
+     */
+    private static class Block {
+        final AtomicLong next;
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    /*
+     * The current block of one sequence. Refills are serialized on the
+     * sequence; taking an id from a live block never locks.
+     */
+    private class Sequence {
+        final String name;
+        long increment = 0;
+        volatile Block block = null;
+
+        Sequence(String name) {
+            this.name = name;
+        }
+
+        long next() throws SQLException {
+            while (true) {
+                Block current = block;
+                if (current != null) {
+                    long id = current.next.getAndIncrement();
+                    if (id < current.end) {
+                        return id;
+                    }
+                }
+                refill(current);
+            }
+        }
+
+        private synchronized void refill(Block exhausted) throws SQLException {
+            if (block != exhausted) {
+                // another thread refilled while this one waited
+                return;
+            }
+            if (increment == 0) {
+                increment = readIncrement(name);
+            }
+            QueryResult result = esql.executeQueryForResult(NEXTVAL_QUERY, name);
+            long start = result.getLong(0, 0);
+            block = new Block(start, start + increment);
+        }
+    }//end Sequence
+
+    private final AirlineManagement esql;
+    private final ConcurrentHashMap<String, Sequence> sequences = new ConcurrentHashMap<String, Sequence>();
+
+    public IdAllocator(AirlineManagement esql) {
+        this.esql = esql;
+    }
+
+    /**
+     * @param sequence the name of the id sequence
+     * @return the next unused id of the sequence
+     * @throws java.sql.SQLException when a new block cannot be drawn
+     */
+    public long next(String sequence) throws SQLException {
+        Sequence seq = sequences.get(sequence);
+        if (seq == null) {
+            Sequence created = new Sequence(sequence);
+            seq = sequences.putIfAbsent(sequence, created);
+            if (seq == null) {
+                seq = created;
+            }
+        }
+        return seq.next();
+    }//end next
+
+    /**
+     * @return the next reservation id in the R0001 format used by the data
+     */
+    public String nextReservationId() throws SQLException {
+        return String.format("R%04d", next(RESERVATION_SEQUENCE));
+    }
+
+    public int nextUserId() throws SQLException {
+        return (int) next(USERS_SEQUENCE);
+    }
+
+    public int nextMaintenanceRequestId() throws SQLException {
+        return (int) next(MAINTENANCE_REQUEST_SEQUENCE);
+    }
+
+    /*
+     * Reads the INCREMENT BY of a sequence. If the catalog cannot be read the
+     * block size is assumed to be 1: that wastes nothing and can never hand
+     * out an id twice.
+     */
+    private long readIncrement(String sequence) {
+        try {
+            QueryResult result = esql.executeQueryForResult(INCREMENT_QUERY, sequence);
+            if (result.rowCount() > 0 && result.getLong(0, 0) > 0) {
+                return result.getLong(0, 0);
+            }
+        } catch (SQLException e) {
+            // older servers have no pg_sequences view
+        }
+        return 1;
+    }//end readIncrement
+
+}//end IdAllocator
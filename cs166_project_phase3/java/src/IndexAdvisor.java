@@ -0,0 +1,623 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Proposes indexes for the statements the menu handlers issue and checks
+ * that they pay off before recommending them.
+ *
+ * The advisor replays each read statement of the workload below with
+ * parameters sampled from the database under EXPLAIN (ANALYZE, BUFFERS).
+ * Every scan that reads a whole table, or that filters rows after an index
+ * lookup, yields a candidate index on the columns it compares: equality
+ * columns first, then one range column. Statements recorded by
+ * pg_stat_statements, when the extension is installed, are planned with
+ * EXPLAIN (GENERIC_PLAN) and add their candidates too.
+ *
+ * The candidates are then created and the workload is replayed again. A
+ * candidate is accepted when a statement that proposed it now uses it and
+ * got at least airline.advisor.minGain faster. Rejected candidates are
+ * dropped; accepted ones are dropped as well unless --apply is given. The
+ * index script is written out again with the accepted indexes appended.
+ *
+ */
+public class IndexAdvisor {
+
+    static final int SAMPLES = Integer.getInteger("airline.advisor.samples", 20);
+    static final int ROUNDS = Integer.getInteger("airline.advisor.rounds", 3);
+    static final double MIN_GAIN = Double.parseDouble(System.getProperty("airline.advisor.minGain", "0.1"));
+    // pg_stat_statements entries planned in addition to the workload
+    static final int OBSERVED = 20;
+
+    /**
+     * One statement of the workload and a query returning parameter rows
+     * for it, column by column in placeholder order.
+     */
+    static final class Shape {
+        final String name;
+        final String sql;
+        final String sample;
+
+        Shape(String name, String sql, String sample) {
+            this.name = name;
+            this.sql = sql;
+            this.sample = sample;
+        }
+    }
+
+    // the read statements of the handlers
+    static final Shape[] WORKLOAD = {
+        new Shape("LogIn",
+                Authenticator.LOOKUP_QUERY,
+                "SELECT UserName FROM Users ORDER BY UserID"),
+        new Shape("FlightSeats",
+                AirlineManagement.FLIGHT_SEATS_QUERY,
+                "SELECT FlightNumber, FlightDate FROM FlightInstance ORDER BY md5(CAST(FlightInstanceID AS TEXT))"),
+        new Shape("FlightStatus",
+                AirlineManagement.FLIGHT_STATUS_QUERY,
+                "SELECT FlightNumber, FlightDate FROM FlightInstance ORDER BY md5(CAST(FlightInstanceID AS TEXT))"),
+        new Shape("FlightsPerDate",
+                AirlineManagement.FLIGHTS_PER_DATE_QUERY,
+                "SELECT DISTINCT FlightDate FROM FlightInstance"),
+        new Shape("PassengersList",
+                AirlineManagement.PASSENGERS_LIST_QUERY,
+                "SELECT FlightNumber, FlightDate FROM FlightInstance ORDER BY md5(CAST(FlightInstanceID AS TEXT))"),
+        new Shape("PassengerInfo",
+                AirlineManagement.PASSENGER_INFO_QUERY,
+                "SELECT ReservationID FROM Reservation ORDER BY md5(ReservationID)"),
+        new Shape("TechnicianInfo",
+                AirlineManagement.TECHNICIAN_INFO_QUERY,
+                "SELECT TechnicianID FROM Technician ORDER BY TechnicianID"),
+        new Shape("PlaneRepairRange",
+                AirlineManagement.PLANE_REPAIR_RANGE_QUERY,
+                "SELECT MIN(RepairDate), MAX(RepairDate), PlaneID FROM Repair GROUP BY PlaneID ORDER BY PlaneID"),
+        new Shape("FindAllRepairs",
+                AirlineManagement.FIND_ALL_REPAIRS_QUERY,
+                "SELECT PlaneID, MIN(RepairDate), MIN(RepairDate) + 30 FROM Repair GROUP BY PlaneID ORDER BY PlaneID"),
+        new Shape("FlightStats",
+                FlightStatistics.FLIGHT_STATS_QUERY,
+                "SELECT FlightNumber, MIN(FlightDate), MIN(FlightDate) + 7 FROM FlightInstance GROUP BY FlightNumber ORDER BY FlightNumber"),
+        new Shape("ViewDateFlights",
+                AirlineManagement.VIEW_DATE_FLIGHTS_QUERY,
+                "SELECT F.DepartureCity, F.ArrivalCity, I.FlightDate"
+                + " FROM Flight F JOIN FlightInstance I ON I.FlightNumber = F.FlightNumber ORDER BY md5(CAST(I.FlightInstanceID AS TEXT))"),
+        new Shape("FindConnections",
+                RouteSearch.DAY_QUERY,
+                "SELECT FlightDate FROM FlightInstance ORDER BY md5(CAST(FlightInstanceID AS TEXT))"),
+        new Shape("FindTicketPrice",
+                AirlineManagement.TICKET_PRICE_QUERY,
+                "SELECT FlightNumber, FlightDate FROM FlightInstance ORDER BY md5(CAST(FlightInstanceID AS TEXT))"),
+        new Shape("ViewCurrentReservations",
+                AirlineManagement.CURRENT_RESERVATIONS_QUERY,
+                "SELECT CustomerID FROM Customer ORDER BY md5(CAST(CustomerID AS TEXT))"),
+        new Shape("FindAllPilotRequests",
+                AirlineManagement.PILOT_REQUESTS_QUERY,
+                "SELECT PilotID FROM Pilot ORDER BY PilotID"),
+    };
+
+    // the column list of every plain index of the current schema, by table;
+    // partial and expression indexes serve only some statements
+    static final String EXISTING_INDEXES =
+            "SELECT t.relname, i.relname,"
+            + " array_to_string(array_agg(COALESCE(a.attname, '(expression)') ORDER BY k.n), ',')"
+            + " FROM pg_index x"
+            + " JOIN pg_class t ON t.oid = x.indrelid"
+            + " JOIN pg_class i ON i.oid = x.indexrelid"
+            + " JOIN pg_namespace s ON s.oid = t.relnamespace"
+            + " CROSS JOIN LATERAL unnest(CAST(x.indkey AS int2[])) WITH ORDINALITY AS k(attnum, n)"
+            + " LEFT JOIN pg_attribute a ON a.attrelid = t.oid AND a.attnum = k.attnum"
+            + " WHERE s.nspname = current_schema() AND x.indpred IS NULL AND x.indexprs IS NULL"
+            + " GROUP BY t.relname, i.relname";
+
+    static final String TABLE_COLUMNS =
+            "SELECT table_name, column_name FROM information_schema.columns WHERE table_schema = current_schema()";
+
+    private static final Pattern SCAN = Pattern.compile(
+            "(Seq Scan|Index Scan|Index Only Scan|Bitmap Heap Scan)(?: Backward)?(?: using \\S+)? on (\\w+)(?: (\\w+))?\\s+\\(");
+    private static final Pattern CONDITION = Pattern.compile("^\\s*(Filter|Index Cond|Recheck Cond): (.*)$");
+    private static final Pattern JOIN_CONDITION = Pattern.compile("^\\s*(Hash Cond|Merge Cond|Join Filter): (.*)$");
+    // a column on the left of a comparison, and one on the right
+    private static final Pattern LEFT = Pattern.compile("(?<!::)(?<![\\w.])(?:(\\w+)\\.)?([a-z_]\\w*)\\s*(=|>=|<=|>|<)(?!>)");
+    private static final Pattern RIGHT = Pattern.compile("(=|>=|<=|>|<)\\s*\\(?(?:(\\w+)\\.)?([a-z_]\\w*)\\b(?![\\s]*\\()(?!\\.)");
+    private static final Pattern QUALIFIED = Pattern.compile("\\b(\\w+)\\.([a-z_]\\w*)\\b");
+    private static final Pattern COST = Pattern.compile("cost=[0-9.]+\\.\\.([0-9.]+)");
+    private static final Pattern EXECUTION = Pattern.compile("(?:Execution Time|Total runtime): ([0-9.]+) ms");
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_]\\w*");
+
+    /**
+     * An index the advisor may recommend.
+     */
+    static final class Candidate {
+        final String table;
+        final List<String> columns;
+        final Set<String> shapes = new LinkedHashSet<String>();
+        String supersedes = null;
+        boolean accepted = false;
+
+        Candidate(String table, List<String> columns) {
+            this.table = table;
+            this.columns = columns;
+        }
+
+        String key() {
+            return table + "(" + String.join(",", columns) + ")";
+        }
+    }
+
+    /**
+     * What one statement cost over its samples.
+     */
+    static final class Measurement {
+        double cost;
+        double millis;
+        String plan = "";
+    }
+
+    private final AirlineManagement esql;
+    // the spelling of each identifier as the SQL text writes it, by lower case
+    private final Map<String, String> spelling = new HashMap<String, String>();
+    private final Map<String, Set<String>> tableColumns = new HashMap<String, Set<String>>();
+
+    public IndexAdvisor(AirlineManagement esql) {
+        this.esql = esql;
+    }
+
+    /**
+     * Proposes, creates and verifies the candidates and writes the index
+     * script with the accepted ones appended.
+     *
+     * @param script the current index script
+     * @param output where to write the updated script
+     * @param apply whether accepted indexes stay in the database
+     * @return the accepted candidates
+     */
+    public List<Candidate> advise(File script, File output, boolean apply) throws SQLException, IOException {
+        String current = new String(Files.readAllBytes(script.toPath()), StandardCharsets.UTF_8);
+        learnSpelling(current);
+        for (Shape shape : WORKLOAD) {
+            learnSpelling(shape.sql);
+        }
+        QueryResult columns = esql.executeQueryForResult(TABLE_COLUMNS);
+        for (int i = 0; i < columns.rowCount(); ++i) {
+            String table = columns.getString(i, 0);
+            if (!tableColumns.containsKey(table)) {
+                tableColumns.put(table, new HashSet<String>());
+            }
+            tableColumns.get(table).add(columns.getString(i, 1));
+        }
+
+        Map<String, List<Object[]>> samples = new LinkedHashMap<String, List<Object[]>>();
+        for (Shape shape : WORKLOAD) {
+            samples.put(shape.name, sample(shape));
+        }
+
+        System.out.println("BEFORE\n");
+        Map<String, Measurement> before = measureAll(samples);
+
+        Map<String, Candidate> candidates = new LinkedHashMap<String, Candidate>();
+        for (Shape shape : WORKLOAD) {
+            Measurement m = before.get(shape.name);
+            if (m != null) {
+                propose(shape.name, m.plan, candidates);
+            }
+        }
+        for (String query : observed()) {
+            try {
+                QueryResult plan = esql.executeQueryForResult("EXPLAIN (GENERIC_PLAN) " + query);
+                propose("pg_stat_statements", text(plan), candidates);
+            } catch (SQLException e) {
+                // GENERIC_PLAN needs Postgres 16; the workload still counts
+            }
+        }
+        List<Candidate> trials = removeExisting(candidates);
+        if (trials.isEmpty()) {
+            System.out.println("\nNO INDEX CANDIDATES: EVERY STATEMENT IS ALREADY SERVED BY AN INDEX\n");
+            return trials;
+        }
+
+        System.out.println("\nCANDIDATES\n");
+        Set<String> analyze = new LinkedHashSet<String>();
+        for (Candidate c : trials) {
+            System.out.println("\t" + ddl(c, trialName(c)) + "\t-- from " + String.join(", ", c.shapes));
+            esql.executeUpdate(ddl(c, trialName(c)));
+            analyze.add(c.table);
+        }
+        for (String table : analyze) {
+            esql.executeUpdate("ANALYZE " + table);
+        }
+
+        System.out.println("\nAFTER\n");
+        Map<String, Measurement> after = measureAll(samples);
+
+        List<Candidate> accepted = new ArrayList<Candidate>();
+        for (Candidate c : trials) {
+            String name = trialName(c).toLowerCase();
+            for (String shape : c.shapes) {
+                Measurement b = before.get(shape);
+                Measurement a = after.get(shape);
+                if (b == null || a == null || !a.plan.toLowerCase().contains(name)) {
+                    continue;
+                }
+                if (b.millis > 0 && (b.millis - a.millis) / b.millis >= MIN_GAIN) {
+                    c.accepted = true;
+                }
+            }
+            if (c.accepted) {
+                accepted.add(c);
+            }
+            if (!c.accepted || !apply) {
+                esql.executeUpdate("DROP INDEX IF EXISTS " + trialName(c));
+            }
+        }
+
+        System.out.println("\nGAIN PER STATEMENT\n");
+        System.out.println(String.format("\t%-24s %12s %12s %10s %10s %8s", "Statement", "Cost before", "Cost after",
+                "ms before", "ms after", "Gain"));
+        for (Shape shape : WORKLOAD) {
+            Measurement b = before.get(shape.name);
+            Measurement a = after.get(shape.name);
+            if (b == null || a == null) {
+                continue;
+            }
+            double gain = b.millis > 0 ? 100.0 * (b.millis - a.millis) / b.millis : 0;
+            System.out.println(String.format("\t%-24s %12.2f %12.2f %10.3f %10.3f %7.1f%%", shape.name, b.cost, a.cost,
+                    b.millis, a.millis, gain));
+        }
+
+        System.out.println("\nACCEPTED\n");
+        for (Candidate c : accepted) {
+            System.out.println("\t" + ddl(c, indexName(c))
+                    + (c.supersedes == null ? "" : "\t-- makes " + c.supersedes + " redundant"));
+        }
+        if (accepted.isEmpty()) {
+            System.out.println("\tnone gained " + Math.round(MIN_GAIN * 100) + "% or more");
+        }
+        writeScript(current, accepted, output);
+        return accepted;
+    }//end advise
+
+    /*
+     * Up to SAMPLES parameter rows of a shape. Integer and date columns keep
+     * their types so they bind with the type the handlers bind.
+     */
+    private List<Object[]> sample(Shape shape) throws SQLException {
+        QueryResult result = esql.executeQueryForResult(shape.sample + " LIMIT " + SAMPLES);
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < result.rowCount(); ++i) {
+            Object[] params = new Object[result.columnCount()];
+            for (int j = 0; j < params.length; ++j) {
+                if (result.isNull(i, j)) {
+                    params[j] = null;
+                } else if (result.columnKind(j) == QueryResult.Kind.INT) {
+                    params[j] = result.getInt(i, j);
+                } else if (result.columnKind(j) == QueryResult.Kind.DATE) {
+                    params[j] = java.sql.Date.valueOf(result.getDate(i, j));
+                } else {
+                    params[j] = result.getString(i, j);
+                }
+            }
+            rows.add(params);
+        }
+        return rows;
+    }
+
+    private Map<String, Measurement> measureAll(Map<String, List<Object[]>> samples) {
+        Map<String, Measurement> measurements = new LinkedHashMap<String, Measurement>();
+        for (Shape shape : WORKLOAD) {
+            List<Object[]> rows = samples.get(shape.name);
+            if (rows.isEmpty()) {
+                System.out.println("\t" + shape.name + ": no data to sample, skipped");
+                continue;
+            }
+            try {
+                Measurement m = measure(shape, rows);
+                measurements.put(shape.name, m);
+                System.out.println(String.format("\t%-24s cost %10.2f  %8.3f ms", shape.name, m.cost, m.millis));
+            } catch (SQLException e) {
+                System.err.println(shape.name + ": " + e.getMessage());
+            }
+        }
+        return measurements;
+    }
+
+    /*
+     * Runs the statement under EXPLAIN ANALYZE for every sample, ROUNDS
+     * times, and keeps the median server execution time. The first round
+     * warms the cache and is not counted when there are more.
+     */
+    private Measurement measure(Shape shape, List<Object[]> rows) throws SQLException {
+        Measurement m = new Measurement();
+        List<Double> times = new ArrayList<Double>();
+        double cost = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            for (Object[] params : rows) {
+                QueryResult plan = esql.executeQueryForResult("EXPLAIN (ANALYZE, BUFFERS) " + shape.sql, params);
+                String text = text(plan);
+                if (round == 0) {
+                    Matcher c = COST.matcher(text);
+                    if (c.find()) {
+                        cost += Double.parseDouble(c.group(1));
+                    }
+                    m.plan += text;
+                }
+                if (round > 0 || ROUNDS == 1) {
+                    Matcher t = EXECUTION.matcher(text);
+                    if (t.find()) {
+                        times.add(Double.parseDouble(t.group(1)));
+                    }
+                }
+            }
+        }
+        m.cost = cost / rows.size();
+        if (!times.isEmpty()) {
+            Double[] sorted = times.toArray(new Double[0]);
+            Arrays.sort(sorted);
+            m.millis = sorted[sorted.length / 2];
+        }
+        return m;
+    }//end measure
+
+    /*
+     * The statements pg_stat_statements ranks highest by total time, when
+     * the extension is installed. Column names changed in Postgres 13.
+     */
+    private List<String> observed() {
+        List<String> queries = new ArrayList<String>();
+        for (String column : new String[] {"total_exec_time", "total_time"}) {
+            try {
+                QueryResult result = esql.executeQueryForResult(
+                        "SELECT query FROM pg_stat_statements WHERE dbid = (SELECT oid FROM pg_database WHERE datname = current_database())"
+                        + " AND query ILIKE 'SELECT%' AND query NOT ILIKE '%EXPLAIN%' AND query NOT ILIKE '%pg_%'"
+                        + " ORDER BY " + column + " DESC LIMIT " + OBSERVED);
+                for (int i = 0; i < result.rowCount(); ++i) {
+                    queries.add(result.getString(i, 0));
+                }
+                if (!queries.isEmpty()) {
+                    System.out.println("\nPLANNING " + queries.size() + " STATEMENT(S) FROM pg_stat_statements");
+                }
+                return queries;
+            } catch (SQLException e) {
+                // not installed, or the other column name
+            }
+        }
+        return queries;
+    }
+
+    /*
+     * Adds a candidate for every scan of the plan that reads a whole table
+     * or discards rows with a filter.
+     */
+    void propose(String shape, String plan, Map<String, Candidate> candidates) {
+        String[] lines = plan.split("\n");
+        // the columns each alias is joined on anywhere in the plan
+        Map<String, List<String>> joins = new HashMap<String, List<String>>();
+        for (String line : lines) {
+            Matcher j = JOIN_CONDITION.matcher(line);
+            if (j.find()) {
+                Matcher q = QUALIFIED.matcher(j.group(2));
+                while (q.find()) {
+                    if (!joins.containsKey(q.group(1))) {
+                        joins.put(q.group(1), new ArrayList<String>());
+                    }
+                    joins.get(q.group(1)).add(q.group(2));
+                }
+            }
+        }
+        for (int i = 0; i < lines.length; ++i) {
+            Matcher scan = SCAN.matcher(lines[i]);
+            if (!scan.find()) {
+                continue;
+            }
+            boolean sequential = scan.group(1).equals("Seq Scan");
+            String table = scan.group(2);
+            String alias = scan.group(3) == null ? table : scan.group(3);
+            Set<String> known = tableColumns.get(table);
+            if (known == null) {
+                continue;
+            }
+            LinkedHashSet<String> equality = new LinkedHashSet<String>();
+            LinkedHashSet<String> range = new LinkedHashSet<String>();
+            boolean filtered = false;
+            for (int k = i + 1; k < lines.length && !lines[k].contains("->"); ++k) {
+                Matcher c = CONDITION.matcher(lines[k]);
+                if (!c.find()) {
+                    continue;
+                }
+                filtered |= c.group(1).equals("Filter");
+                comparisons(c.group(2), alias, table, known, equality, range);
+            }
+            if (sequential && joins.containsKey(alias)) {
+                for (String column : joins.get(alias)) {
+                    if (known.contains(column)) {
+                        equality.add(column);
+                    }
+                }
+            }
+            if (!sequential && !filtered) {
+                continue;
+            }
+            List<String> columns = new ArrayList<String>(equality);
+            for (String column : range) {
+                if (!equality.contains(column)) {
+                    columns.add(column);
+                    break;
+                }
+            }
+            if (columns.isEmpty()) {
+                continue;
+            }
+            Candidate candidate = new Candidate(table, columns);
+            Candidate seen = candidates.get(candidate.key());
+            if (seen == null) {
+                candidates.put(candidate.key(), candidate);
+                seen = candidate;
+            }
+            seen.shapes.add(shape);
+        }
+    }//end propose
+
+    private static void comparisons(String condition, String alias, String table, Set<String> known,
+            Set<String> equality, Set<String> range) {
+        Matcher left = LEFT.matcher(condition);
+        while (left.find()) {
+            add(left.group(1), left.group(2), left.group(3), alias, table, known, equality, range);
+        }
+        Matcher right = RIGHT.matcher(condition);
+        while (right.find()) {
+            add(right.group(2), right.group(3), right.group(1), alias, table, known, equality, range);
+        }
+    }
+
+    private static void add(String qualifier, String column, String operator, String alias, String table,
+            Set<String> known, Set<String> equality, Set<String> range) {
+        if (qualifier != null && !qualifier.equals(alias) && !qualifier.equals(table)) {
+            return;
+        }
+        if (!known.contains(column)) {
+            return;
+        }
+        if (operator.equals("=")) {
+            equality.add(column);
+        } else {
+            range.add(column);
+        }
+    }
+
+    /*
+     * Drops candidates an existing index already covers: one whose columns
+     * start with the candidate's. A candidate that extends an existing
+     * index remembers it, as accepting it makes the shorter one redundant.
+     */
+    private List<Candidate> removeExisting(Map<String, Candidate> candidates) throws SQLException {
+        QueryResult existing = esql.executeQueryForResult(EXISTING_INDEXES);
+        List<Candidate> trials = new ArrayList<Candidate>();
+        for (Candidate c : candidates.values()) {
+            String columns = String.join(",", c.columns);
+            boolean covered = false;
+            for (int i = 0; i < existing.rowCount(); ++i) {
+                if (!existing.getString(i, 0).equals(c.table)) {
+                    continue;
+                }
+                String indexed = existing.getString(i, 2);
+                if (indexed.equals(columns) || indexed.startsWith(columns + ",")) {
+                    covered = true;
+                } else if (columns.startsWith(indexed + ",")) {
+                    c.supersedes = existing.getString(i, 1);
+                }
+            }
+            if (!covered) {
+                trials.add(c);
+            }
+        }
+        return trials;
+    }
+
+    private void writeScript(String current, List<Candidate> accepted, File output) throws IOException {
+        StringBuilder script = new StringBuilder(current);
+        if (!current.endsWith("\n")) {
+            script.append('\n');
+        }
+        for (Candidate c : accepted) {
+            script.append("\n--proposed by IndexAdvisor for ").append(String.join(", ", c.shapes));
+            if (c.supersedes != null) {
+                script.append("; makes ").append(c.supersedes).append(" redundant");
+            }
+            script.append('\n');
+            script.append("DROP INDEX IF EXISTS ").append(indexName(c)).append(";\n");
+            script.append(ddl(c, indexName(c))).append(";\n");
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8);
+        try {
+            out.write(script.toString());
+        } finally {
+            out.close();
+        }
+        System.out.println("\nINDEX SCRIPT WRITTEN TO " + output.getPath() + "\n");
+    }
+
+    private String ddl(Candidate c, String name) {
+        List<String> columns = new ArrayList<String>();
+        for (String column : c.columns) {
+            columns.add(spell(column));
+        }
+        return "CREATE INDEX " + name + " ON " + spell(c.table) + "(" + String.join(", ", columns) + ")";
+    }
+
+    // e.g. FlightInstance_FlightDate_index, in the style of create_indexes.sql
+    private String indexName(Candidate c) {
+        StringBuilder name = new StringBuilder(spell(c.table));
+        for (String column : c.columns) {
+            name.append('_').append(spell(column));
+        }
+        return name.append("_index").toString();
+    }
+
+    private String trialName(Candidate c) {
+        return "advisor_" + indexName(c);
+    }
+
+    private void learnSpelling(String sql) {
+        Matcher m = IDENTIFIER.matcher(sql);
+        while (m.find()) {
+            String word = m.group();
+            if (!word.equals(word.toLowerCase()) && !word.equals(word.toUpperCase())) {
+                spelling.put(word.toLowerCase(), word);
+            }
+        }
+    }
+
+    private String spell(String identifier) {
+        String spelled = spelling.get(identifier);
+        return spelled == null ? identifier : spelled;
+    }
+
+    private static String text(QueryResult plan) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < plan.rowCount(); ++i) {
+            text.append(plan.getString(i, 0)).append('\n');
+        }
+        return text.toString();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 5) {
+            System.err.println(
+                    "Usage: "
+                    + "java [-classpath <classpath>] "
+                    + IndexAdvisor.class.getName()
+                    + " <dbname> <port> <user> <index script> <output script> [--apply]");
+            return;
+        }//end if
+
+        AirlineManagement esql = null;
+        try {
+            DriverSupport.load();
+            esql = new AirlineManagement(args[0], args[1], args[2], "");
+            boolean apply = args.length > 5 && args[5].equals("--apply");
+            new IndexAdvisor(esql).advise(new File(args[3]), new File(args[4]), apply);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        } finally {
+            if (esql != null) {
+                esql.cleanup();
+            }
+        }
+    }//end main
+
+}//end IndexAdvisor
@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram in the style of HdrHistogram: buckets are linear
+ * within each power of two, 64 to a power, so any recorded value is known
+ * to within about 1.5% however large it is. Recording is one array
+ * increment and a few adds, with no locks and no allocation, so it can sit
+ * on every statement.
+ *
+ * Values are nanoseconds from 0 to about two hours; larger values are
+ * counted in the last bucket.
+ *
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // values below this are counted exactly, one bucket each
+    private static final int LINEAR = SUB_COUNT * 2;
+    private static final int MAX_SHIFT = 36;
+    private static final int BUCKETS = LINEAR + MAX_SHIFT * SUB_COUNT;
+    private static final long MAX_VALUE = (2L * SUB_COUNT << MAX_SHIFT) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value, in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }//end record
+
+    public long count() {
+        return count.get();
+    }
+
+    public long sum() {
+        return sum.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile between 0 and 1, for example 0.99
+     * @return the value at the quantile in nanoseconds, as the upper bound
+     * of its bucket; 0 when nothing was recorded
+     */
+    public long quantile(double quantile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        rank = Math.max(1, Math.min(rank, total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }//end quantile
+
+    static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        // value has its top bit at position SUB_BITS + shift
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return LINEAR + (shift - 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_COUNT + 1;
+        long sub = (index - LINEAR) % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+}//end LatencyHistogram
@@ -0,0 +1,331 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and volume counters for every menu operation and every SQL
+ * statement. The query helpers of AirlineManagement and Transaction report
+ * each statement they run with its duration, row count, fetched bytes and
+ * whether it failed; the menu loop brackets each handler with begin and
+ * end, and the statements run in between are added to the operation.
+ *
+ * The counters are exposed in the Prometheus text format on
+ * http://127.0.0.1:&lt;airline.metrics.port&gt;/metrics and written to the
+ * file named by airline.metrics.snapshotFile every
+ * airline.metrics.snapshotSeconds. Neither is started unless its property
+ * is set. Setting airline.metrics=false turns recording off.
+ *
+ */
+public class Metrics {
+
+    static final boolean ENABLED = !"false".equals(System.getProperty("airline.metrics"));
+    static final int PORT = Integer.getInteger("airline.metrics.port", 0);
+    static final String SNAPSHOT_FILE = System.getProperty("airline.metrics.snapshotFile");
+    static final int SNAPSHOT_SECONDS = Integer.getInteger("airline.metrics.snapshotSeconds", 60);
+    // statements are keyed by SQL text; text built with literals would
+    // otherwise grow the table without bound
+    static final int MAX_STATEMENTS = Integer.getInteger("airline.metrics.maxStatements", 500);
+
+    private static final String OTHER_STATEMENTS = "(other)";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * The counters of one operation or statement.
+     */
+    public static class Timer {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        void record(long nanos, long rowCount, long byteCount, boolean failed) {
+            latency.record(nanos);
+            rows.add(rowCount);
+            bytes.add(byteCount);
+            if (failed) {
+                errors.increment();
+            }
+        }
+    }//end Timer
+
+    /*
+     * The operation running on a thread and what its statements added up to.
+     */
+    private static class Current {
+        String operation;
+        long started;
+        long rows;
+        long bytes;
+        boolean failed;
+    }
+
+    private static final ConcurrentHashMap<String, Timer> OPERATIONS = new ConcurrentHashMap<String, Timer>();
+    private static final ConcurrentHashMap<String, Timer> STATEMENTS = new ConcurrentHashMap<String, Timer>();
+    private static final ThreadLocal<Current> CURRENT = new ThreadLocal<Current>() {
+        protected Current initialValue() {
+            return new Current();
+        }
+    };
+
+    private static volatile ConnectionPool pool = null;
+    private static HttpServer server = null;
+    private static ScheduledExecutorService snapshots = null;
+
+    private Metrics() {
+    }
+
+    /**
+     * Starts the HTTP endpoint and the snapshot file when they are
+     * configured, and reports the gauges of the given pool.
+     *
+     * @throws java.io.IOException when the endpoint cannot be bound
+     */
+    public static synchronized void start(ConnectionPool connectionPool) throws IOException {
+        pool = connectionPool;
+        if (PORT > 0 && server == null) {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT), 0);
+            server.createContext("/metrics", new HttpHandler() {
+                public void handle(HttpExchange exchange) throws IOException {
+                    byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    try {
+                        out.write(body);
+                    } finally {
+                        out.close();
+                    }
+                }
+            });
+            server.setExecutor(Executors.newSingleThreadExecutor(daemonThreads("metrics-http")));
+            server.start();
+        }
+        if (SNAPSHOT_FILE != null && snapshots == null) {
+            snapshots = Executors.newSingleThreadScheduledExecutor(daemonThreads("metrics-snapshot"));
+            snapshots.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    writeSnapshot();
+                }
+            }, SNAPSHOT_SECONDS, SNAPSHOT_SECONDS, TimeUnit.SECONDS);
+        }
+    }//end start
+
+    /**
+     * Stops the endpoint and writes a last snapshot.
+     */
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (snapshots != null) {
+            snapshots.shutdownNow();
+            snapshots = null;
+            writeSnapshot();
+        }
+    }//end stop
+
+    /**
+     * Marks the start of a menu operation on the calling thread.
+     */
+    public static void begin(String operation) {
+        if (!ENABLED) {
+            return;
+        }
+        Current current = CURRENT.get();
+        current.operation = operation;
+        current.started = System.nanoTime();
+        current.rows = 0;
+        current.bytes = 0;
+        current.failed = false;
+    }
+
+    /**
+     * Marks the operation begun on the calling thread as failed, for an
+     * error that did not come from a statement.
+     */
+    public static void fail() {
+        if (!ENABLED) {
+            return;
+        }
+        Current current = CURRENT.get();
+        if (current.operation != null) {
+            current.failed = true;
+        }
+    }
+
+    /**
+     * Records the operation begun on the calling thread. It counts as an
+     * error when any of its statements failed or it was marked failed.
+     */
+    public static void end() {
+        if (!ENABLED) {
+            return;
+        }
+        Current current = CURRENT.get();
+        if (current.operation == null) {
+            return;
+        }
+        timer(OPERATIONS, current.operation, Integer.MAX_VALUE)
+                .record(System.nanoTime() - current.started, current.rows, current.bytes, current.failed);
+        current.operation = null;
+    }
+
+    /**
+     * Records one statement.
+     *
+     * @param sql the statement text, which names its counters
+     * @param started System.nanoTime() when the statement was issued
+     */
+    public static void statement(String sql, long started, long rows, long bytes, boolean failed) {
+        if (!ENABLED) {
+            return;
+        }
+        timer(STATEMENTS, sql, MAX_STATEMENTS).record(System.nanoTime() - started, rows, bytes, failed);
+        Current current = CURRENT.get();
+        if (current.operation != null) {
+            current.rows += rows;
+            current.bytes += bytes;
+            current.failed |= failed;
+        }
+    }
+
+    private static Timer timer(ConcurrentHashMap<String, Timer> timers, String name, int limit) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            if (timers.size() >= limit) {
+                name = OTHER_STATEMENTS;
+            }
+            Timer created = new Timer();
+            timer = timers.putIfAbsent(name, created);
+            if (timer == null) {
+                timer = created;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * @return every counter in the Prometheus text exposition format
+     */
+    public static String prometheus() {
+        StringBuilder out = new StringBuilder(8192);
+        write(out, "airline_operation", "operation", OPERATIONS);
+        write(out, "airline_statement", "statement", STATEMENTS);
+        ConnectionPool p = pool;
+        if (p != null) {
+            gauge(out, "airline_pool_active_connections", p.active());
+            gauge(out, "airline_pool_idle_connections", p.idle());
+            gauge(out, "airline_pool_waiting_borrowers", p.waiting());
+            counter(out, "airline_pool_borrow_timeouts_total", p.timeouts());
+            counter(out, "airline_pool_wait_seconds_total", p.waitMillis() / 1000.0);
+        }
+        return out.toString();
+    }//end prometheus
+
+    private static void write(StringBuilder out, String prefix, String label, Map<String, Timer> timers) {
+        // sorted so the output is stable between scrapes
+        TreeMap<String, Timer> sorted = new TreeMap<String, Timer>(timers);
+        out.append("# TYPE ").append(prefix).append("_seconds summary\n");
+        for (Map.Entry<String, Timer> e : sorted.entrySet()) {
+            String key = label + "=\"" + escape(e.getKey()) + "\"";
+            LatencyHistogram latency = e.getValue().latency;
+            for (double q : QUANTILES) {
+                out.append(prefix).append("_seconds{").append(key).append(",quantile=\"").append(q).append("\"} ")
+                        .append(latency.quantile(q) / 1e9).append('\n');
+            }
+            out.append(prefix).append("_seconds_sum{").append(key).append("} ").append(latency.sum() / 1e9).append('\n');
+            out.append(prefix).append("_seconds_count{").append(key).append("} ").append(latency.count()).append('\n');
+        }
+        total(out, prefix + "_rows_total", label, sorted, ROWS);
+        total(out, prefix + "_bytes_total", label, sorted, BYTES);
+        total(out, prefix + "_errors_total", label, sorted, ERRORS);
+    }//end write
+
+    private static final int ROWS = 0;
+    private static final int BYTES = 1;
+    private static final int ERRORS = 2;
+
+    private static void total(StringBuilder out, String name, String label, Map<String, Timer> timers, int which) {
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, Timer> e : timers.entrySet()) {
+            Timer t = e.getValue();
+            long value = which == ROWS ? t.rows.sum() : which == BYTES ? t.bytes.sum() : t.errors.sum();
+            out.append(name).append('{').append(label).append("=\"").append(escape(e.getKey())).append("\"} ")
+                    .append(value).append('\n');
+        }
+    }
+
+    private static void gauge(StringBuilder out, String name, long value) {
+        out.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, double value) {
+        out.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    // label values escape backslash, quote and line breaks
+    private static String escape(String value) {
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0, n = value.length(); i < n; ++i) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else if (c != '\r') {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /*
+     * Replaces the snapshot file in one move, so readers never see half a
+     * snapshot.
+     */
+    private static void writeSnapshot() {
+        File target = new File(SNAPSHOT_FILE);
+        File temp = new File(target.getPath() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(prometheus().getBytes(StandardCharsets.UTF_8));
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // try again at the next snapshot
+        }
+    }//end writeSnapshot
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+}//end Metrics
@@ -0,0 +1,393 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The materialized result of a single query execution. It carries the column
+ * metadata, the rows and the row count, so a handler can check for an empty
+ * result and print it without issuing the same SQL a second time.
+ *
+ * Values are stored column by column in primitive arrays chosen from the
+ * ResultSetMetaData: integers in int[] or long[], fixed point numbers as
+ * unscaled long[] with the column scale, floating point in double[], dates
+ * as epoch days in int[], booleans in int[]. Only text and other columns
+ * keep String objects. Each column has a null bitmap, so a result of many
+ * thousands of rows costs a few arrays instead of one object per cell.
+ *
+ */
+public class QueryResult {
+
+    /**
+     * The storage type of a column.
+     */
+    public enum Kind { INT, LONG, DECIMAL, DOUBLE, DATE, BOOLEAN, STRING }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String[] columnNames;
+    private final Kind[] kinds;
+    private final int[] scales;
+    private final int[][] ints;
+    private final long[][] longs;
+    private final double[][] doubles;
+    private final String[][] strings;
+    private final long[][] nulls;
+    // bytes of the numeric columns of one row
+    private final int fixedWidth;
+    private int rowCount = 0;
+    private int capacity;
+    private long bytes = 0;
+
+    private QueryResult(String[] columnNames, Kind[] kinds, int[] scales) {
+        int numCol = columnNames.length;
+        this.columnNames = columnNames;
+        this.kinds = kinds;
+        this.scales = scales;
+        this.ints = new int[numCol][];
+        this.longs = new long[numCol][];
+        this.doubles = new double[numCol][];
+        this.strings = new String[numCol][];
+        this.nulls = new long[numCol][];
+        int width = 0;
+        for (Kind kind : kinds) {
+            switch (kind) {
+                case INT:
+                case DATE:
+                    width += 4;
+                    break;
+                case LONG:
+                case DECIMAL:
+                case DOUBLE:
+                    width += 8;
+                    break;
+                case BOOLEAN:
+                    width += 1;
+                    break;
+                default:
+                    break;
+            }
+        }
+        this.fixedWidth = width;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Drains the given result set into a new QueryResult.
+     *
+     * @param rs an open result set positioned before the first row
+     * @return the materialized result
+     * @throws java.sql.SQLException when reading the result set fails
+     */
+    public static QueryResult from(ResultSet rs) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int numCol = rsmd.getColumnCount();
+        String[] names = new String[numCol];
+        Kind[] kinds = new Kind[numCol];
+        int[] scales = new int[numCol];
+        for (int i = 1; i <= numCol; ++i) {
+            names[i - 1] = rsmd.getColumnName(i);
+            kinds[i - 1] = kindOf(rsmd, i);
+            if (kinds[i - 1] == Kind.DECIMAL) {
+                scales[i - 1] = rsmd.getScale(i);
+            }
+        }
+
+        QueryResult result = new QueryResult(names, kinds, scales);
+        while (rs.next()) {
+            result.readRow(rs);
+        }//end while
+        return result;
+    }//end from
+
+    /*
+     * Picks the storage of a column. Numeric columns without a usable scale,
+     * such as an unconstrained NUMERIC, stay text so nothing is rounded.
+     */
+    private static Kind kindOf(ResultSetMetaData rsmd, int col) throws SQLException {
+        switch (rsmd.getColumnType(col)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return Kind.INT;
+            case Types.BIGINT:
+                return Kind.LONG;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                int scale = rsmd.getScale(col);
+                int precision = rsmd.getPrecision(col);
+                if (scale >= 0 && scale <= 18 && precision > 0 && precision <= 18) {
+                    return Kind.DECIMAL;
+                }
+                return Kind.STRING;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return Kind.DOUBLE;
+            case Types.DATE:
+                return Kind.DATE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return Kind.BOOLEAN;
+            default:
+                return Kind.STRING;
+        }
+    }//end kindOf
+
+    private void readRow(ResultSet rs) throws SQLException {
+        if (rowCount == capacity) {
+            allocate(capacity * 2);
+        }
+        int row = rowCount;
+        bytes += fixedWidth;
+        for (int c = 0; c < kinds.length; ++c) {
+            int col = c + 1;
+            switch (kinds[c]) {
+                case INT:
+                    ints[c][row] = rs.getInt(col);
+                    break;
+                case LONG:
+                    longs[c][row] = rs.getLong(col);
+                    break;
+                case DECIMAL:
+                    BigDecimal value = rs.getBigDecimal(col);
+                    if (value != null) {
+                        longs[c][row] = value.setScale(scales[c], RoundingMode.HALF_UP).unscaledValue().longValue();
+                    }
+                    break;
+                case DOUBLE:
+                    doubles[c][row] = rs.getDouble(col);
+                    break;
+                case DATE:
+                    Date date = rs.getDate(col);
+                    if (date != null) {
+                        ints[c][row] = (int) date.toLocalDate().toEpochDay();
+                    }
+                    break;
+                case BOOLEAN:
+                    ints[c][row] = rs.getBoolean(col) ? 1 : 0;
+                    break;
+                default:
+                    String text = rs.getString(col);
+                    strings[c][row] = text;
+                    if (text != null) {
+                        bytes += text.length();
+                    }
+                    break;
+            }
+            if (rs.wasNull()) {
+                nulls[c][row >>> 6] |= 1L << row;
+            }
+        }
+        ++rowCount;
+    }//end readRow
+
+    // grows every column to the new capacity
+    private void allocate(int newCapacity) {
+        for (int c = 0; c < kinds.length; ++c) {
+            switch (kinds[c]) {
+                case INT:
+                case DATE:
+                case BOOLEAN:
+                    ints[c] = ints[c] == null ? new int[newCapacity] : Arrays.copyOf(ints[c], newCapacity);
+                    break;
+                case LONG:
+                case DECIMAL:
+                    longs[c] = longs[c] == null ? new long[newCapacity] : Arrays.copyOf(longs[c], newCapacity);
+                    break;
+                case DOUBLE:
+                    doubles[c] = doubles[c] == null ? new double[newCapacity] : Arrays.copyOf(doubles[c], newCapacity);
+                    break;
+                default:
+                    strings[c] = strings[c] == null ? new String[newCapacity] : Arrays.copyOf(strings[c], newCapacity);
+                    break;
+            }
+            int words = (newCapacity + 63) >>> 6;
+            nulls[c] = nulls[c] == null ? new long[words] : Arrays.copyOf(nulls[c], words);
+        }
+        capacity = newCapacity;
+    }//end allocate
+
+    /**
+     * @return the approximate size of the fetched values in bytes: the
+     * width of each number and the length of each text value
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public int columnCount() {
+        return columnNames.length;
+    }
+
+    public String columnName(int col) {
+        return columnNames[col];
+    }
+
+    public Kind columnKind(int col) {
+        return kinds[col];
+    }
+
+    /**
+     * @param name the column name
+     * @return the index of the column with the given name, ignoring case, or
+     * -1 when there is none
+     */
+    public int columnIndex(String name) {
+        for (int i = 0; i < columnNames.length; ++i) {
+            if (columnNames[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isNull(int row, int col) {
+        checkRow(row);
+        return (nulls[col][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * @return the value as an int; 0 for SQL NULL, as ResultSet.getInt does
+     */
+    public int getInt(int row, int col) {
+        checkRow(row);
+        switch (kinds[col]) {
+            case INT:
+            case BOOLEAN:
+                return ints[col][row];
+            case LONG:
+                return (int) longs[col][row];
+            case DECIMAL:
+            case DOUBLE:
+                return (int) getDouble(row, col);
+            case DATE:
+                throw new IllegalStateException("column " + columnNames[col] + " is a date");
+            default:
+                String value = strings[col][row];
+                return value == null ? 0 : Integer.parseInt(value.trim());
+        }
+    }//end getInt
+
+    /**
+     * @return the value as a long; 0 for SQL NULL
+     */
+    public long getLong(int row, int col) {
+        checkRow(row);
+        switch (kinds[col]) {
+            case LONG:
+                return longs[col][row];
+            case INT:
+            case BOOLEAN:
+                return ints[col][row];
+            case DECIMAL:
+            case DOUBLE:
+                return (long) getDouble(row, col);
+            case DATE:
+                throw new IllegalStateException("column " + columnNames[col] + " is a date");
+            default:
+                String value = strings[col][row];
+                return value == null ? 0L : Long.parseLong(value.trim());
+        }
+    }//end getLong
+
+    /**
+     * @return the value as a double; 0 for SQL NULL
+     */
+    public double getDouble(int row, int col) {
+        checkRow(row);
+        switch (kinds[col]) {
+            case DOUBLE:
+                return doubles[col][row];
+            case DECIMAL:
+                return longs[col][row] / Math.pow(10, scales[col]);
+            case LONG:
+                return longs[col][row];
+            case INT:
+            case BOOLEAN:
+                return ints[col][row];
+            case DATE:
+                throw new IllegalStateException("column " + columnNames[col] + " is a date");
+            default:
+                String value = strings[col][row];
+                return value == null ? 0.0 : Double.parseDouble(value.trim());
+        }
+    }//end getDouble
+
+    /**
+     * @return the value of a date column, or null for SQL NULL
+     */
+    public LocalDate getDate(int row, int col) {
+        if (isNull(row, col)) {
+            return null;
+        }
+        if (kinds[col] == Kind.DATE) {
+            return LocalDate.ofEpochDay(ints[col][row]);
+        }
+        if (kinds[col] == Kind.STRING) {
+            return LocalDate.parse(strings[col][row].trim());
+        }
+        throw new IllegalStateException("column " + columnNames[col] + " is not a date");
+    }//end getDate
+
+    /**
+     * @param row zero based row index
+     * @param col zero based column index
+     * @return the value of the cell formatted the way ResultSet.getString
+     * formats it, or null for SQL NULL
+     */
+    public String getString(int row, int col) {
+        if (isNull(row, col)) {
+            return null;
+        }
+        switch (kinds[col]) {
+            case INT:
+                return Integer.toString(ints[col][row]);
+            case LONG:
+                return Long.toString(longs[col][row]);
+            case DECIMAL:
+                return BigDecimal.valueOf(longs[col][row], scales[col]).toPlainString();
+            case DOUBLE:
+                return Double.toString(doubles[col][row]);
+            case DATE:
+                return LocalDate.ofEpochDay(ints[col][row]).toString();
+            case BOOLEAN:
+                return ints[col][row] != 0 ? "t" : "f";
+            default:
+                return strings[col][row];
+        }
+    }//end getString
+
+    /**
+     * @return the rows in the legacy list-of-lists shape
+     */
+    public List<List<String>> toList() {
+        List<List<String>> result = new ArrayList<List<String>>(rowCount);
+        for (int row = 0; row < rowCount; ++row) {
+            List<String> values = new ArrayList<String>(columnNames.length);
+            for (int col = 0; col < columnNames.length; ++col) {
+                values.add(getString(row, col));
+            }
+            result.add(values);
+        }
+        return result;
+    }//end toList
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + rowCount);
+        }
+    }
+
+}//end QueryResult
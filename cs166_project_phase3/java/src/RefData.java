@@ -0,0 +1,302 @@
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process copy of the small, slowly changing reference tables: Flight,
+ * Plane, Pilot, Technician and Schedule. Each table is loaded once at startup
+ * into an immutable snapshot with a hash index on its key, so the existence
+ * probes and lookups the menus run before every report are answered from
+ * memory without a round trip.
+ *
+ * Snapshots live for a time to live. A background thread reloads each table
+ * before it expires, one table at a time, so lookups normally never wait on
+ * the database; a lookup that finds its table expired or invalidated reads
+ * through and reloads it. A failed reload keeps serving the previous
+ * snapshot. Code that writes one of these tables calls invalidate.
+ *
+ */
+public class RefData {
+
+    /**
+     * The cached tables and the column each one is looked up by.
+     */
+    public enum Table {
+        FLIGHT("SELECT * FROM Flight ORDER BY FlightNumber", "FlightNumber"),
+        PLANE("SELECT * FROM Plane ORDER BY PlaneID", "PlaneID"),
+        PILOT("SELECT * FROM Pilot ORDER BY PilotID", "PilotID"),
+        TECHNICIAN("SELECT * FROM Technician ORDER BY TechnicianID", "TechnicianID"),
+        // several rows per flight, kept in ScheduleID order
+        SCHEDULE("SELECT * FROM Schedule ORDER BY FlightNumber, ScheduleID", "FlightNumber");
+
+        final String query;
+        final String key;
+
+        Table(String query, String key) {
+            this.query = query;
+            this.key = key;
+        }
+    }//end Table
+
+    /**
+     * The rows of one key, together with the snapshot their row numbers
+     * refer to.
+     */
+    public static class Match {
+        public final QueryResult result;
+        public final int[] rows;
+
+        Match(QueryResult result, int[] rows) {
+            this.result = result;
+            this.rows = rows;
+        }
+    }//end Match
+
+    static final long TTL_MILLIS = Long.getLong("airline.refdata.ttlMillis", 60000L);
+
+    private static final int[] NO_ROWS = new int[0];
+
+    /*
+     * One loaded copy of a table: the rows and the row numbers of each key.
+     */
+    private static class Snapshot {
+        final QueryResult rows;
+        final Map<String, int[]> index;
+        final long loadedAt;
+
+        Snapshot(QueryResult rows, Map<String, int[]> index, long loadedAt) {
+            this.rows = rows;
+            this.index = index;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final AirlineManagement esql;
+    private final long ttlMillis;
+    private final Snapshot[] snapshots = new Snapshot[Table.values().length];
+    // set by invalidate, cleared by the reload that follows it
+    private final boolean[] invalid = new boolean[Table.values().length];
+    private final Object[] locks = new Object[Table.values().length];
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private ScheduledExecutorService refresher = null;
+
+    public RefData(AirlineManagement esql) {
+        this(esql, TTL_MILLIS);
+    }
+
+    public RefData(AirlineManagement esql, long ttlMillis) {
+        this.esql = esql;
+        this.ttlMillis = Math.max(1000L, ttlMillis);
+        for (int i = 0; i < locks.length; ++i) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Loads every table and starts refreshing them in the background.
+     *
+     * @throws java.sql.SQLException when a table cannot be loaded
+     */
+    public synchronized void start() throws SQLException {
+        for (Table table : Table.values()) {
+            reload(table);
+        }
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "refdata-refresher");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        // reload at half the time to live so readers find a fresh snapshot
+        long period = ttlMillis / 2;
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                refreshStale(ttlMillis / 2);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }//end start
+
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * Drops the snapshot of a table; the next lookup reloads it.
+     */
+    public void invalidate(Table table) {
+        synchronized (locks[table.ordinal()]) {
+            invalid[table.ordinal()] = true;
+        }
+    }
+
+    public void invalidateAll() {
+        for (Table table : Table.values()) {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * @return whether a row with the given key exists
+     * @throws java.sql.SQLException when the table has to be loaded and
+     * cannot be
+     */
+    public boolean exists(Table table, String key) throws SQLException {
+        return key != null && snapshot(table).index.containsKey(key);
+    }
+
+    /**
+     * @return the rows with the given key, in table order; no rows when
+     * there are none
+     * @throws java.sql.SQLException when the table has to be loaded and
+     * cannot be
+     */
+    public Match find(Table table, String key) throws SQLException {
+        Snapshot s = snapshot(table);
+        int[] rows = key == null ? null : s.index.get(key);
+        return new Match(s.rows, rows == null ? NO_ROWS : rows);
+    }
+
+    /**
+     * @return every cached row of a table; the result must not be modified
+     * @throws java.sql.SQLException when the table has to be loaded and
+     * cannot be
+     */
+    public QueryResult rows(Table table) throws SQLException {
+        return snapshot(table).rows;
+    }
+
+    /**
+     * @return the value of a column in the row with the given key, or null
+     * when there is no such row
+     * @throws java.sql.SQLException when the table has to be loaded and
+     * cannot be
+     */
+    public String lookup(Table table, String key, String column) throws SQLException {
+        Snapshot s = snapshot(table);
+        int[] rows = key == null ? null : s.index.get(key);
+        if (rows == null) {
+            return null;
+        }
+        return s.rows.getString(rows[0], s.rows.columnIndex(column));
+    }
+
+    public boolean flightExists(String flightNumber) throws SQLException {
+        return exists(Table.FLIGHT, flightNumber);
+    }
+
+    public boolean planeExists(String planeId) throws SQLException {
+        return exists(Table.PLANE, planeId);
+    }
+
+    public boolean pilotExists(String pilotId) throws SQLException {
+        return exists(Table.PILOT, pilotId);
+    }
+
+    public boolean technicianExists(String technicianId) throws SQLException {
+        return exists(Table.TECHNICIAN, technicianId);
+    }
+
+    /**
+     * @return the number of lookups answered and the number of table loads
+     */
+    public String stats() {
+        return "refdata hits=" + hits.get() + " loads=" + loads.get();
+    }
+
+    /*
+     * Returns the current snapshot, reading through when it is missing,
+     * invalidated or past its time to live.
+     */
+    private Snapshot snapshot(Table table) throws SQLException {
+        int t = table.ordinal();
+        Snapshot s;
+        boolean stale;
+        synchronized (locks[t]) {
+            s = snapshots[t];
+            stale = s == null || invalid[t] || System.currentTimeMillis() - s.loadedAt >= ttlMillis;
+        }
+        if (!stale) {
+            hits.incrementAndGet();
+            return s;
+        }
+        try {
+            return reload(table);
+        } catch (SQLException e) {
+            if (s == null) {
+                throw e;
+            }
+            // the database is unreachable; a stale copy beats no answer
+            return s;
+        }
+    }//end snapshot
+
+    private void refreshStale(long maxAgeMillis) {
+        for (Table table : Table.values()) {
+            Snapshot s;
+            synchronized (locks[table.ordinal()]) {
+                s = snapshots[table.ordinal()];
+            }
+            if (s != null && System.currentTimeMillis() - s.loadedAt < maxAgeMillis) {
+                continue;
+            }
+            try {
+                reload(table);
+            } catch (SQLException e) {
+                // keep the previous snapshot and retry on the next round
+            }
+        }
+    }//end refreshStale
+
+    private Snapshot reload(Table table) throws SQLException {
+        int t = table.ordinal();
+        // taken before the query so an invalidate during the load is kept
+        synchronized (locks[t]) {
+            invalid[t] = false;
+        }
+        long loadedAt = System.currentTimeMillis();
+        QueryResult rows;
+        try {
+            rows = esql.executeQueryForResult(table.query);
+        } catch (SQLException e) {
+            invalidate(table);
+            throw e;
+        }
+        Snapshot s = new Snapshot(rows, index(rows, rows.columnIndex(table.key)), loadedAt);
+        loads.incrementAndGet();
+        synchronized (locks[t]) {
+            snapshots[t] = s;
+        }
+        return s;
+    }//end reload
+
+    private static Map<String, int[]> index(QueryResult rows, int keyColumn) {
+        Map<String, int[]> index = new HashMap<String, int[]>(rows.rowCount() * 2);
+        for (int row = 0; row < rows.rowCount(); ++row) {
+            String key = rows.getString(row, keyColumn);
+            int[] existing = index.get(key);
+            if (existing == null) {
+                index.put(key, new int[] {row});
+            } else {
+                int[] grown = Arrays.copyOf(existing, existing.length + 1);
+                grown[existing.length] = row;
+                index.put(key, grown);
+            }
+        }
+        return index;
+    }//end index
+
+}//end RefData
@@ -0,0 +1,233 @@
+import java.sql.SQLException;
+
+/**
+ * Books and cancels seats on flight instances. A booking is one transaction:
+ * a conditional UPDATE claims a seat only while SeatsSold is below
+ * SeatsTotal, and the reservation is inserted in the same transaction. The
+ * UPDATE holds the row lock of the flight instance until commit, so
+ * concurrent bookings on the same instance queue on that lock instead of
+ * overselling, and a booking that finds no seat left is waitlisted.
+ *
+ * A cancellation takes the same lock, so it either hands the freed seat to
+ * the oldest waitlisted reservation or gives it back to SeatsSold, and never
+ * races a booking for it.
+ *
+ */
+public class ReservationEngine {
+
+    /**
+     * The outcome of a booking.
+     */
+    public static class Booking {
+        public final String reservationId;
+        public final String status;
+        // seats still open on the flight instance after this booking
+        public final int seatsOpen;
+
+        Booking(String reservationId, String status, int seatsOpen) {
+            this.reservationId = reservationId;
+            this.status = status;
+            this.seatsOpen = seatsOpen;
+        }
+    }//end Booking
+
+    public static final String RESERVED = "reserved";
+    public static final String WAITLIST = "waitlist";
+
+    // claims a seat if one is open; no row means the flight is full or unknown
+    static final String CLAIM_SEAT =
+            "UPDATE FlightInstance SET SeatsSold = SeatsSold + 1"
+            + " WHERE FlightInstanceID = ? AND SeatsSold < SeatsTotal"
+            + " RETURNING SeatsTotal - SeatsSold";
+
+    // locks a full instance so waitlist entries queue behind seat claims
+    static final String LOCK_INSTANCE =
+            "SELECT SeatsTotal - SeatsSold FROM FlightInstance WHERE FlightInstanceID = ? FOR UPDATE";
+
+    // copies the date of the flight instance, which partitioned tables route
+    // the row by; no row means the instance does not exist
+    static final String INSERT_RESERVATION =
+            "INSERT INTO Reservation(ReservationID, CustomerID, FlightInstanceID, Status, FlightDate)"
+            + " SELECT ?, ?, FlightInstanceID, ?, FlightDate FROM FlightInstance WHERE FlightInstanceID = ?";
+
+    /**
+     * The outcome of a cancellation.
+     */
+    public static class Cancellation {
+        public final int flightInstanceId;
+        // the status the cancelled reservation had
+        public final String status;
+        // the waitlisted reservation that took the seat, or null
+        public final String promotedReservationId;
+
+        Cancellation(int flightInstanceId, String status, String promotedReservationId) {
+            this.flightInstanceId = flightInstanceId;
+            this.status = status;
+            this.promotedReservationId = promotedReservationId;
+        }
+    }//end Cancellation
+
+    static final String DELETE_RESERVATION =
+            "DELETE FROM Reservation WHERE ReservationID = ? RETURNING FlightInstanceID, Status";
+
+    static final String LOCK_INSTANCE_ROW =
+            "SELECT FlightInstanceID FROM FlightInstance WHERE FlightInstanceID = ? FOR UPDATE";
+
+    // the oldest waitlisted reservation is found through Waitlist_index, so
+    // the cost does not depend on how long the waitlist is
+    static final String PROMOTE_OLDEST_WAITLIST =
+            "UPDATE Reservation SET Status = 'reserved' WHERE ReservationID = ("
+            + "SELECT ReservationID FROM Reservation"
+            + " WHERE FlightInstanceID = ? AND Status = 'waitlist'"
+            + " ORDER BY length(ReservationID), ReservationID LIMIT 1)"
+            + " RETURNING ReservationID";
+
+    static final String RELEASE_SEAT =
+            "UPDATE FlightInstance SET SeatsSold = SeatsSold - 1 WHERE FlightInstanceID = ? AND SeatsSold > 0";
+
+    /*
+     * Fills the open seats of every flight instance from its waitlist in one
+     * statement: rank each instance's waitlist by age, promote as many as it
+     * has open seats, and add the promotions to SeatsSold. The open seats
+     * are read with FOR UPDATE so bookings cannot take them meanwhile. The
+     * waitlist is read from the statement snapshot, so the update checks the
+     * status again: a row a concurrent cancel promoted while this waited for
+     * the lock is neither promoted nor counted twice.
+     */
+    static final String RECONCILE_WAITLISTS =
+            "WITH open_seats AS ("
+            + "SELECT FlightInstanceID, SeatsTotal - SeatsSold AS seats FROM FlightInstance"
+            + " WHERE SeatsSold < SeatsTotal FOR UPDATE"
+            + "), ranked AS ("
+            + "SELECT r.ReservationID, r.FlightInstanceID, row_number() OVER ("
+            + "PARTITION BY r.FlightInstanceID ORDER BY length(r.ReservationID), r.ReservationID) AS position"
+            + " FROM Reservation r JOIN open_seats o ON o.FlightInstanceID = r.FlightInstanceID"
+            + " WHERE r.Status = 'waitlist'"
+            + "), promoted AS ("
+            + "UPDATE Reservation r SET Status = 'reserved' FROM ranked k, open_seats o"
+            + " WHERE r.ReservationID = k.ReservationID AND o.FlightInstanceID = k.FlightInstanceID"
+            + " AND k.position <= o.seats AND r.Status = 'waitlist'"
+            + " RETURNING r.FlightInstanceID"
+            + "), counts AS ("
+            + "SELECT FlightInstanceID, COUNT(*) AS promotions FROM promoted GROUP BY FlightInstanceID"
+            + ") UPDATE FlightInstance f SET SeatsSold = f.SeatsSold + c.promotions FROM counts c"
+            + " WHERE f.FlightInstanceID = c.FlightInstanceID"
+            + " RETURNING f.FlightInstanceID, c.promotions AS Promoted";
+
+    private ReservationEngine() {
+    }
+
+    /**
+     * Books a seat for a customer as its own transaction.
+     *
+     * @return the reservation that was created
+     * @throws java.sql.SQLException when the flight instance does not exist
+     * or the booking failed
+     */
+    public static Booking book(AirlineManagement esql, final int customerId, final int flightInstanceId)
+            throws SQLException {
+        // drawn before the transaction, which holds its own pooled connection
+        final String reservationId = esql.ids().nextReservationId();
+        return esql.executeTransaction(new Transaction.Work<Booking>() {
+            public Booking run(Transaction tx) throws SQLException {
+                return book(tx, reservationId, customerId, flightInstanceId);
+            }
+        });
+    }//end book
+
+    /**
+     * Books a seat inside a transaction the caller controls, for example one
+     * that groups many bookings. The reservation id comes from
+     * IdAllocator.nextReservationId.
+     *
+     * @return the reservation that was created
+     * @throws java.sql.SQLException when the flight instance does not exist
+     * or the booking failed
+     */
+    public static Booking book(Transaction tx, String reservationId, int customerId, int flightInstanceId)
+            throws SQLException {
+        String status;
+        int seatsOpen;
+        QueryResult claimed = tx.executeQueryForResult(CLAIM_SEAT, flightInstanceId);
+        if (claimed.rowCount() > 0) {
+            status = RESERVED;
+            seatsOpen = claimed.getInt(0, 0);
+        } else {
+            QueryResult instance = tx.executeQueryForResult(LOCK_INSTANCE, flightInstanceId);
+            if (instance.rowCount() < 1) {
+                throw new SQLException("FLIGHT INSTANCE " + flightInstanceId + " DOES NOT EXIST");
+            }
+            status = WAITLIST;
+            seatsOpen = instance.getInt(0, 0);
+        }
+
+        if (tx.executeUpdate(INSERT_RESERVATION, reservationId, customerId, status, flightInstanceId) < 1) {
+            throw new SQLException("FLIGHT INSTANCE " + flightInstanceId + " DOES NOT EXIST");
+        }
+        return new Booking(reservationId, status, seatsOpen);
+    }//end book
+
+    /**
+     * Cancels a reservation as its own transaction. When a reserved seat is
+     * freed, the oldest waitlisted reservation on the same flight instance is
+     * promoted to reserved; when nobody is waiting the seat is released.
+     *
+     * @return what was cancelled and promoted, or null when the reservation
+     * does not exist
+     * @throws java.sql.SQLException when the cancellation failed
+     */
+    public static Cancellation cancel(AirlineManagement esql, final String reservationId) throws SQLException {
+        return esql.executeTransaction(new Transaction.Work<Cancellation>() {
+            public Cancellation run(Transaction tx) throws SQLException {
+                return cancel(tx, reservationId);
+            }
+        });
+    }//end cancel
+
+    /**
+     * Cancels a reservation inside a transaction the caller controls.
+     *
+     * @return what was cancelled and promoted, or null when the reservation
+     * does not exist
+     * @throws java.sql.SQLException when the cancellation failed
+     */
+    public static Cancellation cancel(Transaction tx, String reservationId) throws SQLException {
+        QueryResult deleted = tx.executeQueryForResult(DELETE_RESERVATION, reservationId);
+        if (deleted.rowCount() < 1) {
+            return null;
+        }
+        int flightInstanceId = deleted.getInt(0, 0);
+        String status = deleted.getString(0, 1);
+        if (!RESERVED.equals(status)) {
+            // waitlisted and flown reservations hold no open seat
+            return new Cancellation(flightInstanceId, status, null);
+        }
+
+        // serialize with bookings on the instance before handing the seat on
+        tx.executeQueryForResult(LOCK_INSTANCE_ROW, flightInstanceId);
+        QueryResult promoted = tx.executeQueryForResult(PROMOTE_OLDEST_WAITLIST, flightInstanceId);
+        if (promoted.rowCount() > 0) {
+            // the seat changes hands, SeatsSold stays the same
+            return new Cancellation(flightInstanceId, status, promoted.getString(0, 0));
+        }
+        tx.executeUpdate(RELEASE_SEAT, flightInstanceId);
+        return new Cancellation(flightInstanceId, status, null);
+    }//end cancel
+
+    /**
+     * Promotes waitlisted reservations on every flight instance that has
+     * open seats, oldest first, in a single set-based statement.
+     *
+     * @return one row per flight instance that had promotions, with the
+     * number promoted
+     * @throws java.sql.SQLException when the reconciliation failed
+     */
+    public static QueryResult reconcileWaitlists(AirlineManagement esql) throws SQLException {
+        return esql.executeTransaction(new Transaction.Work<QueryResult>() {
+            public QueryResult run(Transaction tx) throws SQLException {
+                return tx.executeQueryForResult(RECONCILE_WAITLISTS);
+            }
+        });
+    }//end reconcileWaitlists
+
+}//end ReservationEngine
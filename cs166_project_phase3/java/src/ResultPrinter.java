@@ -0,0 +1,237 @@
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Prints query results as fixed-width columns, the layout the menus have
+ * always used (printf "%-20s"), without going through printf. Cells are
+ * padded by hand into a large byte buffer that is reused by the thread and
+ * written to System.out only when full, so a dump of millions of rows costs
+ * a handful of writes instead of one formatted write per cell.
+ *
+ */
+public class ResultPrinter {
+
+    // width of every column, matching the original "%-20s"
+    public static final int COLUMN_WIDTH = 20;
+
+    private static final int BUFFER_SIZE = Integer.getInteger("airline.printBufferSize", 64 * 1024);
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[Math.max(BUFFER_SIZE, 256)];
+        }
+    };
+
+    private final PrintStream out;
+    private final byte[] buffer;
+    private int length = 0;
+    // characters of the values read by print(ResultSet)
+    private long bytes = 0;
+
+    /**
+     * Creates a printer writing to the current System.out, which is the
+     * session of the calling thread in server mode.
+     */
+    public ResultPrinter() {
+        this(System.out);
+    }
+
+    public ResultPrinter(PrintStream out) {
+        this.out = out;
+        this.buffer = BUFFERS.get();
+    }
+
+    /**
+     * Streams a result set row by row. Nothing is printed for an empty
+     * result. Rows are never held in memory, so with a fetch size set on the
+     * statement memory use stays flat whatever the size of the result.
+     *
+     * @param rs an open result set positioned before the first row
+     * @return the number of rows printed
+     * @throws java.sql.SQLException when reading the result set fails
+     */
+    public int print(ResultSet rs) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int numCol = rsmd.getColumnCount();
+        int rowCount = 0;
+        while (rs.next()) {
+            if (rowCount == 0) {
+                for (int i = 1; i <= numCol; ++i) {
+                    cell(rsmd.getColumnName(i));
+                }
+                newLine();
+            }
+            for (int i = 1; i <= numCol; ++i) {
+                String value = rs.getString(i);
+                if (value != null) {
+                    bytes += value.length();
+                }
+                cell(value);
+            }
+            newLine();
+            ++rowCount;
+        }//end while
+        flush();
+        return rowCount;
+    }//end print
+
+    /**
+     * @return the approximate size in bytes of the values streamed by
+     * print(ResultSet)
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Prints an already materialized result in the same layout.
+     *
+     * @return the number of rows printed
+     */
+    public int print(QueryResult result) {
+        return print(result, result.rowCount());
+    }
+
+    /**
+     * Prints the first rows of an already materialized result, for example
+     * to leave out a trailing total row.
+     *
+     * @return the number of rows printed
+     */
+    public int print(QueryResult result, int rows) {
+        int numCol = result.columnCount();
+        int rowCount = Math.min(rows, result.rowCount());
+        if (rowCount <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < numCol; ++i) {
+            cell(result.columnName(i));
+        }
+        newLine();
+        for (int row = 0; row < rowCount; ++row) {
+            for (int i = 0; i < numCol; ++i) {
+                cell(result.getString(row, i));
+            }
+            newLine();
+        }
+        flush();
+        return rowCount;
+    }//end print
+
+    /**
+     * Prints the chosen rows of an already materialized result, for example
+     * the rows of one key in a cached table.
+     *
+     * @return the number of rows printed
+     */
+    public int print(QueryResult result, int[] rows) {
+        int[] columns = new int[result.columnCount()];
+        for (int i = 0; i < columns.length; ++i) {
+            columns[i] = i;
+        }
+        return print(result, rows, columns);
+    }
+
+    /**
+     * Prints the chosen rows and columns of an already materialized result.
+     *
+     * @return the number of rows printed
+     */
+    public int print(QueryResult result, int[] rows, int[] columns) {
+        if (rows.length == 0) {
+            return 0;
+        }
+        for (int col : columns) {
+            cell(result.columnName(col));
+        }
+        newLine();
+        for (int row : rows) {
+            for (int col : columns) {
+                cell(result.getString(row, col));
+            }
+            newLine();
+        }
+        flush();
+        return rows.length;
+    }//end print
+
+    /**
+     * Appends one left-aligned cell padded to the column width. Like printf,
+     * longer values are not truncated and null prints as "null".
+     */
+    public void cell(String value) {
+        if (value == null) {
+            value = "null";
+        }
+        int len = value.length();
+        if (len > COLUMN_WIDTH || !isAscii(value)) {
+            // rare path: let the JDK encode, then pad by character count
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            write(bytes, 0, bytes.length);
+            pad(COLUMN_WIDTH - value.codePointCount(0, len));
+            return;
+        }
+        ensure(COLUMN_WIDTH);
+        for (int i = 0; i < len; ++i) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+        for (int i = len; i < COLUMN_WIDTH; ++i) {
+            buffer[length++] = ' ';
+        }
+    }//end cell
+
+    public void newLine() {
+        ensure(1);
+        buffer[length++] = '\n';
+    }
+
+    /**
+     * Writes the buffered bytes to the output stream.
+     */
+    public void flush() {
+        if (length > 0) {
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+        out.flush();
+    }
+
+    private void pad(int n) {
+        for (int i = 0; i < n; ++i) {
+            ensure(1);
+            buffer[length++] = ' ';
+        }
+    }
+
+    private void write(byte[] bytes, int off, int len) {
+        while (len > 0) {
+            ensure(1);
+            int n = Math.min(len, buffer.length - length);
+            System.arraycopy(bytes, off, buffer, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    // drains the buffer when fewer than n bytes are free
+    private void ensure(int n) {
+        if (buffer.length - length < n) {
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0, n = value.length(); i < n; ++i) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}//end ResultPrinter
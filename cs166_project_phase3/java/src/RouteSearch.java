@@ -0,0 +1,671 @@
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds itineraries between two cities, with up to
+ * airline.route.maxConnections changes of plane, over an in-memory graph of
+ * the scheduled flights. Cities are the nodes; every row of
+ * FlightAvailability, one flight instance flying one scheduled departure,
+ * is an edge that leaves at its departure time and lands at its arrival
+ * time. A connection needs airline.route.minConnectionMinutes on the ground
+ * and may wait up to airline.route.maxLayoverHours, into the following
+ * days. Itineraries are ranked by earliest arrival, fewest stops or lowest
+ * fare.
+ *
+ * The graph is loaded one flight date at a time, the first time a search
+ * needs that date, and is kept for airline.route.ttlMillis; a date past its
+ * time to live or invalidated is read again on its next search. A loaded
+ * date is immutable apart from its open seats, which bookings and
+ * cancellations of this process adjust in place, so searches answer from
+ * memory and any number of them can run at once (the batch runner's route
+ * command runs them on its reader threads).
+ *
+ * Schedule changes do not wait for the time to live. FlightAvailabilityChange
+ * holds a version per flight date that triggers raise whenever a flight of
+ * the date is added, removed or rescheduled, and at most once every
+ * airline.route.checkMillis a search reads the versions of the dates held
+ * and drops those that changed. Without that table, on a database set up
+ * before it existed, dates are only read again after their time to live.
+ *
+ */
+public class RouteSearch {
+
+    /**
+     * How itineraries are ranked. Ties are broken by the other two.
+     */
+    public enum Order { ARRIVAL, STOPS, FARE }
+
+    static final int MAX_CONNECTIONS = Math.max(0, Integer.getInteger("airline.route.maxConnections", 2));
+    static final int MIN_CONNECTION_MINUTES = Integer.getInteger("airline.route.minConnectionMinutes", 45);
+    static final int MAX_LAYOVER_HOURS = Math.max(1, Integer.getInteger("airline.route.maxLayoverHours", 24));
+    static final int RESULTS = Math.max(1, Integer.getInteger("airline.route.results", 10));
+    static final long TTL_MILLIS = Long.getLong("airline.route.ttlMillis", 60000L);
+    static final long CHECK_MILLIS = Long.getLong("airline.route.checkMillis", 1000L);
+    // dates kept in memory before the oldest loaded are dropped
+    static final int MAX_DAYS = 62;
+
+    static final String DAY_QUERY =
+            "SELECT DepartureCity, ArrivalCity, FlightNumber, FlightInstanceID, DepartureTime, ArrivalTime,"
+            + " TicketCost, SeatsOpen FROM FlightAvailability WHERE FlightDate = ?";
+
+    static final String VERSION_QUERY = "SELECT Version FROM FlightAvailabilityChange WHERE FlightDate = ?";
+
+    static final String CHANGES_QUERY =
+            "SELECT FlightDate, Version FROM FlightAvailabilityChange WHERE FlightDate >= ? AND FlightDate <= ?";
+
+    // the version of a date read without FlightAvailabilityChange
+    static final long UNKNOWN_VERSION = -1L;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final Leg[] NO_LEGS = new Leg[0];
+
+    /**
+     * One flight of an itinerary.
+     */
+    public static class Leg {
+        public final String from;
+        public final String to;
+        public final String flightNumber;
+        public final int flightInstanceId;
+        public final LocalDate date;
+        public final LocalTime departureTime;
+        public final LocalTime arrivalTime;
+        // in cents
+        public final long fare;
+        // minutes after midnight of the flight date; arrival past midnight
+        // is more than a day
+        final int departs;
+        final int arrives;
+        // shared by the legs of one flight instance
+        final AtomicInteger seats;
+
+        Leg(String from, String to, String flightNumber, int flightInstanceId, LocalDate date,
+                LocalTime departureTime, LocalTime arrivalTime, long fare, AtomicInteger seats) {
+            this.from = from;
+            this.to = to;
+            this.flightNumber = flightNumber;
+            this.flightInstanceId = flightInstanceId;
+            this.date = date;
+            this.departureTime = departureTime;
+            this.arrivalTime = arrivalTime;
+            this.fare = fare;
+            this.seats = seats;
+            this.departs = departureTime.getHour() * 60 + departureTime.getMinute();
+            int arrival = arrivalTime.getHour() * 60 + arrivalTime.getMinute();
+            this.arrives = arrival > departs ? arrival : arrival + MINUTES_PER_DAY;
+        }
+
+        public int seatsOpen() {
+            return seats.get();
+        }
+    }//end Leg
+
+    /**
+     * A way from one city to another, its legs in flying order.
+     */
+    public static class Itinerary {
+        public final List<Leg> legs;
+        // minutes after midnight of the first flight date
+        final int departs;
+        final int arrives;
+        public final long fare;
+
+        Itinerary(List<Leg> legs, int departs, int arrives, long fare) {
+            this.legs = legs;
+            this.departs = departs;
+            this.arrives = arrives;
+            this.fare = fare;
+        }
+
+        public int stops() {
+            return legs.size() - 1;
+        }
+
+        /**
+         * @return the days between the first departure and the arrival
+         */
+        public int arrivalDay() {
+            return arrives / MINUTES_PER_DAY;
+        }
+
+        public LocalTime arrivalTime() {
+            return legs.get(legs.size() - 1).arrivalTime;
+        }
+
+        public LocalTime departureTime() {
+            return legs.get(0).departureTime;
+        }
+
+        /**
+         * @return the minutes from the first departure to the last arrival
+         */
+        public int minutes() {
+            return arrives - departs;
+        }
+
+        public BigDecimal fareAmount() {
+            return BigDecimal.valueOf(fare, 2);
+        }
+    }//end Itinerary
+
+    /*
+     * The legs of one flight date, by departure city in departure order.
+     */
+    static class Day {
+        final Map<String, Leg[]> departures;
+        final Map<Integer, AtomicInteger> seats;
+        // of the date's FlightAvailabilityChange row, 0 when it has none
+        final long version;
+        final long loadedAt;
+
+        Day(List<Leg> legs, long version, long loadedAt) {
+            Map<String, List<Leg>> byCity = new HashMap<String, List<Leg>>();
+            seats = new HashMap<Integer, AtomicInteger>();
+            for (Leg leg : legs) {
+                List<Leg> from = byCity.get(leg.from);
+                if (from == null) {
+                    from = new ArrayList<Leg>();
+                    byCity.put(leg.from, from);
+                }
+                from.add(leg);
+                seats.put(leg.flightInstanceId, leg.seats);
+            }
+            departures = new HashMap<String, Leg[]>(byCity.size() * 2);
+            for (Map.Entry<String, List<Leg>> e : byCity.entrySet()) {
+                Leg[] from = e.getValue().toArray(NO_LEGS);
+                Arrays.sort(from, BY_DEPARTURE);
+                departures.put(e.getKey(), from);
+            }
+            this.version = version;
+            this.loadedAt = loadedAt;
+        }
+
+        Leg[] from(String city) {
+            Leg[] legs = departures.get(city);
+            return legs == null ? NO_LEGS : legs;
+        }
+    }//end Day
+
+    private static final Comparator<Leg> BY_DEPARTURE = new Comparator<Leg>() {
+        public int compare(Leg a, Leg b) {
+            return Integer.compare(a.departs, b.departs);
+        }
+    };
+
+    private final AirlineManagement esql;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<LocalDate, Day> days = new ConcurrentHashMap<LocalDate, Day>();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    // when the versions of the held dates were last read
+    private final AtomicLong checkedAt = new AtomicLong();
+
+    public RouteSearch(AirlineManagement esql) {
+        this(esql, TTL_MILLIS);
+    }
+
+    public RouteSearch(AirlineManagement esql, long ttlMillis) {
+        this.esql = esql;
+        this.ttlMillis = Math.max(1000L, ttlMillis);
+    }
+
+    /**
+     * Finds the best itineraries with the configured number of connections.
+     *
+     * @see #search(String, String, LocalDate, RouteSearch.Order, int)
+     */
+    public List<Itinerary> search(String from, String to, LocalDate date, Order order) throws SQLException {
+        return search(from, to, date, order, MAX_CONNECTIONS);
+    }
+
+    /**
+     * Finds the airline.route.results best itineraries whose first flight
+     * leaves the departure city on the given date. Only flights with open
+     * seats are used and no itinerary passes through a city twice.
+     *
+     * @param maxConnections the most changes of plane; 0 finds direct flights
+     * @return the itineraries, best first; none when the cities are not
+     * connected that day
+     * @throws java.sql.SQLException when a flight date has to be loaded and
+     * cannot be
+     */
+    public List<Itinerary> search(String from, String to, LocalDate date, Order order, int maxConnections)
+            throws SQLException {
+        searches.incrementAndGet();
+        Search search = new Search(to, date, order, Math.max(0, maxConnections) + 1);
+        for (Leg leg : day(date).from(from)) {
+            if (leg.seats.get() > 0 && !leg.to.equals(from)) {
+                search.offer(null, leg, 0);
+            }
+        }
+        return search.run();
+    }//end search
+
+    /**
+     * Records the open seats of a flight instance after a booking.
+     */
+    public void seatsOpen(int flightInstanceId, int seatsOpen) {
+        for (Day day : days.values()) {
+            AtomicInteger seats = day.seats.get(flightInstanceId);
+            if (seats != null) {
+                seats.set(seatsOpen);
+            }
+        }
+    }
+
+    /**
+     * Adds to the open seats of a flight instance, after a cancellation
+     * that released a seat.
+     */
+    public void seatsReleased(int flightInstanceId, int released) {
+        for (Day day : days.values()) {
+            AtomicInteger seats = day.seats.get(flightInstanceId);
+            if (seats != null) {
+                seats.addAndGet(released);
+            }
+        }
+    }
+
+    /**
+     * Drops a flight date; the next search that needs it reads it again.
+     */
+    public void invalidate(LocalDate date) {
+        days.remove(date);
+    }
+
+    public void invalidateAll() {
+        days.clear();
+    }
+
+    /**
+     * @return the number of searches answered, the number of flight dates
+     * read and the number held
+     */
+    public String stats() {
+        return "routes searches=" + searches.get() + " loads=" + loads.get() + " days=" + days.size();
+    }
+
+    /*
+     * One search: a label-setting search over (city, legs flown) states.
+     * Labels leave the queue best first and each state settles at most
+     * airline.route.results of them, so the first labels to land at the
+     * destination are the best itineraries. A label is not queued when its
+     * state, or the destination, already holds that many better labels:
+     * it could never be settled, nor could anything continuing it.
+     */
+    private class Search {
+        final String to;
+        final LocalDate date;
+        final int maxLegs;
+        final LabelOrder order;
+        final PriorityQueue<Label> queue;
+        final Map<String, State> states = new HashMap<String, State>();
+        final Best arrivals;
+
+        Search(String to, LocalDate date, Order order, int maxLegs) {
+            this.to = to;
+            this.date = date;
+            this.maxLegs = maxLegs;
+            this.order = new LabelOrder(order);
+            this.queue = new PriorityQueue<Label>(64, this.order);
+            this.arrivals = new Best(this.order);
+        }
+
+        List<Itinerary> run() throws SQLException {
+            List<Itinerary> results = new ArrayList<Itinerary>(RESULTS);
+            while (!queue.isEmpty() && results.size() < RESULTS) {
+                Label label = queue.poll();
+                if (label.leg.to.equals(to)) {
+                    results.add(label.itinerary());
+                    continue;
+                }
+                State state = state(label.leg.to);
+                if (state.settled[label.legs] >= RESULTS || arrivals.beats(label)) {
+                    // offered before enough better labels were known
+                    continue;
+                }
+                ++state.settled[label.legs];
+                connect(label);
+            }
+            return results;
+        }//end run
+
+        /*
+         * Queues the label of flying a leg after a label, or as the first
+         * leg when previous is null. The bounds are checked before the label
+         * is made, since most offers are turned down.
+         */
+        void offer(Label previous, Leg leg, int offset) {
+            int legs = previous == null ? 1 : previous.legs + 1;
+            int departs = previous == null ? leg.departs : previous.departs;
+            int arrives = offset * MINUTES_PER_DAY + leg.arrives;
+            long fare = (previous == null ? 0L : previous.fare) + leg.fare;
+            if (arrivals.beats(arrives, legs, fare, departs)) {
+                return;
+            }
+            Best best = null;
+            if (!leg.to.equals(to)) {
+                if (legs >= maxLegs) {
+                    // out of connections short of the destination
+                    return;
+                }
+                best = state(leg.to).best[legs];
+                if (best.beats(arrives, legs, fare, departs)) {
+                    return;
+                }
+            }
+            if (previous != null && previous.visited(leg.to)) {
+                return;
+            }
+            Label label = new Label(previous, leg, offset);
+            (best == null ? arrivals : best).add(label);
+            queue.add(label);
+        }//end offer
+
+        /*
+         * Offers every flight leaving where a label landed within the
+         * connection window, which can reach into the following flight
+         * dates, except flights back to a city the label passed through.
+         */
+        void connect(Label label) throws SQLException {
+            int earliest = label.arrives + MIN_CONNECTION_MINUTES;
+            int latest = label.arrives + MAX_LAYOVER_HOURS * 60;
+            for (int offset = earliest / MINUTES_PER_DAY; offset <= latest / MINUTES_PER_DAY; ++offset) {
+                Leg[] legs = day(date.plusDays(offset)).from(label.leg.to);
+                int base = offset * MINUTES_PER_DAY;
+                for (int i = firstDeparting(legs, earliest - base); i < legs.length; ++i) {
+                    Leg next = legs[i];
+                    if (base + next.departs > latest) {
+                        break;
+                    }
+                    if (next.seats.get() > 0) {
+                        offer(label, next, offset);
+                    }
+                }
+            }
+        }//end connect
+
+        State state(String city) {
+            State state = states.get(city);
+            if (state == null) {
+                state = new State(maxLegs, order);
+                states.put(city, state);
+            }
+            return state;
+        }
+    }//end Search
+
+    /*
+     * The labels of one city, by the number of legs flown.
+     */
+    private static class State {
+        final int[] settled;
+        final Best[] best;
+
+        State(int maxLegs, LabelOrder order) {
+            settled = new int[maxLegs + 1];
+            best = new Best[maxLegs + 1];
+            for (int i = 0; i < best.length; ++i) {
+                best[i] = new Best(order);
+            }
+        }
+    }//end State
+
+    /*
+     * The airline.route.results best labels offered to a state, worst on top.
+     */
+    private static class Best {
+        final LabelOrder order;
+        final PriorityQueue<Label> labels;
+
+        Best(LabelOrder order) {
+            this.order = order;
+            this.labels = new PriorityQueue<Label>(RESULTS + 1, Collections.reverseOrder(order));
+        }
+
+        // whether the state already holds enough labels at least as good
+        boolean beats(Label label) {
+            return beats(label.arrives, label.legs, label.fare, label.departs);
+        }
+
+        boolean beats(int arrives, int legs, long fare, int departs) {
+            return labels.size() >= RESULTS && order.compare(arrives, legs, fare, departs, labels.peek()) >= 0;
+        }
+
+        void add(Label label) {
+            labels.add(label);
+            if (labels.size() > RESULTS) {
+                labels.poll();
+            }
+        }
+    }//end Best
+
+    /*
+     * A way to reach a city: the last leg flown and the label it continued.
+     * Arrival, fare and legs only grow along a chain, so labels leave the
+     * queue in the order of the itineraries they can still become.
+     */
+    private static class Label {
+        final Label previous;
+        final Leg leg;
+        final int legs;
+        // minutes after midnight of the search date
+        final int departs;
+        final int arrives;
+        final long fare;
+
+        Label(Label previous, Leg leg, int offset) {
+            this.previous = previous;
+            this.leg = leg;
+            this.legs = previous == null ? 1 : previous.legs + 1;
+            this.departs = previous == null ? leg.departs : previous.departs;
+            this.arrives = offset * MINUTES_PER_DAY + leg.arrives;
+            this.fare = (previous == null ? 0L : previous.fare) + leg.fare;
+        }
+
+        // whether the chain already passed through the city
+        boolean visited(String city) {
+            for (Label l = this; l != null; l = l.previous) {
+                if (l.leg.from.equals(city) || l.leg.to.equals(city)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Itinerary itinerary() {
+            Leg[] path = new Leg[legs];
+            for (Label l = this; l != null; l = l.previous) {
+                path[l.legs - 1] = l.leg;
+            }
+            return new Itinerary(Collections.unmodifiableList(Arrays.asList(path)), departs, arrives, fare);
+        }
+    }//end Label
+
+    /*
+     * Orders labels by the ranking of the search. Ties are broken by the
+     * other two criteria, then by the later departure, which waits less.
+     */
+    private static class LabelOrder implements Comparator<Label> {
+        final Order order;
+
+        LabelOrder(Order order) {
+            this.order = order;
+        }
+
+        public int compare(Label a, Label b) {
+            return compare(a.arrives, a.legs, a.fare, a.departs, b);
+        }
+
+        int compare(int arrives, int legs, long fare, int departs, Label b) {
+            int byArrival = Integer.compare(arrives, b.arrives);
+            int byStops = Integer.compare(legs, b.legs);
+            int byFare = Long.compare(fare, b.fare);
+            int c;
+            switch (order) {
+                case ARRIVAL:
+                    c = byArrival != 0 ? byArrival : byStops != 0 ? byStops : byFare;
+                    break;
+                case STOPS:
+                    c = byStops != 0 ? byStops : byArrival != 0 ? byArrival : byFare;
+                    break;
+                default:
+                    c = byFare != 0 ? byFare : byArrival != 0 ? byArrival : byStops;
+                    break;
+            }
+            return c != 0 ? c : Integer.compare(b.departs, departs);
+        }
+    }//end LabelOrder
+
+    // the index of the first leg departing at or after the given minute
+    private static int firstDeparting(Leg[] legs, int minute) {
+        int low = 0;
+        int high = legs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (legs[mid].departs < minute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * Returns the legs of a flight date, reading them when they are missing
+     * or past their time to live. Two searches may read the same date at
+     * once; the later copy wins.
+     */
+    private Day day(LocalDate date) throws SQLException {
+        dropChanged();
+        Day day = days.get(date);
+        if (day != null && System.currentTimeMillis() - day.loadedAt < ttlMillis) {
+            return day;
+        }
+        try {
+            day = load(date);
+        } catch (SQLException e) {
+            if (day == null) {
+                throw e;
+            }
+            // the database is unreachable; a stale copy beats no answer
+            return day;
+        }
+        if (days.size() >= MAX_DAYS) {
+            evictOldest();
+        }
+        days.put(date, day);
+        return day;
+    }//end day
+
+    /*
+     * Reads the legs of a flight date. The version is read first, so a
+     * change that lands in between makes the date look changed, never
+     * current.
+     */
+    Day load(LocalDate date) throws SQLException {
+        long loadedAt = System.currentTimeMillis();
+        long version;
+        try {
+            QueryResult row = esql.executeQueryForResult(VERSION_QUERY, Date.valueOf(date));
+            version = row.rowCount() > 0 ? row.getLong(0, 0) : 0L;
+        } catch (SQLException e) {
+            version = UNKNOWN_VERSION;
+        }
+        QueryResult rows = esql.executeQueryForResult(DAY_QUERY, Date.valueOf(date));
+        loads.incrementAndGet();
+        List<Leg> legs = new ArrayList<Leg>(rows.rowCount());
+        Map<Integer, AtomicInteger> seats = new HashMap<Integer, AtomicInteger>();
+        for (int row = 0; row < rows.rowCount(); ++row) {
+            if (rows.isNull(row, 0) || rows.isNull(row, 1) || rows.isNull(row, 4) || rows.isNull(row, 5)) {
+                // a flight without cities or times cannot be connected to
+                continue;
+            }
+            int instanceId = rows.getInt(row, 3);
+            AtomicInteger open = seats.get(instanceId);
+            if (open == null) {
+                open = new AtomicInteger(rows.getInt(row, 7));
+                seats.put(instanceId, open);
+            }
+            legs.add(new Leg(rows.getString(row, 0), rows.getString(row, 1), rows.getString(row, 2), instanceId, date,
+                    LocalTime.parse(rows.getString(row, 4)), LocalTime.parse(rows.getString(row, 5)),
+                    Math.round(rows.getDouble(row, 6) * 100), open));
+        }
+        return new Day(legs, version, loadedAt);
+    }//end load
+
+    /*
+     * Drops the held dates whose flights changed since they were read. One
+     * search at a time reads the versions, at most every CHECK_MILLIS; a
+     * failed read leaves the dates to their time to live.
+     */
+    private void dropChanged() {
+        long now = System.currentTimeMillis();
+        long last = checkedAt.get();
+        if (now - last < CHECK_MILLIS || !checkedAt.compareAndSet(last, now)) {
+            return;
+        }
+        LocalDate first = null;
+        LocalDate lastDate = null;
+        for (Map.Entry<LocalDate, Day> e : days.entrySet()) {
+            if (e.getValue().version == UNKNOWN_VERSION) {
+                continue;
+            }
+            if (first == null || e.getKey().isBefore(first)) {
+                first = e.getKey();
+            }
+            if (lastDate == null || e.getKey().isAfter(lastDate)) {
+                lastDate = e.getKey();
+            }
+        }
+        if (first == null) {
+            return;
+        }
+        Map<LocalDate, Long> versions = new HashMap<LocalDate, Long>();
+        try {
+            QueryResult rows = esql.executeQueryForResult(CHANGES_QUERY, Date.valueOf(first), Date.valueOf(lastDate));
+            for (int row = 0; row < rows.rowCount(); ++row) {
+                versions.put(rows.getDate(row, 0), rows.getLong(row, 1));
+            }
+        } catch (SQLException e) {
+            return;
+        }
+        for (Map.Entry<LocalDate, Day> e : days.entrySet()) {
+            Day day = e.getValue();
+            Long version = versions.get(e.getKey());
+            if (day.version != UNKNOWN_VERSION && day.version != (version == null ? 0L : version.longValue())) {
+                days.remove(e.getKey(), day);
+            }
+        }
+    }//end dropChanged
+
+    private void evictOldest() {
+        LocalDate oldest = null;
+        long loadedAt = Long.MAX_VALUE;
+        for (Map.Entry<LocalDate, Day> e : days.entrySet()) {
+            if (e.getValue().loadedAt < loadedAt) {
+                loadedAt = e.getValue().loadedAt;
+                oldest = e.getKey();
+            }
+        }
+        if (oldest != null) {
+            days.remove(oldest);
+        }
+    }//end evictOldest
+
+}//end RouteSearch
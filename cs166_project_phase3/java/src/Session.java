@@ -0,0 +1,156 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The terminal of one operator. The menu handlers read from the static
+ * AirlineManagement.in reader and print to System.out; both are routed to the
+ * Session attached to the current thread, and fall back to the console when
+ * no session is attached. This lets every session of the server run the same
+ * handler code on its own thread.
+ *
+ */
+public class Session {
+
+    /**
+     * Thrown when the terminal of a session reaches end of input.
+     */
+    public static class ClosedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public ClosedException() {
+            super("Session closed");
+        }
+    }
+
+    private static final ThreadLocal<Session> CURRENT = new ThreadLocal<Session>();
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final OutputStream out;
+
+    public Session(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+    }
+
+    /**
+     * Creates a session over plain streams, for example scripted input and
+     * a discarding output when a handler is driven by a harness.
+     */
+    public Session(Reader in, OutputStream out) {
+        this.socket = null;
+        this.in = new BufferedReader(in);
+        this.out = out;
+    }
+
+    /**
+     * Binds this session to the calling thread.
+     */
+    public void attach() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * Unbinds the session from the calling thread and closes its socket.
+     */
+    public void close() {
+        CURRENT.remove();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // ignored.
+        }
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignored.
+        }
+    }//end close
+
+    public String remoteAddress() {
+        return socket == null ? "local" : String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    /**
+     * Routes System.out and System.err through the current session. It is
+     * installed once, when the server starts.
+     */
+    public static void routeStandardStreams() {
+        System.setOut(new PrintStream(new Output(System.out), true));
+        System.setErr(new PrintStream(new Output(System.err), true));
+    }
+
+    /**
+     * The reader behind AirlineManagement.in. Lines are read from the session
+     * of the current thread, or from the wrapped console reader.
+     */
+    public static class Input extends BufferedReader {
+
+        public Input(Reader console) {
+            super(console);
+        }
+
+        public String readLine() throws IOException {
+            Session session = CURRENT.get();
+            String line;
+            if (session == null) {
+                line = super.readLine();
+            } else {
+                // the prompt has no line break, push it to the client first
+                System.out.flush();
+                try {
+                    session.out.flush();
+                    line = session.in.readLine();
+                } catch (IOException e) {
+                    // a reset socket ends the session like end of input
+                    line = null;
+                }
+            }
+            if (line == null) {
+                throw new ClosedException();
+            }
+            return line;
+        }//end readLine
+    }//end Input
+
+    /*
+     * Sends bytes to the session of the current thread, or to the console
+     * stream when none is attached.
+     */
+    private static class Output extends OutputStream {
+        private final OutputStream console;
+
+        Output(OutputStream console) {
+            this.console = console;
+        }
+
+        private OutputStream target() {
+            Session session = CURRENT.get();
+            return session == null ? console : session.out;
+        }
+
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }//end Output
+
+}//end Session
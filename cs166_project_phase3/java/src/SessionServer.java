@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the AirlineManagement menus to many operators from one JVM. Every
+ * client that connects to the local TCP port gets its own Session, with its
+ * own login state and menu loop, while all sessions share the connection
+ * pool and the statement caches of one AirlineManagement instance.
+ *
+ * A client can be as simple as: nc localhost 5166
+ *
+ */
+public class SessionServer {
+
+    private final AirlineManagement esql;
+    private final int port;
+    private final ExecutorService executor;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private ServerSocket serverSocket;
+
+    public SessionServer(AirlineManagement esql, int port) {
+        this.esql = esql;
+        this.port = port;
+        this.executor = newSessionExecutor();
+    }
+
+    /**
+     * Accepts sessions on the loopback interface until the server socket is
+     * closed.
+     *
+     * @throws java.io.IOException when the port cannot be bound
+     */
+    public void serve() throws IOException {
+        serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        Session.routeStandardStreams();
+        System.out.println("Serving sessions on " + serverSocket.getLocalSocketAddress());
+
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    break;
+                }
+                System.err.println("Error - Unable to accept session: " + e.getMessage());
+                continue;
+            }
+            socket.setTcpNoDelay(true);
+            executor.execute(new Runnable() {
+                public void run() {
+                    runSession(socket);
+                }
+            });
+        }//end while
+    }//end serve
+
+    /**
+     * Stops accepting sessions. Sessions already running are interrupted.
+     */
+    public void shutdown() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // ignored.
+        }
+        executor.shutdownNow();
+    }//end shutdown
+
+    public int activeSessions() {
+        return activeSessions.get();
+    }
+
+    private void runSession(Socket socket) {
+        Session session;
+        try {
+            session = new Session(socket);
+        } catch (IOException e) {
+            System.err.println("Error - Unable to open session: " + e.getMessage());
+            return;
+        }
+        session.attach();
+        activeSessions.incrementAndGet();
+        try {
+            AirlineManagement.Greeting();
+            AirlineManagement.runMenu(esql);
+        } catch (Session.ClosedException e) {
+            // client went away
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        } finally {
+            activeSessions.decrementAndGet();
+            session.close();
+        }
+    }//end runSession
+
+    /*
+     * Runs each session on a virtual thread when the JVM offers them (Java
+     * 21 and later) and on a plain daemon thread per session otherwise. The
+     * lookup is reflective so the class still builds on older JDKs.
+     */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            // virtual threads are not available on this JVM
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "session-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }//end newSessionExecutor
+
+}//end SessionServer
@@ -0,0 +1,345 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Logs every statement that takes longer than airline.slowQuery.thresholdMillis,
+ * with its bound parameters, together with its plan. The helpers of AirlineManagement and Transaction only hand the
+ * statement over; the plan is taken and the entry written by a background
+ * thread on a connection of its own, so the operator never waits for it.
+ *
+ * EXPLAIN ANALYZE runs the statement again, so only queries get it: a
+ * SELECT or WITH without a locking clause is explained with
+ * EXPLAIN (ANALYZE, BUFFERS) in a READ ONLY transaction, which also refuses
+ * setval, nextval and data-modifying WITH clauses. Those, and every other
+ * write, get a plain EXPLAIN that does not run them, so no row is locked
+ * and no sequence moves. Plans are taken under a statement timeout in a
+ * transaction that is rolled back, and a statement is explained at most once every
+ * airline.slowQuery.explainIntervalSeconds; later occurrences are logged
+ * without a plan. Statements run inside a Transaction are explained outside
+ * of it, so they do not see its uncommitted changes.
+ *
+ * The log is airline.slowQuery.file. It is rotated when it grows past
+ * airline.slowQuery.maxBytes, keeping airline.slowQuery.files old logs
+ * named file.1 (newest) to file.N. A threshold below zero turns logging off.
+ *
+ */
+public class SlowQueryLog {
+
+    static final long THRESHOLD_MILLIS = Long.getLong("airline.slowQuery.thresholdMillis", 500L);
+    static final String FILE = System.getProperty("airline.slowQuery.file", "slow_queries.log");
+    static final long MAX_BYTES = Long.getLong("airline.slowQuery.maxBytes", 10L * 1024 * 1024);
+    static final int FILES = Integer.getInteger("airline.slowQuery.files", 5);
+    static final long EXPLAIN_INTERVAL_SECONDS = Long.getLong("airline.slowQuery.explainIntervalSeconds", 60L);
+    static final long EXPLAIN_TIMEOUT_MILLIS = Long.getLong("airline.slowQuery.explainTimeoutMillis", 30000L);
+    // entries waiting for the background thread; more are counted and dropped
+    static final int QUEUE_SIZE = 100;
+    // bounds the table of recently explained statements
+    static final int MAX_EXPLAINED = 1000;
+
+    private static final long THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(THRESHOLD_MILLIS);
+    // row locks taken by a query, which a rerun would take again
+    private static final Pattern LOCKING =
+            Pattern.compile("\\bFOR\\s+(UPDATE|SHARE|NO\\s+KEY\\s+UPDATE|KEY\\s+SHARE)\\b");
+    // the SQLSTATE of a write attempted in a READ ONLY transaction
+    private static final String READ_ONLY_SQL_TRANSACTION = "25006";
+
+    /*
+     * One slow statement as it was run.
+     */
+    private static class Entry {
+        final LocalDateTime at = LocalDateTime.now();
+        final String sql;
+        final Object[] params;
+        final long nanos;
+        final boolean failed;
+
+        Entry(String sql, Object[] params, long nanos, boolean failed) {
+            this.sql = sql;
+            this.params = params;
+            this.nanos = nanos;
+            this.failed = failed;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Long> EXPLAINED = new ConcurrentHashMap<String, Long>();
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    private static volatile ConnectionPool pool = null;
+    private static ThreadPoolExecutor worker = null;
+    private static Writer out = null;
+    private static long written = 0;
+
+    private SlowQueryLog() {
+    }
+
+    /**
+     * Starts the background thread, which explains statements on
+     * connections of the given pool.
+     */
+    public static synchronized void start(ConnectionPool connectionPool) {
+        if (THRESHOLD_MILLIS < 0 || worker != null) {
+            return;
+        }
+        pool = connectionPool;
+        worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "slow-query-log");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }//end start
+
+    /**
+     * Writes the entries still queued and closes the log.
+     */
+    public static void stop() {
+        ThreadPoolExecutor w;
+        synchronized (SlowQueryLog.class) {
+            w = worker;
+            worker = null;
+        }
+        if (w == null) {
+            return;
+        }
+        w.shutdown();
+        try {
+            w.awaitTermination(EXPLAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (SlowQueryLog.class) {
+            closeLog();
+        }
+    }//end stop
+
+    /**
+     * Hands a statement to the log when it ran longer than the threshold.
+     *
+     * @param sql the statement text
+     * @param params the values bound to it, or null for a plain statement
+     * @param started System.nanoTime() when the statement was issued
+     * @param failed whether the statement ended with an error
+     */
+    public static void check(String sql, Object[] params, long started, boolean failed) {
+        long nanos = System.nanoTime() - started;
+        ThreadPoolExecutor w = worker;
+        if (nanos < THRESHOLD_NANOS || w == null) {
+            return;
+        }
+        final Entry entry = new Entry(sql, params == null ? null : params.clone(), nanos, failed);
+        try {
+            w.execute(new Runnable() {
+                public void run() {
+                    write(entry);
+                }
+            });
+        } catch (RuntimeException e) {
+            // the queue is full or the log is stopping
+            DROPPED.incrementAndGet();
+        }
+    }//end check
+
+    private static void write(Entry entry) {
+        StringBuilder text = new StringBuilder(1024);
+        text.append("-- ").append(entry.at).append(' ')
+                .append(String.format("%.1f", entry.nanos / 1e6)).append(" ms")
+                .append(entry.failed ? " (failed)" : "").append('\n');
+        long dropped = DROPPED.getAndSet(0);
+        if (dropped > 0) {
+            text.append("-- ").append(dropped).append(" slow statements before this one were not logged\n");
+        }
+        text.append(entry.sql.trim()).append('\n');
+        if (entry.params != null && entry.params.length > 0) {
+            text.append("-- parameters:");
+            for (int i = 0; i < entry.params.length; ++i) {
+                text.append(i == 0 ? " " : ", ").append('$').append(i + 1).append(" = ").append(literal(entry.params[i]));
+            }
+            text.append('\n');
+        }
+        if (explainDue(entry.sql)) {
+            if (!analyzable(entry.sql) || !explain(entry, text, true)) {
+                explain(entry, text, false);
+            }
+        } else {
+            text.append("-- plan captured within the last ").append(EXPLAIN_INTERVAL_SECONDS).append(" s\n");
+        }
+        text.append('\n');
+        synchronized (SlowQueryLog.class) {
+            append(text.toString());
+        }
+    }//end write
+
+    private static boolean explainDue(String sql) {
+        String head = sql.trim().toUpperCase();
+        if (!(head.startsWith("SELECT") || head.startsWith("WITH") || head.startsWith("INSERT")
+                || head.startsWith("UPDATE") || head.startsWith("DELETE"))) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        Long last = EXPLAINED.get(sql);
+        if (last != null && now - last < TimeUnit.SECONDS.toMillis(EXPLAIN_INTERVAL_SECONDS)) {
+            return false;
+        }
+        if (EXPLAINED.size() >= MAX_EXPLAINED) {
+            EXPLAINED.clear();
+        }
+        EXPLAINED.put(sql, now);
+        return true;
+    }
+
+    // a query that reads without locking rows, which may be run again
+    private static boolean analyzable(String sql) {
+        String head = sql.trim().toUpperCase();
+        return (head.startsWith("SELECT") || head.startsWith("WITH")) && !LOCKING.matcher(head).find();
+    }
+
+    /*
+     * Appends the plan of a statement, taken in a transaction that is
+     * rolled back. With analyze the statement runs again, in a READ ONLY
+     * transaction.
+     *
+     * Returns false when the statement turned out to write, so the caller
+     * can fall back to a plain EXPLAIN.
+     */
+    private static boolean explain(Entry entry, StringBuilder text, boolean analyze) {
+        ConnectionPool p = pool;
+        ConnectionPool.PooledConnection conn;
+        try {
+            conn = p.borrow();
+        } catch (SQLException e) {
+            text.append("-- no plan: ").append(e.getMessage()).append('\n');
+            return true;
+        }
+        Connection connection = conn.connection();
+        SQLException failure = null;
+        boolean explained = true;
+        try {
+            connection.setAutoCommit(false);
+            Statement setup = connection.createStatement();
+            try {
+                if (analyze) {
+                    setup.execute("SET TRANSACTION READ ONLY");
+                }
+                setup.execute("SET LOCAL statement_timeout = " + EXPLAIN_TIMEOUT_MILLIS);
+            } finally {
+                setup.close();
+            }
+            if (!analyze) {
+                text.append("-- plan without ANALYZE: writes are not run again\n");
+            }
+            PreparedStatement stmt = connection.prepareStatement(
+                    (analyze ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + entry.sql);
+            try {
+                if (entry.params != null) {
+                    StatementCache.bind(stmt, entry.params);
+                }
+                ResultSet rs = stmt.executeQuery();
+                try {
+                    while (rs.next()) {
+                        text.append(rs.getString(1)).append('\n');
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            if (analyze && READ_ONLY_SQL_TRANSACTION.equals(e.getSQLState())) {
+                explained = false;
+            } else {
+                text.append("-- no plan: ").append(e.getMessage()).append('\n');
+            }
+        } finally {
+            try {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                failure = e;
+            }
+            p.release(conn, failure);
+        }
+        return explained;
+    }//end explain
+
+    // parameters are shown as SQL literals, so the statement can be rerun by hand
+    private static String literal(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        return "'" + value.toString().replace("'", "''") + "'";
+    }
+
+    private static void append(String text) {
+        try {
+            if (out != null && written >= MAX_BYTES) {
+                closeLog();
+                rotate();
+            }
+            if (out == null) {
+                File file = new File(FILE);
+                written = file.length();
+                out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+            }
+            out.write(text);
+            out.flush();
+            written += text.length();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            closeLog();
+        }
+    }//end append
+
+    /*
+     * Shifts file.1 .. file.N-1 up by one, dropping file.N, and moves the
+     * current log to file.1.
+     */
+    private static void rotate() {
+        new File(FILE + "." + FILES).delete();
+        for (int i = FILES - 1; i >= 1; --i) {
+            File from = new File(FILE + "." + i);
+            if (from.exists()) {
+                from.renameTo(new File(FILE + "." + (i + 1)));
+            }
+        }
+        if (FILES > 0) {
+            new File(FILE).renameTo(new File(FILE + ".1"));
+        } else {
+            new File(FILE).delete();
+        }
+    }//end rotate
+
+    private static void closeLog() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // nothing more can be written anyway
+            }
+            out = null;
+        }
+    }
+
+}//end SlowQueryLog
@@ -0,0 +1,123 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A per-connection cache of PreparedStatements keyed by SQL text. Handlers
+ * pass the same parameterized SQL shape on every call, so each shape is
+ * parsed and planned once and then reused. The least recently used statement
+ * is closed once the cache grows past its capacity.
+ *
+ */
+public class StatementCache {
+
+    // default number of statements kept open on each connection
+    public static final int DEFAULT_SIZE = 64;
+
+    private final Connection _connection;
+    private final LinkedHashMap<String, PreparedStatement> _statements;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param connection the connection the statements are prepared on
+     * @param maxSize the maximum number of statements kept open
+     */
+    public StatementCache(Connection connection, final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("statement cache size must be positive: " + maxSize);
+        }
+        this._connection = connection;
+        // access order turns the map into an LRU list
+        this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > maxSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }//end StatementCache
+
+    /**
+     * Returns the cached statement for the SQL text, preparing it on a miss.
+     * The parameters of a returned statement are cleared.
+     *
+     * @param sql the parameterized SQL string
+     * @return a statement ready to be bound and executed
+     * @throws java.sql.SQLException when the statement cannot be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = _statements.get(sql);
+        if (stmt == null) {
+            ++misses;
+            stmt = _connection.prepareStatement(sql);
+            _statements.put(sql, stmt);
+        } else {
+            ++hits;
+            stmt.clearParameters();
+        }
+        return stmt;
+    }//end prepare
+
+    /**
+     * Drops a statement from the cache, for example after it failed and its
+     * state on the server is unknown.
+     */
+    public void evict(String sql) {
+        closeQuietly(_statements.remove(sql));
+    }
+
+    /**
+     * Binds positional parameters to a statement. A null parameter is sent as
+     * an SQL NULL.
+     */
+    public static void bind(PreparedStatement stmt, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; ++i) {
+            if (params[i] == null) {
+                stmt.setNull(i + 1, Types.VARCHAR);
+            } else {
+                stmt.setObject(i + 1, params[i]);
+            }
+        }
+    }//end bind
+
+    public int size() {
+        return _statements.size();
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * Closes every cached statement.
+     */
+    public void clear() {
+        Iterator<PreparedStatement> it = _statements.values().iterator();
+        while (it.hasNext()) {
+            closeQuietly(it.next());
+            it.remove();
+        }
+    }//end clear
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            // ignored.
+        }
+    }
+
+}//end StatementCache
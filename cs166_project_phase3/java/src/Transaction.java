@@ -0,0 +1,120 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A unit of work on one pooled connection with autocommit switched off. It
+ * offers the same parameterized helpers as AirlineManagement, running through
+ * the statement cache of the borrowed connection. Transactions are opened,
+ * committed, rolled back and retried by AirlineManagement.executeTransaction.
+ *
+ */
+public class Transaction {
+
+    /**
+     * The body of a transaction. It may run more than once when the
+     * transaction is retried, so it must not have side effects outside the
+     * database until it returns.
+     */
+    public interface Work<T> {
+        T run(Transaction tx) throws SQLException;
+    }
+
+    private final ConnectionPool.PooledConnection conn;
+
+    Transaction(ConnectionPool.PooledConnection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * @return the underlying connection, for APIs the helpers do not cover
+     */
+    public Connection connection() {
+        return conn.connection();
+    }
+
+    /**
+     * Executes a parameterized update SQL statement inside the transaction.
+     *
+     * @return the number of rows affected
+     * @throws java.sql.SQLException when update failed
+     */
+    public int executeUpdate(String sql, Object... params) throws SQLException {
+        PreparedStatement stmt = conn.statements().prepare(sql);
+        long started = System.nanoTime();
+        int rows = 0;
+        boolean failed = true;
+        try {
+            StatementCache.bind(stmt, params);
+            rows = stmt.executeUpdate();
+            failed = false;
+            return rows;
+        } catch (SQLException e) {
+            conn.statements().evict(sql);
+            throw e;
+        } finally {
+            Metrics.statement(sql, started, rows, 0, failed);
+            SlowQueryLog.check(sql, params, started, failed);
+        }
+    }//end executeUpdate
+
+    /**
+     * Executes a parameterized statement once per parameter row as a single
+     * JDBC batch, so the rows travel to the server together.
+     *
+     * @return the update count of each row
+     * @throws java.sql.SQLException when the batch failed
+     */
+    public int[] executeBatch(String sql, List<Object[]> rows) throws SQLException {
+        PreparedStatement stmt = conn.statements().prepare(sql);
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            for (Object[] params : rows) {
+                StatementCache.bind(stmt, params);
+                stmt.addBatch();
+            }
+            int[] counts = stmt.executeBatch();
+            failed = false;
+            return counts;
+        } catch (SQLException e) {
+            conn.statements().evict(sql);
+            throw e;
+        } finally {
+            Metrics.statement(sql, started, rows.size(), 0, failed);
+        }
+    }//end executeBatch
+
+    /**
+     * Executes a parameterized query inside the transaction. This is also the
+     * way to run an UPDATE or DELETE with a RETURNING clause.
+     *
+     * @return the materialized query result
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public QueryResult executeQueryForResult(String query, Object... params) throws SQLException {
+        PreparedStatement stmt = conn.statements().prepare(query);
+        long started = System.nanoTime();
+        QueryResult result = null;
+        try {
+            StatementCache.bind(stmt, params);
+            ResultSet rs = stmt.executeQuery();
+            try {
+                result = QueryResult.from(rs);
+                return result;
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            conn.statements().evict(query);
+            throw e;
+        } finally {
+            Metrics.statement(query, started, result == null ? 0 : result.rowCount(),
+                    result == null ? 0 : result.bytes(), result == null);
+            SlowQueryLog.check(query, params, started, result == null);
+        }
+    }//end executeQueryForResult
+
+}//end Transaction
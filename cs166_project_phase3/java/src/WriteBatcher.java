@@ -0,0 +1,319 @@
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects single-row inserts and updates and writes them together. Rows are
+ * flushed when airline.writeBatch.maxRows of them are waiting or the oldest
+ * has waited airline.writeBatch.maxDelayMillis: consecutive rows with the
+ * same SQL go to the server as one JDBC batch, and the whole flush is one
+ * transaction, so a flush costs one commit however many rows it carries.
+ * Operators of a session server writing at the same time share commits.
+ *
+ * A row that fails does not fail the others. When a batch reports which row
+ * failed, that row is written on its own and the transaction is run again
+ * without it. Otherwise the flush is split in halves, each retried as its
+ * own transaction, until the failing rows are narrowed down to single rows,
+ * so one bad row costs a few transactions rather than one per row. Every
+ * row ends up with either its update count or its own error.
+ *
+ */
+public class WriteBatcher {
+
+    static final int MAX_ROWS = Math.max(1, Integer.getInteger("airline.writeBatch.maxRows", 500));
+    static final long MAX_DELAY_MILLIS = Long.getLong("airline.writeBatch.maxDelayMillis", 5L);
+
+    /**
+     * One row handed to the batcher. It is done once its flush has
+     * committed or the row has failed.
+     */
+    public static class Row {
+        final String sql;
+        final Object[] params;
+        private boolean done = false;
+        private int count = 0;
+        private SQLException failure = null;
+
+        Row(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params;
+        }
+
+        /**
+         * Waits for the row to be written.
+         *
+         * @return the number of rows the statement affected
+         * @throws java.sql.SQLException the error of this row
+         */
+        public synchronized int await() throws SQLException {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return count;
+        }//end await
+
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return the error of this row, or null when it was written or is
+         * still waiting
+         */
+        public synchronized SQLException failure() {
+            return failure;
+        }
+
+        synchronized void complete(int count, SQLException failure) {
+            this.count = count;
+            this.failure = failure;
+            this.done = true;
+            notifyAll();
+        }
+    }//end Row
+
+    /*
+     * A batch failed at a known row of the flush.
+     */
+    private static class RowFailure extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+
+        RowFailure(int index, SQLException cause) {
+            super(cause.getMessage(), cause.getSQLState(), cause);
+            this.index = index;
+        }
+    }//end RowFailure
+
+    private final AirlineManagement esql;
+    private final int maxRows;
+    private final long maxDelayMillis;
+    // serializes flushes, so rows are written in the order they were added
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService timer;
+
+    // guarded by this
+    private List<Row> buffer = new ArrayList<Row>();
+    private boolean closed = false;
+
+    /**
+     * Creates a batcher using the airline.writeBatch.* system properties.
+     */
+    public WriteBatcher(AirlineManagement esql) {
+        this(esql, MAX_ROWS, MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * @param esql the database utility whose pool writes the rows
+     * @param maxRows the number of waiting rows that starts a flush
+     * @param maxDelayMillis how long a row may wait for more rows
+     */
+    public WriteBatcher(AirlineManagement esql, int maxRows, long maxDelayMillis) {
+        this.esql = esql;
+        this.maxRows = maxRows;
+        this.maxDelayMillis = maxDelayMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "write-batcher");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Queues a parameterized INSERT, UPDATE or DELETE.
+     *
+     * @param sql the statement with ? placeholders
+     * @param params the values bound to the placeholders, in order
+     * @return the row, to wait for or check after a flush
+     */
+    public Row add(String sql, Object... params) {
+        Row row = new Row(sql, params.clone());
+        boolean full;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("the write batcher is closed");
+            }
+            buffer.add(row);
+            full = buffer.size() >= maxRows;
+            if (!full && buffer.size() == 1) {
+                // a timer left from an earlier buffer only flushes this one sooner
+                timer.schedule(new Runnable() {
+                    public void run() {
+                        flush();
+                    }
+                }, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            flush();
+        }
+        return row;
+    }//end add
+
+    /**
+     * Writes every waiting row now.
+     *
+     * @return the number of rows that failed
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            List<Row> rows;
+            synchronized (this) {
+                rows = buffer;
+                buffer = new ArrayList<Row>();
+            }
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            try {
+                return write(rows);
+            } catch (RuntimeException e) {
+                // nobody would wake the callers waiting on these rows
+                int failed = 0;
+                for (Row row : rows) {
+                    if (!row.isDone()) {
+                        row.complete(0, new SQLException(e.toString()));
+                        ++failed;
+                    }
+                }
+                return failed;
+            }
+        }
+    }//end flush
+
+    /**
+     * Writes the waiting rows and stops the timer. Rows added afterwards
+     * are refused.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        timer.shutdownNow();
+    }
+
+    private int write(List<Row> rows) {
+        List<Row> remaining = new ArrayList<Row>(rows);
+        int failed = 0;
+        while (remaining.size() > 1) {
+            try {
+                int[] counts = writeTransaction(remaining);
+                for (int i = 0; i < counts.length; ++i) {
+                    remaining.get(i).complete(counts[i], null);
+                }
+                return failed;
+            } catch (RowFailure e) {
+                // the row is written alone, which gives it its own error, and
+                // the transaction is run again without it. A driver that
+                // rewrites batched inserts may blame the first row of a
+                // rewritten statement; written alone that row succeeds.
+                if (!writeAlone(remaining.remove(e.index))) {
+                    ++failed;
+                }
+            } catch (SQLException e) {
+                // no row to blame: each half gets its own transaction, and
+                // the half that fails is split again
+                int half = remaining.size() / 2;
+                return failed + write(remaining.subList(0, half))
+                        + write(remaining.subList(half, remaining.size()));
+            }
+        }
+        // a single row is written alone, which gives it its own error
+        if (!remaining.isEmpty() && !writeAlone(remaining.get(0))) {
+            ++failed;
+        }
+        return failed;
+    }//end write
+
+    private boolean writeAlone(Row row) {
+        try {
+            row.complete(esql.executeUpdate(row.sql, row.params), null);
+            return true;
+        } catch (SQLException e) {
+            row.complete(0, e);
+            return false;
+        }
+    }
+
+    /*
+     * Runs the rows as one transaction, one batch per run of rows with the
+     * same SQL, and returns the update count of each row.
+     */
+    private int[] writeTransaction(final List<Row> rows) throws SQLException {
+        return esql.executeTransaction(new Transaction.Work<int[]>() {
+            public int[] run(Transaction tx) throws SQLException {
+                int[] counts = new int[rows.size()];
+                int start = 0;
+                while (start < rows.size()) {
+                    String sql = rows.get(start).sql;
+                    List<Object[]> params = new ArrayList<Object[]>();
+                    int end = start;
+                    while (end < rows.size() && rows.get(end).sql.equals(sql)) {
+                        params.add(rows.get(end).params);
+                        ++end;
+                    }
+                    int[] batch;
+                    try {
+                        batch = tx.executeBatch(sql, params);
+                    } catch (BatchUpdateException e) {
+                        int index = failedRow(e.getUpdateCounts(), params.size());
+                        if (index < 0) {
+                            throw e;
+                        }
+                        throw new RowFailure(start + index, e);
+                    }
+                    for (int i = 0; i < batch.length; ++i) {
+                        // SUCCESS_NO_INFO counts as one row
+                        counts[start + i] = batch[i] == Statement.SUCCESS_NO_INFO ? 1 : batch[i];
+                    }
+                    start = end;
+                }
+                return counts;
+            }
+        });
+    }//end writeTransaction
+
+    /*
+     * The row a batch of the given size failed at, or -1 when the counts do
+     * not name one. Drivers either stop the counts at the failed row or mark
+     * it EXECUTE_FAILED; pgJDBC outside autocommit marks every row of the
+     * batch, which names none.
+     */
+    private static int failedRow(int[] counts, int rows) {
+        if (counts == null || counts.length > rows) {
+            return -1;
+        }
+        int index = counts.length < rows ? counts.length : -1;
+        for (int i = 0; i < counts.length; ++i) {
+            if (counts[i] == Statement.EXECUTE_FAILED) {
+                if (index >= 0) {
+                    return -1;
+                }
+                index = i;
+            }
+        }
+        return index;
+    }
+
+}//end WriteBatcher
@@ -0,0 +1,211 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the label-setting route search against a brute-force walk of every
+ * itinerary on seeded random flight graphs. The search prunes labels that
+ * enough better labels dominate; the walk prunes nothing, so both must find
+ * the same best itineraries.
+ *
+ */
+public class RouteSearchTest {
+
+    static final int CITIES = 12;
+    static final int DAYS = 4;
+    static final LocalDate FIRST_DAY = LocalDate.of(2025, 5, 5);
+    static final int MINUTES_PER_DAY = 24 * 60;
+
+    @Test
+    public void findsTheBestItinerariesOfSparseGraphs() throws Exception {
+        compare(1L, 6);
+    }
+
+    @Test
+    public void findsTheBestItinerariesOfDenseGraphs() throws Exception {
+        compare(2L, 20);
+    }
+
+    /*
+     * Runs searches between every pair of cities, in every order and with
+     * up to two connections, and compares each with the walk.
+     */
+    private void compare(long seed, int legsPerCity) throws Exception {
+        final Map<LocalDate, RouteSearch.Day> graph = graph(new Random(seed), legsPerCity);
+        RouteSearch routes = new RouteSearch(null, Long.MAX_VALUE) {
+            RouteSearch.Day load(LocalDate date) {
+                RouteSearch.Day day = graph.get(date);
+                return day != null ? day
+                        : new RouteSearch.Day(new ArrayList<RouteSearch.Leg>(), RouteSearch.UNKNOWN_VERSION, 0L);
+            }
+        };
+
+        int searches = 0;
+        for (RouteSearch.Order order : RouteSearch.Order.values()) {
+            for (int connections = 0; connections <= 2; ++connections) {
+                for (int from = 0; from < CITIES; ++from) {
+                    for (int to = 0; to < CITIES; ++to) {
+                        if (from == to) {
+                            continue;
+                        }
+                        String label = order + " C" + from + " to C" + to + " with " + connections + " connection(s)";
+                        List<RouteSearch.Itinerary> found =
+                                routes.search(city(from), city(to), FIRST_DAY, order, connections);
+                        List<RouteSearch.Itinerary> expected =
+                                walk(graph, city(from), city(to), order, connections + 1);
+                        assertEquals(keys(expected), keys(found), label);
+                        for (RouteSearch.Itinerary itinerary : found) {
+                            assertConnected(itinerary, city(from), city(to), label);
+                        }
+                        ++searches;
+                    }
+                }
+            }
+        }
+        assertTrue(searches > 0);
+    }//end compare
+
+    private static Map<LocalDate, RouteSearch.Day> graph(Random rng, int legsPerCity) {
+        Map<LocalDate, RouteSearch.Day> graph = new HashMap<LocalDate, RouteSearch.Day>();
+        int instance = 0;
+        for (int d = 0; d < DAYS; ++d) {
+            LocalDate date = FIRST_DAY.plusDays(d);
+            List<RouteSearch.Leg> legs = new ArrayList<RouteSearch.Leg>();
+            for (int c = 0; c < CITIES; ++c) {
+                for (int i = 0; i < legsPerCity; ++i) {
+                    int to = rng.nextInt(CITIES - 1);
+                    if (to >= c) {
+                        ++to;
+                    }
+                    int departs = rng.nextInt(MINUTES_PER_DAY);
+                    int arrives = (departs + 45 + rng.nextInt(360)) % MINUTES_PER_DAY;
+                    // every tenth flight is sold out and must not be used
+                    AtomicInteger seats = new AtomicInteger(rng.nextInt(10) == 0 ? 0 : 1 + rng.nextInt(5));
+                    ++instance;
+                    legs.add(new RouteSearch.Leg(city(c), city(to), "F" + instance, instance, date,
+                            LocalTime.of(departs / 60, departs % 60), LocalTime.of(arrives / 60, arrives % 60),
+                            5000 + rng.nextInt(50000), seats));
+                }
+            }
+            graph.put(date, new RouteSearch.Day(legs, RouteSearch.UNKNOWN_VERSION, 0L));
+        }
+        return graph;
+    }//end graph
+
+    /*
+     * Every itinerary from the first day, by the rules the search follows,
+     * best first and cut to the number of results the search returns.
+     */
+    private static List<RouteSearch.Itinerary> walk(Map<LocalDate, RouteSearch.Day> graph, String from, String to,
+            RouteSearch.Order order, int maxLegs) {
+        List<RouteSearch.Itinerary> all = new ArrayList<RouteSearch.Itinerary>();
+        RouteSearch.Day first = graph.get(FIRST_DAY);
+        for (RouteSearch.Leg leg : first.from(from)) {
+            if (leg.seatsOpen() > 0) {
+                List<RouteSearch.Leg> path = new ArrayList<RouteSearch.Leg>();
+                path.add(leg);
+                extend(graph, path, leg.departs, leg.arrives, leg.fare, to, maxLegs, all);
+            }
+        }
+        Collections.sort(all, order(order));
+        return all.size() > RouteSearch.RESULTS ? all.subList(0, RouteSearch.RESULTS) : all;
+    }//end walk
+
+    private static void extend(Map<LocalDate, RouteSearch.Day> graph, List<RouteSearch.Leg> path, int departs,
+            int arrives, long fare, String to, int maxLegs, List<RouteSearch.Itinerary> all) {
+        RouteSearch.Leg last = path.get(path.size() - 1);
+        if (last.to.equals(to)) {
+            all.add(new RouteSearch.Itinerary(new ArrayList<RouteSearch.Leg>(path), departs, arrives, fare));
+            return;
+        }
+        if (path.size() == maxLegs) {
+            return;
+        }
+        int earliest = arrives + RouteSearch.MIN_CONNECTION_MINUTES;
+        int latest = arrives + RouteSearch.MAX_LAYOVER_HOURS * 60;
+        for (int offset = 0; offset < DAYS; ++offset) {
+            for (RouteSearch.Leg next : graph.get(FIRST_DAY.plusDays(offset)).from(last.to)) {
+                int leaves = offset * MINUTES_PER_DAY + next.departs;
+                if (leaves < earliest || leaves > latest || next.seatsOpen() < 1 || visited(path, next.to)) {
+                    continue;
+                }
+                path.add(next);
+                extend(graph, path, departs, offset * MINUTES_PER_DAY + next.arrives, fare + next.fare, to, maxLegs, all);
+                path.remove(path.size() - 1);
+            }
+        }
+    }//end extend
+
+    private static boolean visited(List<RouteSearch.Leg> path, String city) {
+        for (RouteSearch.Leg leg : path) {
+            if (leg.from.equals(city) || leg.to.equals(city)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * The ranking of the menu: one criterion first, ties broken by the
+     * other two and then by the later departure.
+     */
+    private static Comparator<RouteSearch.Itinerary> order(final RouteSearch.Order order) {
+        return new Comparator<RouteSearch.Itinerary>() {
+            public int compare(RouteSearch.Itinerary a, RouteSearch.Itinerary b) {
+                int byArrival = Integer.compare(a.arrives, b.arrives);
+                int byStops = Integer.compare(a.stops(), b.stops());
+                int byFare = Long.compare(a.fare, b.fare);
+                int c;
+                if (order == RouteSearch.Order.ARRIVAL) {
+                    c = byArrival != 0 ? byArrival : byStops != 0 ? byStops : byFare;
+                } else if (order == RouteSearch.Order.STOPS) {
+                    c = byStops != 0 ? byStops : byArrival != 0 ? byArrival : byFare;
+                } else {
+                    c = byFare != 0 ? byFare : byArrival != 0 ? byArrival : byStops;
+                }
+                return c != 0 ? c : Integer.compare(b.departs, a.departs);
+            }
+        };
+    }//end order
+
+    // itineraries that tie on every criterion may be listed either way
+    private static List<String> keys(List<RouteSearch.Itinerary> itineraries) {
+        List<String> keys = new ArrayList<String>();
+        for (RouteSearch.Itinerary itinerary : itineraries) {
+            keys.add(itinerary.arrives + "/" + itinerary.stops() + "/" + itinerary.fare + "/" + itinerary.departs);
+        }
+        return keys;
+    }
+
+    private static void assertConnected(RouteSearch.Itinerary itinerary, String from, String to, String label) {
+        List<RouteSearch.Leg> legs = itinerary.legs;
+        assertEquals(from, legs.get(0).from, label);
+        assertEquals(to, legs.get(legs.size() - 1).to, label);
+        long fare = 0;
+        for (int i = 0; i < legs.size(); ++i) {
+            assertTrue(legs.get(i).seatsOpen() > 0, label + ": a sold out flight");
+            if (i > 0) {
+                assertEquals(legs.get(i - 1).to, legs.get(i).from, label);
+            }
+            fare += legs.get(i).fare;
+        }
+        assertEquals(fare, itinerary.fare, label);
+    }
+
+    private static String city(int i) {
+        return "C" + i;
+    }
+
+}//end RouteSearchTest
@@ -6,6 +6,14 @@ DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 echo $DIR 
 cs166_createdb $USER"_project_phase_3_DB"
 cs166_psql -p $PGPORT $USER"_project_phase_3_DB" < $DIR/../src/create_tables.sql
+#PARTITIONED=1 stores FlightInstance and Reservation partitioned by month
+if [ "$PARTITIONED" = "1" ]; then
+cs166_psql -p $PGPORT $USER"_project_phase_3_DB" < $DIR/../src/partition_tables.sql
+fi
 cs166_psql -p $PGPORT $USER"_project_phase_3_DB" < $DIR/../src/create_indexes.sql
+cs166_psql -p $PGPORT $USER"_project_phase_3_DB" < $DIR/../src/create_availability.sql
 cs166_psql -p $PGPORT $USER"_project_phase_3_DB" < $DIR/../src/load_data.sql
+if [ "$PARTITIONED" = "1" ]; then
+source $DIR/maintain_partitions.sh
+fi
 
@@ -0,0 +1,9 @@
+#!/bin/bash
+#for a database created with PARTITIONED=1: creates the monthly partitions of
+#the next three months and moves rows out of the default partitions.
+#with --archive, also merges the months of every year that ended more than a
+#year ago into one partition per year and freezes it. Suitable for a daily cron job.
+cs166_psql -p $PGPORT $USER"_project_phase_3_DB" -c "SELECT maintain_partitions(3)"
+if [ "$1" = "--archive" ]; then
+echo "SELECT 'VACUUM (FREEZE, ANALYZE) ' || a FROM archive_partitions(CAST(current_date - interval '1 year' AS DATE)) a \gexec" | cs166_psql -p $PGPORT $USER"_project_phase_3_DB"
+fi
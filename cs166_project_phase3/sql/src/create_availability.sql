@@ -0,0 +1,173 @@
+-- Flight availability by city pair and date: one row per flight instance and
+-- scheduled departure, so a customer search is a single index lookup instead
+-- of a join of Flight, Schedule and FlightInstance.
+-- Triggers keep it in step with the three tables row by row; a booking only
+-- rewrites the open seats of its instance.
+--
+-- FlightAvailabilityChange counts the changes of each flight date's flights,
+-- so the route search can drop the dates it holds in memory once they
+-- changed. Open seats are not counted; bookings change them all the time.
+-- Requires Postgres 10 or later, for the transition tables.
+DROP TABLE IF EXISTS FlightAvailability;
+
+CREATE TABLE FlightAvailability (
+    DepartureCity TEXT,
+    ArrivalCity TEXT,
+    FlightDate DATE,
+    FlightNumber TEXT,
+    FlightInstanceID INTEGER,
+    ScheduleID INTEGER,
+    DepartureTime TIME,
+    ArrivalTime TIME,
+    NumOfStops INTEGER,
+    TicketCost DECIMAL(10,2),
+    SeatsOpen INTEGER,
+    PRIMARY KEY (FlightInstanceID, ScheduleID)
+);
+
+--optimizes searching flights by city pair and date
+CREATE INDEX Availability_index ON FlightAvailability(DepartureCity, ArrivalCity, FlightDate);
+
+--loads the flights of one date into the route search
+CREATE INDEX AvailabilityDate_index ON FlightAvailability(FlightDate);
+
+--finds the rows of a schedule entry when it changes
+CREATE INDEX AvailabilitySchedule_index ON FlightAvailability(ScheduleID);
+
+--kept when the script runs again, so versions only grow
+CREATE TABLE IF NOT EXISTS FlightAvailabilityChange (
+    FlightDate DATE PRIMARY KEY,
+    Version BIGINT NOT NULL
+);
+
+--the rows of the flight instances matching a condition; an instance flies
+--the schedule entries of its flight number on its day of the week
+CREATE OR REPLACE VIEW FlightAvailabilitySource AS
+    SELECT F.DepartureCity, F.ArrivalCity, I.FlightDate, I.FlightNumber, I.FlightInstanceID, S.ScheduleID,
+           S.DepartureTime, S.ArrivalTime, I.NumOfStops, I.TicketCost, I.SeatsTotal - I.SeatsSold AS SeatsOpen
+    FROM FlightInstance I
+    JOIN Flight F ON F.FlightNumber = I.FlightNumber
+    JOIN Schedule S ON S.FlightNumber = I.FlightNumber AND S.DayOfWeek = trim(to_char(I.FlightDate, 'Day'));
+
+--rebuilds the whole table, after a bulk change or a truncate
+CREATE OR REPLACE FUNCTION refresh_flight_availability() RETURNS void AS $$
+BEGIN
+    DELETE FROM FlightAvailability;
+    INSERT INTO FlightAvailability SELECT * FROM FlightAvailabilitySource;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION flight_instance_availability() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' AND OLD.FlightInstanceID = NEW.FlightInstanceID
+            AND OLD.FlightNumber IS NOT DISTINCT FROM NEW.FlightNumber
+            AND OLD.FlightDate IS NOT DISTINCT FROM NEW.FlightDate THEN
+        -- bookings and cancellations: the rows stay, their figures change
+        UPDATE FlightAvailability
+            SET SeatsOpen = NEW.SeatsTotal - NEW.SeatsSold, TicketCost = NEW.TicketCost, NumOfStops = NEW.NumOfStops
+            WHERE FlightInstanceID = NEW.FlightInstanceID;
+        RETURN NULL;
+    END IF;
+    IF TG_OP <> 'INSERT' THEN
+        DELETE FROM FlightAvailability WHERE FlightInstanceID = OLD.FlightInstanceID;
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        INSERT INTO FlightAvailability
+            SELECT * FROM FlightAvailabilitySource WHERE FlightInstanceID = NEW.FlightInstanceID;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION schedule_availability() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP <> 'INSERT' THEN
+        DELETE FROM FlightAvailability WHERE ScheduleID = OLD.ScheduleID;
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        INSERT INTO FlightAvailability
+            SELECT * FROM FlightAvailabilitySource WHERE ScheduleID = NEW.ScheduleID;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION flight_availability() RETURNS trigger AS $$
+BEGIN
+    UPDATE FlightAvailability SET DepartureCity = NEW.DepartureCity, ArrivalCity = NEW.ArrivalCity
+        WHERE FlightNumber = NEW.FlightNumber;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION truncate_availability() RETURNS trigger AS $$
+BEGIN
+    PERFORM refresh_flight_availability();
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+--raises the version of every date whose flights a statement added, removed
+--or moved, or whose cities, times or fares it changed; dates are taken in
+--order so concurrent statements lock them in the same order
+CREATE OR REPLACE FUNCTION count_availability_change() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO FlightAvailabilityChange(FlightDate, Version)
+            SELECT DISTINCT FlightDate, 1 FROM new_rows WHERE FlightDate IS NOT NULL ORDER BY FlightDate
+            ON CONFLICT (FlightDate) DO UPDATE SET Version = FlightAvailabilityChange.Version + 1;
+    ELSIF TG_OP = 'DELETE' THEN
+        INSERT INTO FlightAvailabilityChange(FlightDate, Version)
+            SELECT DISTINCT FlightDate, 1 FROM old_rows WHERE FlightDate IS NOT NULL ORDER BY FlightDate
+            ON CONFLICT (FlightDate) DO UPDATE SET Version = FlightAvailabilityChange.Version + 1;
+    ELSE
+        INSERT INTO FlightAvailabilityChange(FlightDate, Version)
+            SELECT DISTINCT d, 1 FROM old_rows o
+            JOIN new_rows n ON n.FlightInstanceID = o.FlightInstanceID AND n.ScheduleID = o.ScheduleID
+            CROSS JOIN LATERAL (VALUES (o.FlightDate), (n.FlightDate)) dates(d)
+            WHERE d IS NOT NULL
+                AND (o.DepartureCity, o.ArrivalCity, o.FlightDate, o.FlightNumber, o.DepartureTime, o.ArrivalTime, o.TicketCost)
+                    IS DISTINCT FROM (n.DepartureCity, n.ArrivalCity, n.FlightDate, n.FlightNumber, n.DepartureTime, n.ArrivalTime, n.TicketCost)
+            ORDER BY d
+            ON CONFLICT (FlightDate) DO UPDATE SET Version = FlightAvailabilityChange.Version + 1;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS FlightAvailability_insert_change ON FlightAvailability;
+CREATE TRIGGER FlightAvailability_insert_change AFTER INSERT ON FlightAvailability
+    REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE count_availability_change();
+
+DROP TRIGGER IF EXISTS FlightAvailability_update_change ON FlightAvailability;
+CREATE TRIGGER FlightAvailability_update_change AFTER UPDATE ON FlightAvailability
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE count_availability_change();
+
+DROP TRIGGER IF EXISTS FlightAvailability_delete_change ON FlightAvailability;
+CREATE TRIGGER FlightAvailability_delete_change AFTER DELETE ON FlightAvailability
+    REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE count_availability_change();
+
+DROP TRIGGER IF EXISTS FlightInstance_availability ON FlightInstance;
+CREATE TRIGGER FlightInstance_availability AFTER INSERT OR UPDATE OR DELETE ON FlightInstance
+    FOR EACH ROW EXECUTE PROCEDURE flight_instance_availability();
+
+DROP TRIGGER IF EXISTS Schedule_availability ON Schedule;
+CREATE TRIGGER Schedule_availability AFTER INSERT OR UPDATE OR DELETE ON Schedule
+    FOR EACH ROW EXECUTE PROCEDURE schedule_availability();
+
+--a new flight has no instances yet and a flight with instances cannot be
+--deleted, so only changed cities need handling
+DROP TRIGGER IF EXISTS Flight_availability ON Flight;
+CREATE TRIGGER Flight_availability AFTER UPDATE OF DepartureCity, ArrivalCity ON Flight
+    FOR EACH ROW EXECUTE PROCEDURE flight_availability();
+
+DROP TRIGGER IF EXISTS FlightInstance_truncate_availability ON FlightInstance;
+CREATE TRIGGER FlightInstance_truncate_availability AFTER TRUNCATE ON FlightInstance
+    FOR EACH STATEMENT EXECUTE PROCEDURE truncate_availability();
+
+DROP TRIGGER IF EXISTS Schedule_truncate_availability ON Schedule;
+CREATE TRIGGER Schedule_truncate_availability AFTER TRUNCATE ON Schedule
+    FOR EACH STATEMENT EXECUTE PROCEDURE truncate_availability();
+
+--picks up rows loaded before the triggers existed
+SELECT refresh_flight_availability();
@@ -3,10 +3,17 @@ DROP INDEX IF EXISTS PlaneID_index;
 DROP INDEX IF EXISTS TechnicianID_index;
 DROP INDEX IF EXISTS ReservationID_index;
 DROP INDEX IF EXISTS CustomerID_index;
+DROP INDEX IF EXISTS Waitlist_index;
+DROP INDEX IF EXISTS FlightDate_index;
+DROP INDEX IF EXISTS FlightInstanceID_index;
+DROP INDEX IF EXISTS PlaneRepair_index;
+DROP INDEX IF EXISTS UserLogin_index;
+DROP INDEX IF EXISTS UserName_index;
+DROP INDEX IF EXISTS Schedule_index;
 
 
---optimizes queries for fligt number as a criteria
-CREATE INDEX FlightNum_index ON FlightInstance(FlightNumber);
+--optimizes queries for fligt number as a criteria; most of them also give the flight date
+CREATE INDEX FlightNum_index ON FlightInstance(FlightNumber, FlightDate);
 
 --optimizes queries for plane id as a criteria
 CREATE INDEX PlaneID_index ON MaintenanceRequest(PlaneID);
@@ -14,9 +21,26 @@ CREATE INDEX PlaneID_index ON MaintenanceRequest(PlaneID);
 --optimizes queries for technician id as a criteria
 CREATE INDEX TechnicianID_index ON Repair(TechnicianID);
 
---optimizes queries for reservation id as a criteria
-CREATE INDEX ReservationID_index ON Reservation(ReservationID);
+--reservation id is the primary key of Reservation, which is already indexed
 
 --optimizes queries for customer id as a criteria
 CREATE INDEX CustomerID_index ON Reservation(CustomerID);
 
+--finds the oldest waitlisted reservation of a flight instance without scanning its waitlist
+CREATE INDEX Waitlist_index ON Reservation(FlightInstanceID, length(ReservationID), ReservationID) WHERE Status = 'waitlist';
+
+--optimizes queries for flight date as a criteria (flights of the day, flights on a given date)
+CREATE INDEX FlightDate_index ON FlightInstance(FlightDate);
+
+--optimizes joining a flight instance to its passengers
+CREATE INDEX FlightInstanceID_index ON Reservation(FlightInstanceID);
+
+--optimizes queries for the repairs of a plane over a date range
+CREATE INDEX PlaneRepair_index ON Repair(PlaneID, RepairDate);
+
+--logging in looks a user up by name alone, since the password is checked
+--against its salted hash; user names are unique
+CREATE UNIQUE INDEX UserName_index ON Users(UserName);
+
+--optimizes finding the schedule of a flight on a day of the week
+CREATE INDEX Schedule_index ON Schedule(FlightNumber, DayOfWeek);
@@ -1,4 +1,7 @@
 -- Drop existing tables
+DROP VIEW IF EXISTS FlightAvailabilitySource;
+DROP TABLE IF EXISTS FlightAvailability;
+DROP TABLE IF EXISTS FlightAvailabilityChange;
 DROP TABLE IF EXISTS MaintenanceRequest;
 DROP TABLE IF EXISTS Repair;
 DROP TABLE IF EXISTS Technician;
@@ -10,6 +13,9 @@ DROP TABLE IF EXISTS Flight;
 DROP TABLE IF EXISTS Plane;
 DROP TABLE IF EXISTS Pilot;
 DROP TABLE IF EXISTS USERS;
+DROP SEQUENCE IF EXISTS reservation_id_seq;
+DROP SEQUENCE IF EXISTS users_id_seq;
+DROP SEQUENCE IF EXISTS maintenance_request_id_seq;
 
 -- Plane Table
 CREATE TABLE Plane (
@@ -71,6 +77,9 @@ CREATE TABLE Reservation (
     CustomerID INTEGER,
     FlightInstanceID INTEGER,
     Status TEXT CHECK(Status IN ('reserved', 'waitlist', 'flown')),
+    -- the date of the flight instance, written with the reservation so
+    -- partition_tables.sql can partition Reservation by it
+    FlightDate DATE,
     FOREIGN KEY (CustomerID) REFERENCES Customer(CustomerID),
     FOREIGN KEY (FlightInstanceID) REFERENCES FlightInstance(FlightInstanceID)
 );
@@ -115,4 +124,11 @@ CREATE TABLE Users (
     UserName TEXT,
     Password TEXT,
     UserType INTEGER
-);
\ No newline at end of file
+);
+
+--Id sequences. Each nextval reserves a block of INCREMENT BY ids for one
+--application process, which hands them out without further DB calls.
+--load_data.sql moves them past the loaded ids.
+CREATE SEQUENCE reservation_id_seq INCREMENT BY 50;
+CREATE SEQUENCE users_id_seq INCREMENT BY 50;
+CREATE SEQUENCE maintenance_request_id_seq INCREMENT BY 50;
@@ -10,7 +10,17 @@
 
 \copy Customer FROM 'data/Customer.csv' WITH DELIMITER ',' CSV HEADER; 
 
-\copy Reservation FROM 'data/Reservation.csv' WITH DELIMITER ',' CSV HEADER; 
+/* Reservation.csv has no FlightDate; it is taken from the flight instance */
+
+CREATE TEMP TABLE Reservation_load (LIKE Reservation);
+
+\copy Reservation_load(ReservationID, CustomerID, FlightInstanceID, Status) FROM 'data/Reservation.csv' WITH DELIMITER ',' CSV HEADER; 
+
+INSERT INTO Reservation(ReservationID, CustomerID, FlightInstanceID, Status, FlightDate)
+    SELECT l.ReservationID, l.CustomerID, l.FlightInstanceID, l.Status, f.FlightDate
+    FROM Reservation_load l LEFT JOIN FlightInstance f ON f.FlightInstanceID = l.FlightInstanceID;
+
+DROP TABLE Reservation_load;
 
 \copy Technician FROM 'data/Technician.csv' WITH DELIMITER ',' CSV HEADER; 
 
@@ -22,3 +32,10 @@
 
 \copy Users FROM 'data/Users.csv' WITH DELIMITER ',' CSV HEADER;
 
+/* Start the id sequences after the loaded ids */
+
+SELECT setval('reservation_id_seq', COALESCE(MAX(CAST(substring(ReservationID FROM 2) AS INTEGER)), 0) + 1, false) FROM Reservation;
+
+SELECT setval('users_id_seq', COALESCE(MAX(UserID), 0) + 1, false) FROM Users;
+
+SELECT setval('maintenance_request_id_seq', COALESCE(MAX(RequestID), 0) + 1, false) FROM MaintenanceRequest;
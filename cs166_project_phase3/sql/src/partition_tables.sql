@@ -0,0 +1,226 @@
+-- Optional: stores FlightInstance and Reservation range partitioned by flight
+-- date, one partition per month, so date filtered queries only read the months
+-- they ask for. Run it after create_tables.sql (create_db.sh does so when
+-- PARTITIONED=1 is set), or on a loaded database followed by create_indexes.sql
+-- and create_availability.sql; existing rows are kept.
+--
+-- Reservation carries the date of its flight instance and is partitioned the
+-- same way, so an instance and its reservations live in partitions of the same
+-- month. Rows that fall outside every month go to a default partition;
+-- maintain_partitions() moves them into months of their own and creates the
+-- months ahead, and archive_partitions() merges the months of past years into
+-- one archive partition per year (see sql/scripts/maintain_partitions.sh).
+--
+-- The primary keys include FlightDate, as Postgres requires of partitioned
+-- tables, which costs three things the plain tables have:
+--
+-- * ReservationID and FlightInstanceID are no longer unique in the database.
+--   Reservation ids stay unique because the application draws them from
+--   reservation_id_seq (IdAllocator) and the loads move the sequence past
+--   the loaded ids; flight instance ids are only written by the loads.
+--   Writing ids by hand can create duplicates the tables will not reject.
+-- * Statements that find a row by id alone, like booking, cancelling and
+--   passenger lookups, cannot be pruned and probe the index of every
+--   partition. archive_partitions() keeps the number of partitions low.
+-- * Reservation has no foreign key on its flight instance, which would keep
+--   partitions from being detached. Triggers check it instead: a reservation
+--   must name a flight instance on its FlightDate, and a flight instance
+--   with reservations cannot be deleted or have its id or date changed.
+--   Partitions moved by split_partition() and archive_partitions() are not
+--   checked, since they move an instance and its reservations together.
+--
+-- Reservations are written with their FlightDate: the application takes it
+-- from the flight instance in the INSERT, and load_data.sql and CsvLoader
+-- fill it in the same way.
+--
+-- Requires Postgres 13 or later.
+
+DROP VIEW IF EXISTS FlightAvailabilitySource;
+DROP TABLE IF EXISTS FlightAvailability;
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('flightinstance')) THEN
+        RAISE NOTICE 'FlightInstance is already partitioned';
+        RETURN;
+    END IF;
+
+    ALTER TABLE Reservation RENAME TO Reservation_unpartitioned;
+    ALTER TABLE FlightInstance RENAME TO FlightInstance_unpartitioned;
+    -- index names are per schema; create_indexes.sql creates them on the new tables
+    DROP INDEX IF EXISTS FlightNum_index;
+    DROP INDEX IF EXISTS FlightDate_index;
+    DROP INDEX IF EXISTS ReservationID_index;
+    DROP INDEX IF EXISTS CustomerID_index;
+    DROP INDEX IF EXISTS Waitlist_index;
+    DROP INDEX IF EXISTS FlightInstanceID_index;
+
+    CREATE TABLE FlightInstance (
+        FlightInstanceID INTEGER,
+        FlightNumber TEXT,
+        FlightDate DATE,
+        DepartedOnTime BOOLEAN,
+        ArrivedOnTime BOOLEAN,
+        SeatsTotal INTEGER,
+        SeatsSold INTEGER,
+        NumOfStops INTEGER,
+        TicketCost DECIMAL(10,2),
+        PRIMARY KEY (FlightInstanceID, FlightDate),
+        FOREIGN KEY (FlightNumber) REFERENCES Flight(FlightNumber)
+    ) PARTITION BY RANGE (FlightDate);
+    CREATE TABLE FlightInstance_default PARTITION OF FlightInstance DEFAULT;
+
+    CREATE TABLE Reservation (
+        ReservationID TEXT,
+        CustomerID INTEGER,
+        FlightInstanceID INTEGER,
+        Status TEXT CHECK(Status IN ('reserved', 'waitlist', 'flown')),
+        FlightDate DATE,
+        PRIMARY KEY (ReservationID, FlightDate),
+        FOREIGN KEY (CustomerID) REFERENCES Customer(CustomerID)
+    ) PARTITION BY RANGE (FlightDate);
+    CREATE TABLE Reservation_default PARTITION OF Reservation DEFAULT;
+
+    INSERT INTO FlightInstance SELECT * FROM FlightInstance_unpartitioned;
+    INSERT INTO Reservation(ReservationID, CustomerID, FlightInstanceID, Status, FlightDate)
+        SELECT r.ReservationID, r.CustomerID, r.FlightInstanceID, r.Status, f.FlightDate
+        FROM Reservation_unpartitioned r JOIN FlightInstance_unpartitioned f ON f.FlightInstanceID = r.FlightInstanceID;
+
+    DROP TABLE Reservation_unpartitioned;
+    DROP TABLE FlightInstance_unpartitioned;
+END;
+$$;
+
+--stands in for the foreign key of Reservation on FlightInstance; the instance
+--row is locked as the foreign key would lock it, so it cannot be deleted
+--before the reservation commits
+CREATE OR REPLACE FUNCTION check_reservation_instance() RETURNS trigger AS $$
+BEGIN
+    PERFORM 1 FROM FlightInstance
+        WHERE FlightInstanceID = NEW.FlightInstanceID AND FlightDate = NEW.FlightDate FOR KEY SHARE;
+    IF NOT FOUND THEN
+        RAISE foreign_key_violation USING MESSAGE = 'flight instance ' || NEW.FlightInstanceID
+            || ' does not exist on ' || NEW.FlightDate;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+--the other side of the foreign key: an instance keeps its reservations
+CREATE OR REPLACE FUNCTION check_instance_references() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' AND NEW.FlightInstanceID IS NOT DISTINCT FROM OLD.FlightInstanceID
+            AND NEW.FlightDate IS NOT DISTINCT FROM OLD.FlightDate THEN
+        RETURN NULL;
+    END IF;
+    IF EXISTS (SELECT 1 FROM Reservation
+               WHERE FlightInstanceID = OLD.FlightInstanceID AND FlightDate = OLD.FlightDate) THEN
+        RAISE foreign_key_violation USING MESSAGE = 'flight instance ' || OLD.FlightInstanceID
+            || ' still has reservations';
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+--a database converted before the checks rerouted undated inserts instead
+DROP TRIGGER IF EXISTS Reservation_route ON Reservation_default;
+DROP FUNCTION IF EXISTS route_reservation();
+
+--an update that moves a row to another partition fires the DELETE and
+--INSERT triggers, so a changed date is checked on both sides
+DROP TRIGGER IF EXISTS Reservation_instance ON Reservation;
+CREATE TRIGGER Reservation_instance AFTER INSERT OR UPDATE OF FlightInstanceID, FlightDate ON Reservation
+    FOR EACH ROW EXECUTE PROCEDURE check_reservation_instance();
+
+DROP TRIGGER IF EXISTS FlightInstance_references ON FlightInstance;
+CREATE TRIGGER FlightInstance_references AFTER DELETE OR UPDATE OF FlightInstanceID, FlightDate ON FlightInstance
+    FOR EACH ROW EXECUTE PROCEDURE check_instance_references();
+
+--moves the rows of [lower_bound, upper_bound) from the default partition of a
+--table into partition_name, creating it when it does not exist yet. The
+--default partition is detached meanwhile, so the row triggers of the table do
+--not see rows that only change partition.
+CREATE OR REPLACE FUNCTION split_partition(parent TEXT, partition_name TEXT, lower_bound DATE, upper_bound DATE) RETURNS void AS $$
+DECLARE
+    fallback TEXT := lower(parent) || '_default';
+BEGIN
+    parent := lower(parent);
+    partition_name := lower(partition_name);
+    EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', parent, fallback);
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I (LIKE %I INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', partition_name, parent);
+    EXECUTE format('INSERT INTO %I SELECT * FROM %I WHERE FlightDate >= %L AND FlightDate < %L', partition_name, fallback, lower_bound, upper_bound);
+    EXECUTE format('DELETE FROM %I WHERE FlightDate >= %L AND FlightDate < %L', fallback, lower_bound, upper_bound);
+    EXECUTE format('ALTER TABLE %I ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', parent, partition_name, lower_bound, upper_bound);
+    EXECUTE format('ALTER TABLE %I ATTACH PARTITION %I DEFAULT', parent, fallback);
+END;
+$$ LANGUAGE plpgsql;
+
+--creates the monthly partitions of both tables from the oldest row in a
+--default partition up to months_ahead months from now, and returns their names
+CREATE OR REPLACE FUNCTION maintain_partitions(months_ahead INTEGER) RETURNS SETOF TEXT AS $$
+DECLARE
+    month DATE;
+    last DATE;
+    parent TEXT;
+    partition_name TEXT;
+BEGIN
+    SELECT date_trunc('month', LEAST(current_date, MIN(d)))::date, date_trunc('month', GREATEST(current_date, MAX(d)))::date
+        INTO month, last
+        FROM (SELECT FlightDate AS d FROM FlightInstance_default UNION ALL SELECT FlightDate FROM Reservation_default) dates;
+    last := GREATEST(last, (date_trunc('month', current_date) + make_interval(months => months_ahead))::date);
+    WHILE month <= last LOOP
+        -- months of an archived year are part of its archive partition
+        IF to_regclass('flightinstance_y' || to_char(month, 'YYYY')) IS NULL THEN
+            FOREACH parent IN ARRAY ARRAY['flightinstance', 'reservation'] LOOP
+                partition_name := parent || '_p' || to_char(month, 'YYYYMM');
+                IF to_regclass(partition_name) IS NULL THEN
+                    PERFORM split_partition(parent, partition_name, month, (month + interval '1 month')::date);
+                    RETURN NEXT partition_name;
+                END IF;
+            END LOOP;
+        END IF;
+        month := (month + interval '1 month')::date;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+--merges the monthly partitions of every year that ended before cutoff into one
+--archive partition per table and year, and returns the archive names. Past
+--flights are only read by history reports, so one partition per year keeps
+--the partition count low and, once frozen, is never vacuumed again.
+CREATE OR REPLACE FUNCTION archive_partitions(cutoff DATE) RETURNS SETOF TEXT AS $$
+DECLARE
+    year INTEGER;
+    parent TEXT;
+    archive TEXT;
+    part TEXT;
+BEGIN
+    FOR year IN
+        SELECT DISTINCT CAST(substring(c.relname FROM '_p([0-9]{4})[0-9]{2}$') AS INTEGER)
+        FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = to_regclass('flightinstance') AND c.relname ~ '_p[0-9]{6}$'
+        ORDER BY 1
+    LOOP
+        IF make_date(year + 1, 1, 1) > cutoff THEN
+            CONTINUE;
+        END IF;
+        FOREACH parent IN ARRAY ARRAY['flightinstance', 'reservation'] LOOP
+            archive := parent || '_y' || year;
+            EXECUTE format('CREATE TABLE %I (LIKE %I INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', archive, parent);
+            FOR part IN
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = to_regclass(parent) AND c.relname LIKE parent || '_p' || year || '__'
+            LOOP
+                EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', parent, part);
+                EXECUTE format('INSERT INTO %I SELECT * FROM %I', archive, part);
+                EXECUTE format('DROP TABLE %I', part);
+            END LOOP;
+            -- takes the year's rows still in the default partition and attaches the archive
+            PERFORM split_partition(parent, archive, make_date(year, 1, 1), make_date(year + 1, 1, 1));
+            RETURN NEXT archive;
+        END LOOP;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT maintain_partitions(3);